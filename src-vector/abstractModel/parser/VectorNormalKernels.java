@@ -0,0 +1,246 @@
+package abstractModel.parser;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorNormalKernels calculates face normals and normalizes vertex normals for as many triangles or vertices
+ * at once as the CPU has float lanes, and checks the vertex indices of the triangles as many at once as it has int lanes,
+ * with the Vector API of the jdk.incubator.vector module.
+ * The x, y and z values of consecutive triangles or vertices are copied from the interleaved arrays of the mesh into
+ * one row of lanes per coordinate and loaded from there, so every operation works on one coordinate of all lanes.
+ * The indexed loads and stores of the Vector API are not used: with AVX-512 the JIT of JDK 17 crashed on them
+ * or wrote wrong values.
+ *
+ * The lanes do the same float operations in the same order as the scalar loops of NormalEngine,
+ * with an exact square root and division instead of an approximate reciprocal square root,
+ * so the results are exactly the same. They are still slower than the scalar loops on the machines NormalBenchmark
+ * was run on, so NormalEngine only uses this class when the JVM is started with -DabstractModel.vectorKernels=true.
+ *
+ * This class is in the src-vector source root, so the rest of the project compiles on a plain JDK.
+ * It is compiled after the src root with --add-modules jdk.incubator.vector, for example
+ * javac --add-modules jdk.incubator.vector -cp bin -d bin src-vector/abstractModel/parser/VectorNormalKernels.java,
+ * and running with it needs --add-modules jdk.incubator.vector too. NormalEngine loads it through reflection.
+ *
+ * @author Geert Van Campenhout
+ */
+final class VectorNormalKernels implements NormalKernels {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+	//Called by NormalEngine through reflection.
+	VectorNormalKernels() {
+	}
+
+	/**
+	 * Returns the first of the given corners whose vertex index is not between 0 and the number of vertices,
+	 * comparing as many indices at once as the CPU has int lanes. The indices are compared as unsigned ints,
+	 * so negative ones are larger than any number of vertices.
+	 *
+	 * @param indices	The vertex index of every corner.
+	 * @param start	The first corner.
+	 * @param end	The corner after the last one.
+	 * @param nbVertices	The number of vertices.
+	 * @return	int
+	 * 		The first corner out of range, or the first corner that is not checked because there are not enough corners left
+	 * 		for a full vector.
+	 */
+	@Override
+	public int findIndexOutOfRange(int[] indices, int start, int end, int nbVertices) {
+		int lanes = INT_SPECIES.length();
+		int corner = start;
+		for (; corner + lanes <= end; corner += lanes) {
+			VectorMask<Integer> outOfRange = IntVector.fromArray(INT_SPECIES, indices, corner).compare(VectorOperators.UNSIGNED_GE, nbVertices);
+			if(outOfRange.anyTrue()) {
+				return corner + outOfRange.firstTrue();
+			}
+		}
+		return corner;
+	}
+
+	/**
+	 * Returns the triangle after the last one that calcFaceNormals calculates between start and end.
+	 */
+	@Override
+	public int getBlockEnd(int start, int end) {
+		int lanes = SPECIES.length();
+		return start + (end - start) / lanes * lanes;
+	}
+
+	/**
+	 * Calculates the normals of the triangles from start on in blocks of a full vector,
+	 * as NormalEngine.calcFaceNormals does for the given weighting, up to getBlockEnd.
+	 * The lengths of the cross products for ANGLE weighting are calculated in the lanes,
+	 * but the angles of the corners per triangle, like in the scalar loop.
+	 * A triangle with a repeated vertex gets a NaN normal in its lane too, because one of its edges is zero.
+	 * The lanes with a valid normal are written to the valid triangles, the others to the diagnostics.
+	 *
+	 * @param mesh	The mesh, its face normals array must be allocated and its vertex indices must be in range.
+	 * @param weighting	The weighting of the face normals.
+	 * @param start	The first triangle.
+	 * @param end	The triangle after the last one.
+	 * @param cornerWeights	The array for the angles of the corners for ANGLE weighting, otherwise null.
+	 * @param valid	The array for the valid triangles.
+	 * @param position	The position in the valid triangles of the first valid one.
+	 * @return	int
+	 * 		The position after the last valid triangle.
+	 */
+	@Override
+	public int calcFaceNormals(ObjData mesh, ObjectParser.WeightingMode weighting, int start, int end, float[] cornerWeights, 
+			int[] valid, int position) {
+		float[] positions = mesh.vertices;
+		int[] indices = mesh.triangleVertices;
+		float[] faceNormals = mesh.faceNormals;
+		int lanes = SPECIES.length();
+		if(end - start < lanes) {
+			return position;
+		}
+		int[] a = new int[lanes];
+		int[] b = new int[lanes];
+		int[] c = new int[lanes];
+		boolean[] repeated = new boolean[lanes];
+		//The coordinates of the corners and of the normals, one row of lanes per coordinate.
+		float[] corners = new float[9*lanes];
+		float[] normals = new float[3*lanes];
+		float[] lengths = new float[lanes];
+		int triangle = start;
+		for (; triangle + lanes <= end; triangle += lanes) {
+			for (int lane = 0; lane < lanes; lane++) {
+				int i = 3*(triangle + lane);
+				a[lane] = 3*indices[i];
+				b[lane] = 3*indices[i + 1];
+				c[lane] = 3*indices[i + 2];
+				repeated[lane] = a[lane] == b[lane] || b[lane] == c[lane] || c[lane] == a[lane];
+				for (int k = 0; k < 3; k++) {
+					corners[k*lanes + lane] = positions[a[lane] + k];
+					corners[(3 + k)*lanes + lane] = positions[b[lane] + k];
+					corners[(6 + k)*lanes + lane] = positions[c[lane] + k];
+				}
+			}
+			FloatVector ax = FloatVector.fromArray(SPECIES, corners, 0);
+			FloatVector ay = FloatVector.fromArray(SPECIES, corners, lanes);
+			FloatVector az = FloatVector.fromArray(SPECIES, corners, 2*lanes);
+			FloatVector bMinAx = FloatVector.fromArray(SPECIES, corners, 3*lanes).sub(ax);
+			FloatVector bMinAy = FloatVector.fromArray(SPECIES, corners, 4*lanes).sub(ay);
+			FloatVector bMinAz = FloatVector.fromArray(SPECIES, corners, 5*lanes).sub(az);
+			FloatVector cMinAx = FloatVector.fromArray(SPECIES, corners, 6*lanes).sub(ax);
+			FloatVector cMinAy = FloatVector.fromArray(SPECIES, corners, 7*lanes).sub(ay);
+			FloatVector cMinAz = FloatVector.fromArray(SPECIES, corners, 8*lanes).sub(az);
+			FloatVector x = bMinAy.mul(cMinAz).sub(bMinAz.mul(cMinAy));
+			FloatVector y = cMinAx.mul(bMinAz).sub(cMinAz.mul(bMinAx));
+			FloatVector z = bMinAx.mul(cMinAy).sub(bMinAy.mul(cMinAx));
+			int offset = 3*triangle;
+			VectorMask<Float> nan;
+			if(weighting == ObjectParser.WeightingMode.AREA) {
+				nan = x.mul(x).add(y.mul(y)).add(z.mul(z)).compare(VectorOperators.GT, 0).not();
+				FloatVector none = FloatVector.broadcast(SPECIES, Float.NaN);
+				x = x.blend(none, nan);
+				y = y.blend(none, nan);
+				z = z.blend(none, nan);
+			} else {
+				FloatVector length = length(x, y, z);
+				FloatVector scale = FloatVector.broadcast(SPECIES, 1).div(length);
+				x = x.mul(scale);
+				y = y.mul(scale);
+				z = z.mul(scale);
+				//Zero length normals became NaN, like in the scalar loop.
+				nan = x.test(VectorOperators.IS_NAN).or(y.test(VectorOperators.IS_NAN)).or(z.test(VectorOperators.IS_NAN));
+				if(cornerWeights != null) {
+					length.intoArray(lengths, 0);
+				}
+			}
+			x.intoArray(normals, 0);
+			y.intoArray(normals, lanes);
+			z.intoArray(normals, 2*lanes);
+			for (int lane = 0; lane < lanes; lane++) {
+				faceNormals[offset + 3*lane] = normals[lane];
+				faceNormals[offset + 3*lane + 1] = normals[lanes + lane];
+				faceNormals[offset + 3*lane + 2] = normals[2*lanes + lane];
+			}
+			if(cornerWeights != null) {
+				for (int lane = 0; lane < lanes; lane++) {
+					calcCornerWeights(positions, a[lane], b[lane], c[lane], lengths[lane], cornerWeights, offset + 3*lane);
+				}
+			}
+			long nanLanes = nan.toLong();
+			for (int lane = 0; lane < lanes; lane++) {
+				if(repeated[lane]) {
+					mesh.diagnostics.add(MeshDiagnostics.Issue.REPEATED_VERTEX, triangle + lane);
+				} else if((nanLanes >>> lane & 1) != 0) {
+					mesh.diagnostics.add(MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, triangle + lane);
+				} else {
+					valid[position++] = triangle + lane;
+				}
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Scales the vertex normals from start on to unit length in blocks of a full vector, zero normals stay zero.
+	 *
+	 * @param normals	The vertex normals, three floats per vertex.
+	 * @param start	The first vertex.
+	 * @param end	The vertex after the last one.
+	 * @return	int
+	 * 		The first vertex that is not normalized, because there are not enough vertices left for a full vector.
+	 */
+	@Override
+	public int normalize(float[] normals, int start, int end) {
+		int lanes = SPECIES.length();
+		//One row of lanes per coordinate, like the corners of calcFaceNormals.
+		float[] coordinates = new float[3*lanes];
+		int vertex = start;
+		for (; vertex + lanes <= end; vertex += lanes) {
+			int offset = 3*vertex;
+			for (int lane = 0; lane < lanes; lane++) {
+				coordinates[lane] = normals[offset + 3*lane];
+				coordinates[lanes + lane] = normals[offset + 3*lane + 1];
+				coordinates[2*lanes + lane] = normals[offset + 3*lane + 2];
+			}
+			FloatVector x = FloatVector.fromArray(SPECIES, coordinates, 0);
+			FloatVector y = FloatVector.fromArray(SPECIES, coordinates, lanes);
+			FloatVector z = FloatVector.fromArray(SPECIES, coordinates, 2*lanes);
+			FloatVector length = length(x, y, z);
+			VectorMask<Float> nonZero = length.compare(VectorOperators.NE, 0);
+			FloatVector scale = FloatVector.broadcast(SPECIES, 1).div(length);
+			x.blend(x.mul(scale), nonZero).intoArray(coordinates, 0);
+			y.blend(y.mul(scale), nonZero).intoArray(coordinates, lanes);
+			z.blend(z.mul(scale), nonZero).intoArray(coordinates, 2*lanes);
+			for (int lane = 0; lane < lanes; lane++) {
+				normals[offset + 3*lane] = coordinates[lane];
+				normals[offset + 3*lane + 1] = coordinates[lanes + lane];
+				normals[offset + 3*lane + 2] = coordinates[2*lanes + lane];
+			}
+		}
+		return vertex;
+	}
+
+	/**
+	 * Calculates the angles of the corners of one triangle from the length of its cross product, like the scalar loop.
+	 * The edges are subtracted again instead of taken from the lanes: with AVX-512 the JIT of JDK 17
+	 * crashed on the extra vectors that the dot products of the corners need.
+	 */
+	private static void calcCornerWeights(float[] positions, int a, int b, int c, float length, float[] cornerWeights, int i) {
+		float bMinAx = positions[b] - positions[a];
+		float bMinAy = positions[b + 1] - positions[a + 1];
+		float bMinAz = positions[b + 2] - positions[a + 2];
+		float cMinAx = positions[c] - positions[a];
+		float cMinAy = positions[c + 1] - positions[a + 1];
+		float cMinAz = positions[c + 2] - positions[a + 2];
+		cornerWeights[i] = NormalEngine.angle(length, bMinAx*cMinAx + bMinAy*cMinAy + bMinAz*cMinAz);
+		cornerWeights[i + 1] = NormalEngine.angle(length, bMinAx*(bMinAx - cMinAx) + bMinAy*(bMinAy - cMinAy) + bMinAz*(bMinAz - cMinAz));
+		cornerWeights[i + 2] = NormalEngine.angle(length, cMinAx*(cMinAx - bMinAx) + cMinAy*(cMinAy - bMinAy) + cMinAz*(cMinAz - bMinAz));
+	}
+
+	/**
+	 * Returns the lengths of the given vectors, as NormalEngine.length does.
+	 */
+	private static FloatVector length(FloatVector x, FloatVector y, FloatVector z) {
+		return x.mul(x).add(y.mul(y)).add(z.mul(z)).lanewise(VectorOperators.SQRT);
+	}
+}
@@ -0,0 +1,230 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * AutoSmooth splits the vertices of a mesh at sharp edges, for files without smoothing groups.
+ * The triangles around every vertex are clustered by the angle between their normals:
+ * two triangles that share an edge of the vertex are in the same cluster when their normals are within the crease angle,
+ * and the clusters are joined with a union-find over those edges. A smooth fan, whose neighbouring triangles are within
+ * the crease angle of each other, is one cluster even when its first and last triangle are not.
+ * Every cluster of a vertex gets its own normal, so the normals are only averaged over the triangles on the same side of a sharp edge.
+ *
+ * The vertices are clustered in parallel over ranges of vertices, with the triangles around every vertex
+ * from the adjacency of the mesh, and the clusters of a vertex are numbered in the order of their first triangle.
+ * The result does not depend on the number of tasks.
+ * The normals are numbered per vertex, in the order of the vertices, and a vertex that is not split keeps one normal,
+ * so a mesh without sharp edges gets the same normals, with the same indices, as without auto smoothing.
+ *
+ * @author Geert Van Campenhout
+ */
+final class AutoSmooth {
+
+	private AutoSmooth() {
+	}
+
+	/**
+	 * Gives every triangle corner of the mesh the index of its normal, in the corner normals of the mesh.
+	 *
+	 * @param mesh	The mesh.
+	 * @param vertices	The vertex of every corner the adjacency was built from, the welded one when the vertices are welded.
+	 * @param creaseAngle	The largest angle in degrees between the normals of two triangles that are smoothed together.
+	 * @param adjacency	The adjacency of the vertices of the mesh.
+	 * @param pool	The pool to run on, or null to run on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles and the vertices in.
+	 */
+	static void split(final ObjData mesh, final int[] vertices, float creaseAngle, final VertexAdjacency adjacency, ForkJoinPool pool, final int nbTasks) {
+		if(!(creaseAngle >= 0 && creaseAngle <= 180)) {
+			throw new IllegalArgumentException("Invalid crease angle [" + creaseAngle + "], it has to be between 0 and 180 degrees.");
+		}
+		//Rounding can make the dot product of opposite normals a bit smaller than -1, at 180 degrees all of them are smoothed.
+		final float minCos = creaseAngle == 180 ? Float.NEGATIVE_INFINITY : (float) Math.cos(Math.toRadians(creaseAngle));
+		final float[] unitNormals = new float[3*mesh.nbTriangles];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					calcUnitNormals(mesh, NormalEngine.getStart(mesh.nbTriangles, task, nbTasks), NormalEngine.getStart(mesh.nbTriangles, task + 1, nbTasks), unitNormals);
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+
+		//First the cluster of every corner within its vertex and the number of clusters of every vertex,
+		//then the number of the first normal of every vertex is added to the clusters of its corners.
+		final int[] cornerNormals = new int[3*mesh.nbTriangles];
+		final int[] firstNormals = new int[mesh.nbVertices + 1];
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					cluster(adjacency, vertices, NormalEngine.getStart(mesh.nbVertices, task, nbTasks), NormalEngine.getStart(mesh.nbVertices, task + 1, nbTasks),
+							unitNormals, minCos, cornerNormals, firstNormals);
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		int nbNormals = 0;
+		for (int vertex = 0; vertex < mesh.nbVertices; vertex++) {
+			int nbClusters = firstNormals[vertex + 1];
+			firstNormals[vertex] = nbNormals;
+			nbNormals += nbClusters;
+		}
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int[] corners = adjacency.corners;
+					int end = adjacency.offsets[NormalEngine.getStart(mesh.nbVertices, task + 1, nbTasks)];
+					int vertex = NormalEngine.getStart(mesh.nbVertices, task, nbTasks);
+					for (int j = adjacency.offsets[vertex]; j < end; j++) {
+						while(j >= adjacency.offsets[vertex + 1]) {
+							vertex++;
+						}
+						cornerNormals[corners[j]] += firstNormals[vertex];
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		mesh.cornerNormals = cornerNormals;
+		mesh.nbVertexNormals = nbNormals;
+	}
+
+	/**
+	 * Calculates the unit normals of the triangles between start and end, NaN for degenerate triangles.
+	 * They are only compared, so unlike NormalEngine no warnings are given.
+	 */
+	private static void calcUnitNormals(ObjData mesh, int start, int end, float[] unitNormals) {
+		float[] positions = mesh.vertices;
+		int[] indices = mesh.triangleVertices;
+		for (int i = 3*start; i < 3*end; i += 3) {
+			int a = 3*indices[i];
+			int b = 3*indices[i + 1];
+			int c = 3*indices[i + 2];
+			float bMinAx = positions[b] - positions[a];
+			float bMinAy = positions[b + 1] - positions[a + 1];
+			float bMinAz = positions[b + 2] - positions[a + 2];
+			float cMinAx = positions[c] - positions[a];
+			float cMinAy = positions[c + 1] - positions[a + 1];
+			float cMinAz = positions[c + 2] - positions[a + 2];
+			float x = bMinAy*cMinAz - bMinAz*cMinAy;
+			float y = cMinAx*bMinAz - cMinAz*bMinAx;
+			float z = bMinAx*cMinAy - bMinAy*cMinAx;
+			float scale = 1/NormalEngine.length(x, y, z);
+			unitNormals[i] = x*scale;
+			unitNormals[i + 1] = y*scale;
+			unitNormals[i + 2] = z*scale;
+		}
+	}
+
+	/**
+	 * Clusters the triangles around the vertices between start and end.
+	 * The cluster of every corner, counted from 0 within its vertex, is written to the corner normals,
+	 * the number of clusters of a vertex, at least 1, to the counts at the index after the vertex.
+	 * Degenerate triangles are put in the first cluster, they do not add to any normal.
+	 */
+	private static void cluster(VertexAdjacency adjacency, int[] vertices, int start, int end, float[] unitNormals, float minCos, 
+			int[] cornerNormals, int[] counts) {
+		int[] offsets = adjacency.offsets;
+		int[] corners = adjacency.corners;
+		//The two other vertices of every triangle around the current vertex, with the position of the triangle around it in the low bits.
+		long[] edges = new long[16];
+		//The parent of every triangle around the current vertex in the union-find, and the cluster of every root, -1 until it is numbered.
+		int[] parents = new int[8];
+		int[] clusters = new int[8];
+		for (int vertex = start; vertex < end; vertex++) {
+			int first = offsets[vertex];
+			int size = offsets[vertex + 1] - first;
+			if(parents.length < size) {
+				edges = new long[2*size];
+				parents = new int[size];
+				clusters = new int[size];
+			}
+			for (int j = 0; j < size; j++) {
+				int corner = corners[first + j];
+				int face = corner - corner % 3;
+				edges[2*j] = (long) vertices[face + (corner + 1) % 3] << 32 | j;
+				edges[2*j + 1] = (long) vertices[face + (corner + 2) % 3] << 32 | j;
+				parents[j] = j;
+				clusters[j] = -1;
+			}
+			//The triangles that share an edge are next to each other once the edges are sorted by their other vertex.
+			Arrays.sort(edges, 0, 2*size);
+			for (int i = 0; i < 2*size; i++) {
+				for (int k = i + 1; k < 2*size && edges[k] >>> 32 == edges[i] >>> 32; k++) {
+					int a = (int) edges[i];
+					int b = (int) edges[k];
+					if(isSmooth(unitNormals, corners[first + a], corners[first + b], minCos)) {
+						union(parents, a, b);
+					}
+				}
+			}
+			int nbClusters = 0;
+			for (int j = 0; j < size; j++) {
+				int corner = corners[first + j];
+				int cluster = 0;
+				if(!isDegenerate(unitNormals, corner - corner % 3)) {
+					int root = find(parents, j);
+					if(clusters[root] == -1) {
+						clusters[root] = nbClusters++;
+					}
+					cluster = clusters[root];
+				}
+				cornerNormals[corner] = cluster;
+			}
+			counts[vertex + 1] = Math.max(1, nbClusters);
+		}
+	}
+
+	private static boolean isDegenerate(float[] unitNormals, int face) {
+		return Float.isNaN(unitNormals[face]) || Float.isNaN(unitNormals[face + 1]) || Float.isNaN(unitNormals[face + 2]);
+	}
+
+	/**
+	 * Returns whether the triangles of the given corners are within the crease angle of each other, false if one is degenerate.
+	 */
+	private static boolean isSmooth(float[] unitNormals, int a, int b, float minCos) {
+		int faceA = a - a % 3;
+		int faceB = b - b % 3;
+		if(isDegenerate(unitNormals, faceA) || isDegenerate(unitNormals, faceB)) {
+			return false;
+		}
+		return unitNormals[faceA]*unitNormals[faceB] + unitNormals[faceA + 1]*unitNormals[faceB + 1] 
+				+ unitNormals[faceA + 2]*unitNormals[faceB + 2] >= minCos;
+	}
+
+	/**
+	 * Returns the root of the given element in the union-find, and halves the path to it.
+	 */
+	private static int find(int[] parents, int element) {
+		while(parents[element] != element) {
+			parents[element] = parents[parents[element]];
+			element = parents[element];
+		}
+		return element;
+	}
+
+	/**
+	 * Joins the sets of the given elements, the smaller root becomes the root of both.
+	 */
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if(rootA < rootB) {
+			parents[rootB] = rootA;
+		} else if(rootB < rootA) {
+			parents[rootA] = rootB;
+		}
+	}
+}
@@ -0,0 +1,334 @@
+package abstractModel.parser;
+
+import java.util.Arrays;
+
+/**
+ * DynamicMesh keeps the face and vertex normals of a mesh up to date while it is edited: vertices can be moved and added,
+ * triangles can be added and removed. The edits only mark the triangles and vertices whose normals change,
+ * update recalculates those, so the time it takes depends on the size of the edits and not on the size of the mesh.
+ * A moved vertex changes the normals of the triangles around it, and those change the normals of their vertices,
+ * the one-ring of the moved vertex.
+ *
+ * The triangle corners around every vertex are kept as linked lists in two flat arrays, in the order of the corners,
+ * so every vertex adds the normals of its triangles in the order of the triangles, like NormalEngine.gatherVertexNormals.
+ * After update the normals are exactly those a full SEQUENTIAL or GATHER calculation of the edited mesh gives.
+ * Only meshes with one normal per vertex can be edited, not those split per smoothing group or by auto smoothing,
+ * nor welded meshes, whose normals are shared by positions.
+ * Edits drop the tangents of the mesh, they are not updated.
+ *
+ * @author Geert Van Campenhout
+ */
+public class DynamicMesh {
+
+	private static final int END = -1;
+
+	private final ObjData mesh;
+	private final ObjectParser.WeightingMode weighting;
+	//The angle of every triangle corner for ANGLE weighting, otherwise null.
+	private float[] cornerWeights;
+	//The first corner around every vertex and the next corner around the same vertex of every corner, END at the end.
+	private int[] firstCorners;
+	private int[] nextCorners;
+	//The triangles whose normal and the vertices whose normal have to be calculated again, as lists and as flags.
+	private int[] dirtyTriangles = new int[16];
+	private int nbDirtyTriangles;
+	private boolean[] isDirtyTriangle;
+	private int[] dirtyVertices = new int[16];
+	private int nbDirtyVertices;
+	private boolean[] isDirtyVertex;
+	//Where calcFaceNormals writes a recalculated triangle when it is valid. The valid triangles of the mesh are dropped 
+	//by the edits, they are found again from the face normals when the mesh is written.
+	private final int[] validTriangle = new int[1];
+
+	/**
+	 * Makes the given mesh editable and calculates all its face and vertex normals with the given weighting.
+	 *
+	 * @param mesh	The mesh, with one normal per vertex and all its vertex indices in range, as ObjectParser leaves it.
+	 * @param weighting	The weighting of the face normals.
+	 */
+	public DynamicMesh(ObjData mesh, ObjectParser.WeightingMode weighting) {
+		if(mesh.cornerNormals != null) {
+			throw new IllegalArgumentException("A mesh with split vertex normals can not be edited.");
+		}
+		this.mesh = mesh;
+		this.weighting = weighting;
+		int nbVertices = mesh.nbVertices;
+		int nbCorners = 3*mesh.nbTriangles;
+		this.firstCorners = new int[Math.max(1, nbVertices)];
+		Arrays.fill(this.firstCorners, END);
+		this.nextCorners = new int[Math.max(3, nbCorners)];
+		int[] triangleVertices = mesh.triangleVertices;
+		//Backwards, so every list is in the order of the corners.
+		for (int corner = nbCorners - 1; corner >= 0; corner--) {
+			int vertex = triangleVertices[corner];
+			this.nextCorners[corner] = this.firstCorners[vertex];
+			this.firstCorners[vertex] = corner;
+		}
+		this.isDirtyTriangle = new boolean[Math.max(1, mesh.nbTriangles)];
+		this.isDirtyVertex = new boolean[Math.max(1, nbVertices)];
+		this.cornerWeights = weighting == ObjectParser.WeightingMode.ANGLE ? new float[Math.max(3, nbCorners)] : null;
+		mesh.faceNormals = new float[Math.max(3, nbCorners)];
+		mesh.validTriangles = new int[mesh.nbTriangles];
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		mesh.nbValidTriangles = NormalEngine.calcFaceNormals(mesh, weighting, 0, mesh.nbTriangles, this.cornerWeights, mesh.validTriangles, 0);
+		mesh.vertexNormals = new float[3*Math.max(1, nbVertices)];
+		for (int vertex = 0; vertex < nbVertices; vertex++) {
+			gather(vertex);
+		}
+	}
+
+	/**
+	 * Returns the edited mesh, its normals are up to date after update.
+	 */
+	public ObjData getMesh() {
+		return this.mesh;
+	}
+
+	/**
+	 * Moves the given vertex, the normals of its triangles and of their vertices are updated by update.
+	 *
+	 * @param vertex	The zero based index of the vertex.
+	 */
+	public void moveVertex(int vertex, float x, float y, float z) {
+		checkVertex(vertex);
+		float[] vertices = this.mesh.vertices;
+		vertices[3*vertex] = x;
+		vertices[3*vertex + 1] = y;
+		vertices[3*vertex + 2] = z;
+		for (int corner = this.firstCorners[vertex]; corner != END; corner = this.nextCorners[corner]) {
+			markTriangle(corner / 3);
+		}
+		this.mesh.validTriangles = null;
+		this.mesh.tangents = null;
+	}
+
+	/**
+	 * Adds a vertex, it has a zero normal until a triangle uses it.
+	 *
+	 * @return	int
+	 * 		The zero based index of the new vertex.
+	 */
+	public int addVertex(float x, float y, float z) {
+		int vertex = this.mesh.nbVertices;
+		this.mesh.addVertex(x, y, z);
+		if(vertex == this.firstCorners.length) {
+			int length = 2*this.firstCorners.length;
+			this.firstCorners = Arrays.copyOf(this.firstCorners, length);
+			Arrays.fill(this.firstCorners, vertex, length, END);
+			this.isDirtyVertex = Arrays.copyOf(this.isDirtyVertex, length);
+		}
+		this.mesh.vertexNormals = ObjData.grow(this.mesh.vertexNormals, 3*(vertex + 1));
+		this.mesh.tangents = null;
+		return vertex;
+	}
+
+	/**
+	 * Adds a triangle without texture coordinates of its own. 
+	 * Like the parser does for faces without them, its corners get the index of the first texture coordinate.
+	 *
+	 * @param a	The zero based index of the first vertex.
+	 * @return	int
+	 * 		The zero based index of the new triangle.
+	 */
+	public int addTriangle(int a, int b, int c) {
+		return addTriangle(a, b, c, 0, 0, 0);
+	}
+
+	/**
+	 * Adds a triangle, its normal and those of its vertices are updated by update.
+	 *
+	 * @param a	The zero based index of the first vertex.
+	 * @param textA	The zero based index of the texture coordinate of the first vertex.
+	 * @return	int
+	 * 		The zero based index of the new triangle.
+	 */
+	public int addTriangle(int a, int b, int c, int textA, int textB, int textC) {
+		checkVertex(a);
+		checkVertex(b);
+		checkVertex(c);
+		int triangle = this.mesh.nbTriangles;
+		this.mesh.addTriangle(a, b, c, textA, textB, textC, -1, -1, -1);
+		int nbCorners = 3*(triangle + 1);
+		this.nextCorners = ObjData.grow(this.nextCorners, nbCorners);
+		this.mesh.faceNormals = ObjData.grow(this.mesh.faceNormals, nbCorners);
+		if(this.cornerWeights != null) {
+			this.cornerWeights = ObjData.grow(this.cornerWeights, nbCorners);
+		}
+		if(triangle == this.isDirtyTriangle.length) {
+			this.isDirtyTriangle = Arrays.copyOf(this.isDirtyTriangle, 2*triangle);
+		}
+		for (int corner = 3*triangle; corner < nbCorners; corner++) {
+			link(corner);
+		}
+		markTriangle(triangle);
+		this.mesh.validTriangles = null;
+		this.mesh.adjacency = null;
+		this.mesh.tangents = null;
+		return triangle;
+	}
+
+	/**
+	 * Removes the given triangle. The last triangle takes its index, so the indices of the other triangles do not change.
+	 * The normals of the vertices of both triangles are updated by update.
+	 *
+	 * @param triangle	The zero based index of the triangle.
+	 */
+	public void removeTriangle(int triangle) {
+		if(triangle < 0 || triangle >= this.mesh.nbTriangles) {
+			throw new IndexOutOfBoundsException("Triangle " + triangle + " out of bounds for length " + this.mesh.nbTriangles);
+		}
+		int[] triangleVertices = this.mesh.triangleVertices;
+		for (int corner = 3*triangle; corner < 3*triangle + 3; corner++) {
+			unlink(corner);
+			markVertex(triangleVertices[corner]);
+		}
+		this.isDirtyTriangle[triangle] = false;
+		int last = this.mesh.nbTriangles - 1;
+		if(triangle != last) {
+			for (int corner = 3*last; corner < 3*last + 3; corner++) {
+				unlink(corner);
+			}
+			System.arraycopy(triangleVertices, 3*last, triangleVertices, 3*triangle, 3);
+			System.arraycopy(this.mesh.triangleTextureCoordinates, 3*last, this.mesh.triangleTextureCoordinates, 3*triangle, 3);
+			System.arraycopy(this.mesh.triangleNormals, 3*last, this.mesh.triangleNormals, 3*triangle, 3);
+			System.arraycopy(this.mesh.faceNormals, 3*last, this.mesh.faceNormals, 3*triangle, 3);
+			if(this.cornerWeights != null) {
+				System.arraycopy(this.cornerWeights, 3*last, this.cornerWeights, 3*triangle, 3);
+			}
+			this.mesh.triangleGroups[triangle] = this.mesh.triangleGroups[last];
+			//The moved triangle comes earlier in the lists of its vertices, so their sums are added in another order.
+			for (int corner = 3*triangle; corner < 3*triangle + 3; corner++) {
+				link(corner);
+				markVertex(triangleVertices[corner]);
+			}
+			if(this.isDirtyTriangle[last]) {
+				this.isDirtyTriangle[last] = false;
+				markTriangle(triangle);
+			}
+		}
+		this.mesh.nbTriangles = last;
+		this.mesh.validTriangles = null;
+		this.mesh.adjacency = null;
+		this.mesh.tangents = null;
+	}
+
+	/**
+	 * Calculates the normals of the triangles and vertices that changed since the last update.
+	 * Afterwards the diagnostics of the mesh hold the degenerate triangles and NaN normals among them, nothing is printed.
+	 */
+	public void update() {
+		this.mesh.diagnostics.clear(MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		for (int i = 0; i < this.nbDirtyTriangles; i++) {
+			int triangle = this.dirtyTriangles[i];
+			//Removed triangles are no longer flagged.
+			if(triangle < this.mesh.nbTriangles && this.isDirtyTriangle[triangle]) {
+				this.isDirtyTriangle[triangle] = false;
+				NormalEngine.calcFaceNormals(this.mesh, this.weighting, triangle, triangle + 1, this.cornerWeights, this.validTriangle, 0);
+				markVertex(this.mesh.triangleVertices[3*triangle]);
+				markVertex(this.mesh.triangleVertices[3*triangle + 1]);
+				markVertex(this.mesh.triangleVertices[3*triangle + 2]);
+			}
+		}
+		this.nbDirtyTriangles = 0;
+		for (int i = 0; i < this.nbDirtyVertices; i++) {
+			int vertex = this.dirtyVertices[i];
+			this.isDirtyVertex[vertex] = false;
+			gather(vertex);
+		}
+		this.nbDirtyVertices = 0;
+	}
+
+	/**
+	 * Sums the face normals around the given vertex, weighted when there are corner weights, and normalizes the sum,
+	 * with the same float operations as NormalEngine.gather.
+	 */
+	private void gather(int vertex) {
+		float[] faceNormals = this.mesh.faceNormals;
+		float x = 0;
+		float y = 0;
+		float z = 0;
+		for (int corner = this.firstCorners[vertex]; corner != END; corner = this.nextCorners[corner]) {
+			int face = corner - corner % 3;
+			float faceX = faceNormals[face];
+			float faceY = faceNormals[face + 1];
+			float faceZ = faceNormals[face + 2];
+			if(!Float.isNaN(faceX) && !Float.isNaN(faceY) && !Float.isNaN(faceZ)) {
+				if(this.cornerWeights == null) {
+					x += faceX;
+					y += faceY;
+					z += faceZ;
+				} else {
+					float weight = this.cornerWeights[corner];
+					x += weight*faceX;
+					y += weight*faceY;
+					z += weight*faceZ;
+				}
+			}
+		}
+		float[] vertexNormals = this.mesh.vertexNormals;
+		vertexNormals[3*vertex] = x;
+		vertexNormals[3*vertex + 1] = y;
+		vertexNormals[3*vertex + 2] = z;
+		NormalEngine.normalizeVertexNormals(vertexNormals, vertex, vertex + 1);
+		NormalEngine.checkVertexNormals(this.mesh, vertexNormals, vertex, vertex + 1);
+	}
+
+	/**
+	 * Adds the given corner to the list of its vertex, in the order of the corners.
+	 */
+	private void link(int corner) {
+		int vertex = this.mesh.triangleVertices[corner];
+		int previous = END;
+		int next = this.firstCorners[vertex];
+		while(next != END && next < corner) {
+			previous = next;
+			next = this.nextCorners[next];
+		}
+		this.nextCorners[corner] = next;
+		if(previous == END) {
+			this.firstCorners[vertex] = corner;
+		} else {
+			this.nextCorners[previous] = corner;
+		}
+	}
+
+	/**
+	 * Removes the given corner from the list of its vertex.
+	 */
+	private void unlink(int corner) {
+		int vertex = this.mesh.triangleVertices[corner];
+		int previous = END;
+		int current = this.firstCorners[vertex];
+		while(current != corner) {
+			previous = current;
+			current = this.nextCorners[current];
+		}
+		if(previous == END) {
+			this.firstCorners[vertex] = this.nextCorners[corner];
+		} else {
+			this.nextCorners[previous] = this.nextCorners[corner];
+		}
+	}
+
+	private void markTriangle(int triangle) {
+		if(!this.isDirtyTriangle[triangle]) {
+			this.isDirtyTriangle[triangle] = true;
+			this.dirtyTriangles = ObjData.grow(this.dirtyTriangles, this.nbDirtyTriangles + 1);
+			this.dirtyTriangles[this.nbDirtyTriangles++] = triangle;
+		}
+	}
+
+	private void markVertex(int vertex) {
+		if(!this.isDirtyVertex[vertex]) {
+			this.isDirtyVertex[vertex] = true;
+			this.dirtyVertices = ObjData.grow(this.dirtyVertices, this.nbDirtyVertices + 1);
+			this.dirtyVertices[this.nbDirtyVertices++] = vertex;
+		}
+	}
+
+	private void checkVertex(int vertex) {
+		if(vertex < 0 || vertex >= this.mesh.nbVertices) {
+			throw new IndexOutOfBoundsException("Vertex " + vertex + " out of bounds for length " + this.mesh.nbVertices);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package abstractModel.parser;
+
+/**
+ * FaceDecoder decodes the vertex tokens of a face line.
+ * A vertex token can have four layouts: v, v/vt, v//vn and v/vt/vn. The layout is detected once,
+ * on the first face of a file, after which a decoder that only handles that layout is used.
+ *
+ * The decoded indices are the raw values from the file, so they are one based and 0 means that
+ * the index is missing.
+ *
+ * @author Geert Van Campenhout
+ */
+abstract class FaceDecoder {
+
+	int vertex;
+	int texture;
+	int normal;
+
+	/**
+	 * Decodes the vertex token between start and end.
+	 *
+	 * @param tokenizer	The tokenizer that contains the token.
+	 * @param start	The index of the first byte of the token.
+	 * @param end	The index after the last byte of the token.
+	 * @return	boolean
+	 * 		False if the token does not have the layout of this decoder.
+	 */
+	abstract boolean decode(ObjTokenizer tokenizer, int start, int end);
+
+	/**
+	 * Returns a decoder for the layout of the given vertex token.
+	 *
+	 * @param tokenizer	The tokenizer that contains the token.
+	 * @param start	The index of the first byte of the token.
+	 * @param end	The index after the last byte of the token.
+	 */
+	static FaceDecoder forToken(ObjTokenizer tokenizer, int start, int end) {
+		int firstSlash = indexOfSlash(tokenizer, start, end);
+		if(firstSlash == end) {
+			return new VertexDecoder();
+		}
+		int secondSlash = indexOfSlash(tokenizer, firstSlash + 1, end);
+		if(secondSlash == end) {
+			return new VertexTextureDecoder();
+		}
+		if(secondSlash == firstSlash + 1) {
+			return new VertexNormalDecoder();
+		}
+		return new VertexTextureNormalDecoder();
+	}
+
+	private static int indexOfSlash(ObjTokenizer tokenizer, int start, int end) {
+		int index = start;
+		while(index < end && tokenizer.byteAt(index) != '/') {
+			index++;
+		}
+		return index;
+	}
+
+	/**
+	 * Decodes tokens of the form v.
+	 */
+	static class VertexDecoder extends FaceDecoder {
+		@Override
+		boolean decode(ObjTokenizer tokenizer, int start, int end) {
+			vertex = tokenizer.parseIntAt(start, end);
+			texture = 0;
+			normal = 0;
+			return tokenizer.getParsedEnd() == end && end > start;
+		}
+	}
+
+	/**
+	 * Decodes tokens of the form v/vt.
+	 */
+	static class VertexTextureDecoder extends FaceDecoder {
+		@Override
+		boolean decode(ObjTokenizer tokenizer, int start, int end) {
+			vertex = tokenizer.parseIntAt(start, end);
+			int index = tokenizer.getParsedEnd();
+			if(index == start || index >= end || tokenizer.byteAt(index) != '/') {
+				return false;
+			}
+			texture = tokenizer.parseIntAt(index + 1, end);
+			normal = 0;
+			return tokenizer.getParsedEnd() == end && end > index + 1;
+		}
+	}
+
+	/**
+	 * Decodes tokens of the form v//vn.
+	 */
+	static class VertexNormalDecoder extends FaceDecoder {
+		@Override
+		boolean decode(ObjTokenizer tokenizer, int start, int end) {
+			vertex = tokenizer.parseIntAt(start, end);
+			int index = tokenizer.getParsedEnd();
+			if(index == start || index + 1 >= end || tokenizer.byteAt(index) != '/' || tokenizer.byteAt(index + 1) != '/') {
+				return false;
+			}
+			texture = 0;
+			normal = tokenizer.parseIntAt(index + 2, end);
+			return tokenizer.getParsedEnd() == end && end > index + 2;
+		}
+	}
+
+	/**
+	 * Decodes tokens of the form v/vt/vn.
+	 */
+	static class VertexTextureNormalDecoder extends FaceDecoder {
+		@Override
+		boolean decode(ObjTokenizer tokenizer, int start, int end) {
+			vertex = tokenizer.parseIntAt(start, end);
+			int index = tokenizer.getParsedEnd();
+			if(index == start || index >= end || tokenizer.byteAt(index) != '/') {
+				return false;
+			}
+			texture = tokenizer.parseIntAt(index + 1, end);
+			int textureEnd = tokenizer.getParsedEnd();
+			if(textureEnd == index + 1 || textureEnd >= end || tokenizer.byteAt(textureEnd) != '/') {
+				return false;
+			}
+			normal = tokenizer.parseIntAt(textureEnd + 1, end);
+			return tokenizer.getParsedEnd() == end && end > textureEnd + 1;
+		}
+	}
+}
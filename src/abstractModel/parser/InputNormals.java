@@ -0,0 +1,105 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * InputNormals compares the vertex normals given in an .obj file (vn) with the vertices of the mesh.
+ *
+ * @author Geert Van Campenhout
+ */
+class InputNormals {
+
+	//How far the length of a given normal may be from 1 to still count as a unit normal.
+	static final float UNIT_LENGTH_TOLERANCE = 1e-3f;
+
+	private InputNormals() {
+	}
+
+	/**
+	 * Returns whether the given normals are complete: every vertex of every triangle has a normal index
+	 * and every normal that a triangle uses has unit length. The corners of a vertex may use different normals,
+	 * so hard edges are kept.
+	 *
+	 * @param mesh	The mesh with the normals given in the file.
+	 * @return	boolean
+	 * 		False when a normal index is missing or a used normal does not have unit length.
+	 */
+	static boolean isComplete(ObjData mesh) {
+		boolean[] checked = new boolean[mesh.nbNormals];
+		float[] normals = mesh.normals;
+		for (int i = 0; i < 3*mesh.nbTriangles; i++) {
+			int normalIndex = mesh.triangleNormals[i];
+			if(normalIndex < 0 || normalIndex >= mesh.nbNormals) {
+				return false;
+			}
+			if(!checked[normalIndex]) {
+				int n = 3*normalIndex;
+				if(Math.abs(NormalEngine.length(normals[n], normals[n+1], normals[n+2]) - 1) > UNIT_LENGTH_TOLERANCE) {
+					return false;
+				}
+				checked[normalIndex] = true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calculates the largest angle between the normal of a triangle corner, the one of its vertex unless the vertices 
+	 * are split per smoothing group, and the normal the file gives that corner.
+	 * The triangles are divided in ranges that are checked in parallel on the given pool.
+	 * A triangle vertex without a given normal, or with a zero normal, counts as a deviation of 180 degrees.
+	 *
+	 * @param mesh	The mesh with the normals given in the file and the calculated vertex normals.
+	 * @param pool	The pool to run on, or null to check all triangles on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles in.
+	 * @return	float
+	 * 		The largest deviation in degrees.
+	 */
+	static float getMaxDeviation(final ObjData mesh, ForkJoinPool pool, int nbTasks) {
+		final float[] deviations = new float[nbTasks];
+		final int size = mesh.nbTriangles;
+		final int[] normalIndices = mesh.getNormalIndices();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			final int start = (int) ((long) size * i / nbTasks);
+			final int end = (int) ((long) size * (i + 1) / nbTasks);
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					float max = 0;
+					for (int j = 3*start; j < 3*end; j++) {
+						int normalIndex = mesh.triangleNormals[j];
+						float deviation = 180;
+						if(normalIndex >= 0 && normalIndex < mesh.nbNormals) {
+							deviation = getAngle(mesh.vertexNormals, 3*normalIndices[j], mesh.normals, 3*normalIndex);
+						}
+						max = Math.max(max, deviation);
+					}
+					deviations[task] = max;
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		float max = 0;
+		for (float deviation : deviations) {
+			max = Math.max(max, deviation);
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the angle in degrees between the vectors at the given indices, or 180 if one of them has no direction.
+	 */
+	private static float getAngle(float[] a, int i, float[] b, int j) {
+		double lengths = (double) NormalEngine.length(a[i], a[i+1], a[i+2]) * NormalEngine.length(b[j], b[j+1], b[j+2]);
+		if(!(lengths > 0)) {
+			return 180;
+		}
+		double cos = (a[i]*b[j] + a[i+1]*b[j+1] + a[i+2]*b[j+2]) / lengths;
+		return (float) Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cos))));
+	}
+}
@@ -0,0 +1,245 @@
+package abstractModel.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * MeshCache stores a parsed mesh with its calculated normals in a binary sidecar file next to the .obj file,
+ * so the next time the same file is opened the sidecar can be memory-mapped instead of parsing the text again.
+ *
+ * The sidecar remembers the size and the modification time of the .obj file it was made from,
+ * and the normal, weighting and accumulation mode, the use of smoothing groups, the crease angle and the weld distance. 
+ * It is only used when all of them are still the same: PARALLEL accumulation gives other bits than SEQUENTIAL,
+ * so a sidecar of the one may not be loaded for the other.
+ * The problems found while parsing are stored too, so a loaded mesh reports the same diagnostics as a parsed one.
+ *
+ * Layout (big endian): magic, version, source size, source modification time, normal mode, weighting mode, accumulation mode,
+ * whether smoothing groups are used, crease angle, weld distance, number of vertices, texture coordinates, triangles and vertex normals,
+ * whether triangle normals and corner normals are present,
+ * followed by the vertex coordinates, texture coordinates, triangle vertex indices, triangle texture indices,
+ * triangle smoothing groups, vertex normals, triangle normals and corner normal indices,
+ * and at last the count and the samples of every problem found while parsing.
+ *
+ * @author Geert Van Campenhout
+ */
+class MeshCache {
+
+	//The suffix added to the name of the .obj file to get the name of its sidecar.
+	static final String SUFFIX = ".meshcache";
+
+	private static final int MAGIC = 0x4F424A43;
+	private static final int VERSION = 7;
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private MeshCache() {
+	}
+
+	/**
+	 * Returns the sidecar file of the given .obj file.
+	 */
+	static File getCacheFile(File source) {
+		return new File(source.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Fills the mesh of the given parser from the sidecar of the source file, if it is up to date.
+	 *
+	 * @param parser	The parser to fill, its mesh must be empty.
+	 * @param source	The .obj file.
+	 * @return	boolean
+	 * 		False if there is no up to date sidecar and the source needs to be parsed.
+	 */
+	static boolean load(ObjectParser parser, File source) throws IOException {
+		File cacheFile = getCacheFile(source);
+		if(!cacheFile.isFile()) {
+			return false;
+		}
+		FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			if(size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+				return false;
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+					|| buffer.getLong() != source.length() || buffer.getLong() != getModificationTime(source)
+					|| buffer.getInt() != parser.normalMode.ordinal() || buffer.getInt() != parser.weightingMode.ordinal()
+					|| buffer.getInt() != parser.accumulationMode.ordinal()
+					|| buffer.getInt() != (parser.useSmoothingGroups ? 1 : 0) || buffer.getInt() != Float.floatToIntBits(parser.creaseAngle)
+					|| buffer.getInt() != Float.floatToIntBits(parser.weldDistance)) {
+				return false;
+			}
+			int nbVertices = buffer.getInt();
+			int nbTextureCoordinates = buffer.getInt();
+			int nbTriangles = buffer.getInt();
+			int nbVertexNormals = buffer.getInt();
+			boolean hasTriangleNormals = buffer.getInt() != 0;
+			boolean hasCornerNormals = buffer.getInt() != 0;
+			long expectedSize = HEADER_SIZE + 4L * (3L * nbVertices + 2L * nbTextureCoordinates + 7L * nbTriangles
+					+ 3L * nbVertexNormals + (hasTriangleNormals ? 3L * nbTriangles : 0) + (hasCornerNormals ? 3L * nbTriangles : 0))
+					+ MeshDiagnostics.SIZE;
+			if(size != expectedSize) {
+				return false;
+			}
+			ObjData mesh = parser.mesh;
+			mesh.vertices = new float[3 * nbVertices];
+			slice(buffer, 3 * nbVertices).asFloatBuffer().get(mesh.vertices);
+			mesh.textureCoordinates = new float[2 * nbTextureCoordinates];
+			slice(buffer, 2 * nbTextureCoordinates).asFloatBuffer().get(mesh.textureCoordinates);
+			mesh.triangleVertices = new int[3 * nbTriangles];
+			slice(buffer, 3 * nbTriangles).asIntBuffer().get(mesh.triangleVertices);
+			mesh.triangleTextureCoordinates = new int[3 * nbTriangles];
+			slice(buffer, 3 * nbTriangles).asIntBuffer().get(mesh.triangleTextureCoordinates);
+			mesh.triangleGroups = new int[nbTriangles];
+			slice(buffer, nbTriangles).asIntBuffer().get(mesh.triangleGroups);
+			mesh.vertexNormals = new float[3 * nbVertexNormals];
+			slice(buffer, 3 * nbVertexNormals).asFloatBuffer().get(mesh.vertexNormals);
+			mesh.faceNormals = null;
+			if(hasTriangleNormals) {
+				mesh.faceNormals = new float[3 * nbTriangles];
+				slice(buffer, 3 * nbTriangles).asFloatBuffer().get(mesh.faceNormals);
+			}
+			//Found again from the face normals when the mesh is written.
+			mesh.validTriangles = null;
+			mesh.cornerNormals = null;
+			if(hasCornerNormals) {
+				mesh.cornerNormals = new int[3 * nbTriangles];
+				slice(buffer, 3 * nbTriangles).asIntBuffer().get(mesh.cornerNormals);
+				mesh.nbVertexNormals = nbVertexNormals;
+			}
+			mesh.diagnostics.load(buffer);
+			//The normals given in the file are not kept, the triangles refer to none of them.
+			mesh.triangleNormals = new int[3 * nbTriangles];
+			Arrays.fill(mesh.triangleNormals, -1);
+			mesh.nbVertices = nbVertices;
+			mesh.nbTextureCoordinates = nbTextureCoordinates;
+			mesh.nbNormals = 0;
+			mesh.nbTriangles = nbTriangles;
+			if(nbTriangles > 0) {
+				mesh.smoothingGroup = mesh.triangleGroups[nbTriangles - 1];
+			}
+			parser.nbFaces += nbTriangles;
+			return true;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Returns the next count values of 4 bytes of the buffer as a separate buffer, and skips them.
+	 */
+	private static ByteBuffer slice(ByteBuffer buffer, int count) {
+		ByteBuffer slice = buffer.slice();
+		slice.limit(4 * count);
+		buffer.position(buffer.position() + 4 * count);
+		return slice;
+	}
+
+	/**
+	 * Writes the mesh of the given parser, with its calculated normals, to the sidecar of the source file.
+	 * The sidecar is written to a temporary file first, so a reader never sees a half written sidecar.
+	 *
+	 * @param parser	The parser whose normals are calculated.
+	 * @param source	The .obj file the mesh was parsed from.
+	 */
+	static void save(ObjectParser parser, File source) throws IOException {
+		File cacheFile = getCacheFile(source);
+		File tempFile = new File(cacheFile.getPath() + ".tmp");
+		ObjData mesh = parser.mesh;
+		boolean hasTriangleNormals = mesh.faceNormals != null;
+		boolean hasCornerNormals = mesh.cornerNormals != null;
+		FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putLong(source.length());
+			buffer.putLong(getModificationTime(source));
+			buffer.putInt(parser.normalMode.ordinal());
+			buffer.putInt(parser.weightingMode.ordinal());
+			buffer.putInt(parser.accumulationMode.ordinal());
+			buffer.putInt(parser.useSmoothingGroups ? 1 : 0);
+			buffer.putInt(Float.floatToIntBits(parser.creaseAngle));
+			buffer.putInt(Float.floatToIntBits(parser.weldDistance));
+			buffer.putInt(mesh.nbVertices);
+			buffer.putInt(mesh.nbTextureCoordinates);
+			buffer.putInt(mesh.nbTriangles);
+			buffer.putInt(mesh.getNbVertexNormals());
+			buffer.putInt(hasTriangleNormals ? 1 : 0);
+			buffer.putInt(hasCornerNormals ? 1 : 0);
+			write(channel, buffer, mesh.vertices, 3 * mesh.nbVertices);
+			write(channel, buffer, mesh.textureCoordinates, 2 * mesh.nbTextureCoordinates);
+			write(channel, buffer, mesh.triangleVertices, 3 * mesh.nbTriangles);
+			write(channel, buffer, mesh.triangleTextureCoordinates, 3 * mesh.nbTriangles);
+			write(channel, buffer, mesh.triangleGroups, mesh.nbTriangles);
+			write(channel, buffer, mesh.vertexNormals, 3 * mesh.getNbVertexNormals());
+			if(hasTriangleNormals) {
+				write(channel, buffer, mesh.faceNormals, 3 * mesh.nbTriangles);
+			}
+			if(hasCornerNormals) {
+				write(channel, buffer, mesh.cornerNormals, 3 * mesh.nbTriangles);
+			}
+			if(buffer.remaining() < MeshDiagnostics.SIZE) {
+				write(channel, buffer);
+			}
+			mesh.diagnostics.save(buffer);
+			write(channel, buffer);
+		} finally {
+			channel.close();
+		}
+		Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Puts the first length values of the array in the buffer, writing the buffer to the channel every time it is full.
+	 */
+	static void write(FileChannel channel, ByteBuffer buffer, float[] values, int length) throws IOException {
+		int index = 0;
+		while(index < length) {
+			int count = Math.min(buffer.remaining() / 4, length - index);
+			buffer.asFloatBuffer().put(values, index, count);
+			buffer.position(buffer.position() + 4 * count);
+			index += count;
+			if(buffer.remaining() < 4) {
+				write(channel, buffer);
+			}
+		}
+	}
+
+	static void write(FileChannel channel, ByteBuffer buffer, int[] values, int length) throws IOException {
+		int index = 0;
+		while(index < length) {
+			int count = Math.min(buffer.remaining() / 4, length - index);
+			buffer.asIntBuffer().put(values, index, count);
+			buffer.position(buffer.position() + 4 * count);
+			index += count;
+			if(buffer.remaining() < 4) {
+				write(channel, buffer);
+			}
+		}
+	}
+
+	/**
+	 * Writes the bytes put in the buffer to the channel and empties the buffer.
+	 */
+	static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while(buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private static long getModificationTime(File source) throws IOException {
+		return Files.getLastModifiedTime(source.toPath()).toMillis();
+	}
+}
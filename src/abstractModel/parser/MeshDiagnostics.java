@@ -0,0 +1,175 @@
+package abstractModel.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * MeshDiagnostics counts the problems found while a mesh is parsed, its normals are calculated and it is written,
+ * instead of printing a line for every triangle or vertex from inside the loops.
+ * For every kind of problem it keeps the number of times it was found and the indices of the first MAX_SAMPLES.
+ * The loops can add to it from several threads at once, then the samples are the first ones found by any thread.
+ * The ObjectParser prints a summary once per phase, and the counts can be read with getCount and getSamples.
+ *
+ * @author Geert Van Campenhout
+ */
+public class MeshDiagnostics {
+
+	//Number of indices that are kept of every kind of problem.
+	static final int MAX_SAMPLES = 16;
+	//Number of bytes that save puts in a buffer: the count and the samples of every kind of problem.
+	static final int SIZE = Issue.values().length * (8 + 4 * MAX_SAMPLES);
+
+	/**
+	 * The kinds of problems, with the kind of index that is sampled.
+	 * UNSUPPORTED_DIRECTIVE are lines like g, o, mtllib and usemtl that are ignored, the index is the next triangle.
+	 * INVALID_INDEX are triangles with a vertex index that is not in the file, they are removed from the mesh
+	 * and the triangle indices of the later problems are those without them.
+	 * REPEATED_VERTEX are triangles that use a vertex twice, they are left out of the vertex normals.
+	 * DEGENERATE_TRIANGLE are the other triangles with a NaN normal, those without area, left out in the same way.
+	 * NAN_VERTEX_NORMAL are calculated vertex normals that are NaN, the index is the calculated normal.
+	 * SKIPPED_TRIANGLE are triangles with a NaN normal that are left out of the written file.
+	 */
+	public enum Issue {
+		UNSUPPORTED_DIRECTIVE("lines with a directive that is not implemented yet, they are ignored", "before triangle"),
+		INVALID_INDEX("triangles with a vertex index out of range, they are removed", "at triangle"),
+		REPEATED_VERTEX("triangles with a repeated vertex, they are left out", "at triangle"),
+		DEGENERATE_TRIANGLE("triangles with a NaN normal, they are left out", "at triangle"),
+		NAN_VERTEX_NORMAL("vertices with a NaN normal", "at normal"),
+		SKIPPED_TRIANGLE("triangles with a NaN normal left out of the output", "at triangle");
+
+		private final String description;
+		private final String index;
+
+		private Issue(String description, String index) {
+			this.description = description;
+			this.index = index;
+		}
+	}
+
+	private final AtomicLongArray counts = new AtomicLongArray(Issue.values().length);
+	private final int[][] samples = new int[Issue.values().length][MAX_SAMPLES];
+
+	/**
+	 * Counts the given problem at the given index. Safe to call from several threads at once.
+	 *
+	 * @param issue	The kind of problem.
+	 * @param index	The index of the triangle or normal it was found at.
+	 */
+	void add(Issue issue, int index) {
+		long count = this.counts.getAndIncrement(issue.ordinal());
+		if(count < MAX_SAMPLES) {
+			this.samples[issue.ordinal()][(int) count] = index;
+		}
+	}
+
+	/**
+	 * Adds the problems of the given diagnostics, of a chunk that is appended, to these ones.
+	 *
+	 * @param other	The diagnostics of the chunk.
+	 * @param triangleOffset	The number of triangles before the chunk, added to the sampled triangle indices.
+	 */
+	void addAll(MeshDiagnostics other, int triangleOffset) {
+		for (Issue issue : Issue.values()) {
+			long count = other.getCount(issue);
+			if(count == 0) {
+				continue;
+			}
+			int[] samples = other.samples[issue.ordinal()];
+			int offset = issue == Issue.NAN_VERTEX_NORMAL ? 0 : triangleOffset;
+			for (int i = 0; i < Math.min(count, MAX_SAMPLES); i++) {
+				add(issue, samples[i] + offset);
+			}
+			if(count > MAX_SAMPLES) {
+				this.counts.addAndGet(issue.ordinal(), count - MAX_SAMPLES);
+			}
+		}
+	}
+
+	/**
+	 * Returns how many times the given problem was found.
+	 */
+	public long getCount(Issue issue) {
+		return this.counts.get(issue.ordinal());
+	}
+
+	/**
+	 * Returns the indices of the first times the given problem was found, at most MAX_SAMPLES of them.
+	 */
+	public int[] getSamples(Issue issue) {
+		return Arrays.copyOf(this.samples[issue.ordinal()], (int) Math.min(getCount(issue), MAX_SAMPLES));
+	}
+
+	/**
+	 * Forgets the given problems, before a phase that finds them again.
+	 */
+	void clear(Issue... issues) {
+		for (Issue issue : issues) {
+			this.counts.set(issue.ordinal(), 0);
+		}
+	}
+
+	/**
+	 * Forgets all problems.
+	 */
+	void clear() {
+		clear(Issue.values());
+	}
+
+	/**
+	 * Puts the counts and the samples of all problems in the given buffer, as they are read again by load.
+	 */
+	void save(ByteBuffer buffer) {
+		for (Issue issue : Issue.values()) {
+			buffer.putLong(getCount(issue));
+			for (int sample : this.samples[issue.ordinal()]) {
+				buffer.putInt(sample);
+			}
+		}
+	}
+
+	/**
+	 * Replaces the counts and the samples of all problems with the ones saved in the given buffer.
+	 */
+	void load(ByteBuffer buffer) {
+		for (Issue issue : Issue.values()) {
+			this.counts.set(issue.ordinal(), buffer.getLong());
+			for (int i = 0; i < MAX_SAMPLES; i++) {
+				this.samples[issue.ordinal()][i] = buffer.getInt();
+			}
+		}
+	}
+
+	/**
+	 * Prints one line for each of the given problems that was found, with its count and its sampled indices.
+	 *
+	 * @param name	The name of the file the problems were found in.
+	 * @param issues	The problems of the phase that is reported.
+	 */
+	void report(String name, Issue... issues) {
+		for (Issue issue : issues) {
+			long count = getCount(issue);
+			if(count > 0) {
+				StringBuilder sb = new StringBuilder();
+				sb.append("WARN: ").append(name).append(" has ").append(count).append(' ').append(issue.description);
+				sb.append(", first ").append(issue.index);
+				int[] samples = getSamples(issue);
+				for (int i = 0; i < samples.length; i++) {
+					sb.append(i == 0 ? " " : ", ").append(samples[i]);
+				}
+				if(count > samples.length) {
+					sb.append(", ...");
+				}
+				System.out.println(sb.toString());
+			}
+		}
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("MeshDiagnostics[");
+		for (Issue issue : Issue.values()) {
+			sb.append(issue.ordinal() == 0 ? "" : ", ").append(issue).append('=').append(getCount(issue));
+		}
+		return sb.append(']').toString();
+	}
+}
@@ -0,0 +1,115 @@
+package abstractModel.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * NormalBenchmark measures how the PARALLEL and GATHER accumulation modes scale with the number of threads,
+ * and what the steps with vector kernels cost for every weighting mode, with and without those kernels.
+ * Every given .obj file is parsed once, after which the face normals are calculated and the vertex normals normalized 
+ * a number of times on one thread per weighting mode, and the vertex normals are calculated
+ * with 1, 2, 4, ... threads up to the number of available processors.
+ * The vector kernels are measured when they are available: when src-vector is compiled and the JVM was started with
+ * --add-modules jdk.incubator.vector, also without the system property that lets the parser use them.
+ *
+ * @author Geert Van Campenhout
+ */
+public class NormalBenchmark {
+
+	//The vector kernels are only fast once they are compiled, which takes a lot more calls than for the scalar loops.
+	private static final int NB_WARMUPS = 200;
+	private static final int NB_RUNS = 10;
+
+	/**
+	 * Main method to run the benchmark.
+	 *
+	 * @param args	The .obj files to calculate the normals of, OBJ/triceratops.obj and OBJ/Assassin.obj when none are given.
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			args = new String[] {"OBJ/triceratops.obj", "OBJ/Assassin.obj"};
+		}
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		for (String fileName : args) {
+			ObjectParser parser = new ObjectParser(fileName);
+			parser.setInputMode(ObjectParser.InputMode.MAPPED);
+			parser.parseAndCalcNormals(new File(fileName));
+			ObjData mesh = parser.mesh;
+			System.out.println(fileName + ": " + mesh.nbVertices + " vertices, " + mesh.nbTriangles + " triangles");
+			for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+				double scalar = measureKernels(mesh, weighting, false);
+				System.out.printf("%-8s scalar: %8.3f msec%n", weighting, scalar);
+				if(NormalEngine.VECTOR_KERNELS != null) {
+					double vector = measureKernels(mesh, weighting, true);
+					System.out.printf("%-8s vector: %8.3f msec, speedup %5.2f%n", weighting, vector, scalar / vector);
+				}
+			}
+			for (ObjectParser.AccumulationMode mode : new ObjectParser.AccumulationMode[] {ObjectParser.AccumulationMode.PARALLEL, ObjectParser.AccumulationMode.GATHER}) {
+				double sequential = 0;
+				for (int nbThreads = 1; ; nbThreads = Math.min(2*nbThreads, maxThreads)) {
+					double time = measure(mesh, nbThreads, mode, ObjectParser.WeightingMode.UNIFORM);
+					if(nbThreads == 1) {
+						sequential = time;
+					}
+					System.out.printf("%-8s %3d threads: %8.3f msec, speedup %5.2f%n", mode, nbThreads, time, sequential / time);
+					if(nbThreads == maxThreads) {
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the average time in msec to calculate the vertex normals of the mesh on the given number of threads.
+	 * The time of GATHER includes building the adjacency.
+	 */
+	private static double measure(ObjData mesh, int nbThreads, ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting) {
+		ForkJoinPool pool = new ForkJoinPool(nbThreads);
+		try {
+			for (int i = 0; i < NB_WARMUPS; i++) {
+				calc(mesh, pool, nbThreads, mode, weighting);
+			}
+			long start = System.nanoTime();
+			for (int i = 0; i < NB_RUNS; i++) {
+				calc(mesh, pool, nbThreads, mode, weighting);
+			}
+			return (System.nanoTime() - start) / 1e6 / NB_RUNS;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the average time in msec to calculate the face normals and to normalize the vertex normals of the mesh
+	 * on the current thread, the two steps that have vector kernels, with or without those kernels.
+	 */
+	private static double measureKernels(ObjData mesh, ObjectParser.WeightingMode weighting, boolean vectorKernels) {
+		float[] cornerWeights = NormalEngine.newCornerWeights(mesh, weighting);
+		int[] valid = new int[mesh.nbTriangles];
+		for (int i = 0; i < NB_WARMUPS; i++) {
+			calcKernels(mesh, weighting, cornerWeights, valid, vectorKernels);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < NB_RUNS; i++) {
+			calcKernels(mesh, weighting, cornerWeights, valid, vectorKernels);
+		}
+		return (System.nanoTime() - start) / 1e6 / NB_RUNS;
+	}
+
+	private static void calcKernels(ObjData mesh, ObjectParser.WeightingMode weighting, float[] cornerWeights, int[] valid, boolean vectorKernels) {
+		NormalEngine.calcFaceNormals(mesh, weighting, 0, mesh.nbTriangles, cornerWeights, valid, 0, vectorKernels);
+		NormalEngine.normalizeVertexNormals(mesh.vertexNormals, 0, mesh.getNbVertexNormals(), vectorKernels);
+	}
+
+	private static void calc(ObjData mesh, ForkJoinPool pool, int nbThreads, ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting) {
+		if(mode == ObjectParser.AccumulationMode.GATHER) {
+			NormalEngine.gatherVertexNormals(mesh, weighting, VertexAdjacency.build(mesh, pool, nbThreads), pool, nbThreads);
+		} else {
+			NormalEngine.calcTriangleNormals(mesh, weighting, pool, nbThreads);
+			NormalEngine.normalizeVertexNormals(mesh, pool, nbThreads);
+		}
+	}
+}
@@ -0,0 +1,571 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * NormalEngine calculates the face and vertex normals of a mesh that is stored in the flat arrays of an ObjData.
+ * It does the same float operations in the same order as Triangle.calcNormalizedNormal, Vertex.addToNormal
+ * and Vertex.normalizeNormal, so the normals are exactly the same as those of the Vertex and Triangle objects,
+ * without creating a single object per vertex or per triangle.
+ * That is the UNIFORM weighting, AREA and ANGLE weighting change how much every face normal counts.
+ * When the vertices are split per smoothing group, the face normals are added to the normal of every corner
+ * given by the corner normals of the mesh, instead of to the normal of its vertex.
+ * The loop that calculates the face normals also sorts the triangles out: the valid ones are written to a list
+ * in the order of the triangles, the ones with a repeated vertex or without area to the diagnostics.
+ * The loops that add the face normals up, and the writer, only go over that list and never check for NaN.
+ *
+ * @author Geert Van Campenhout
+ */
+final class NormalEngine {
+
+	//The system property that turns the vector kernels on.
+	static final String VECTOR_KERNELS_PROPERTY = "abstractModel.vectorKernels";
+	//The vector kernels, null when VectorNormalKernels is not compiled or the jdk.incubator.vector module was not added to the JVM.
+	static final NormalKernels VECTOR_KERNELS = loadVectorKernels();
+	/**
+	 * Whether the face normals, the normalization and the index check use the vector kernels.
+	 * They are slower than the scalar loops on the machines NormalBenchmark was run on, so they are only used
+	 * when the JVM is started with -DabstractModel.vectorKernels=true and they are available.
+	 */
+	static final boolean USE_VECTOR_KERNELS = Boolean.getBoolean(VECTOR_KERNELS_PROPERTY) && VECTOR_KERNELS != null;
+
+	//Smallest number of triangles of a slice of the parallel calcTriangleNormals, and the largest number of slices.
+	private static final int TRIANGLES_PER_SLICE = 1 << 14;
+	private static final int MAX_SLICES = 16;
+
+	private NormalEngine() {
+	}
+
+	/**
+	 * Returns a new VectorNormalKernels, loaded through reflection because it is in the src-vector source root,
+	 * or null when it is not compiled or the jdk.incubator.vector module is missing.
+	 */
+	private static NormalKernels loadVectorKernels() {
+		try {
+			return (NormalKernels) Class.forName("abstractModel.parser.VectorNormalKernels").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Calculates the normal of every triangle and adds it, weighted as set by the weighting mode, 
+	 * to the normals of its three vertices.
+	 * Triangles with a NaN normal, the degenerate ones, are not added and not in the valid triangles of the mesh.
+	 *
+	 * @param mesh	The mesh, its face and vertex normals are replaced.
+	 * @param weighting	The weighting of the face normals.
+	 */
+	static void calcTriangleNormals(ObjData mesh, ObjectParser.WeightingMode weighting) {
+		calcTriangleNormals(mesh, weighting, null);
+	}
+
+	/**
+	 * Calculates the face and vertex normals like calcTriangleNormals, 
+	 * and adds the tangents of the triangles to the given sums in the same loop.
+	 *
+	 * @param mesh	The mesh, its face and vertex normals and its valid triangles are replaced.
+	 * @param weighting	The weighting of the face normals.
+	 * @param tangentSums	The tangent sums of TangentFrames, six floats per calculated normal, or null.
+	 */
+	static void calcTriangleNormals(ObjData mesh, ObjectParser.WeightingMode weighting, float[] tangentSums) {
+		float[] vertexNormals = new float[3*mesh.getNbVertexNormals()];
+		int[] valid = new int[mesh.nbTriangles];
+		mesh.faceNormals = new float[3*mesh.nbTriangles];
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE);
+		mesh.nbValidTriangles = accumulate(mesh, weighting, 0, mesh.nbTriangles, vertexNormals, newCornerWeights(mesh, weighting), tangentSums, valid, 0);
+		mesh.validTriangles = valid;
+		mesh.vertexNormals = vertexNormals;
+	}
+
+	/**
+	 * Calculates the face and vertex normals like calcTriangleNormals, on nbTasks threads of the given pool.
+	 * The triangles are divided in slices, and every slice adds the normals of its triangles to its own buffer 
+	 * of vertex normals, so no two threads write to the same vertex. The buffers are then added up, in the order
+	 * of the slices, in parallel over ranges of vertices.
+	 * The number of slices only depends on the number of triangles, not on nbTasks, so the result is exactly
+	 * the same on any number of threads. It can differ in the last bits from the sequential one,
+	 * because the additions are grouped per slice.
+	 * Every slice writes its valid triangles from its own first triangle on, they are moved together afterwards.
+	 *
+	 * @param mesh	The mesh, its face and vertex normals are replaced.
+	 * @param weighting	The weighting of the face normals.
+	 * @param pool	The pool to run on, or null to run on the current thread.
+	 * @param nbTasks	The number of threads to divide the slices and the vertices over.
+	 */
+	static void calcTriangleNormals(ObjData mesh, ObjectParser.WeightingMode weighting, ForkJoinPool pool, int nbTasks) {
+		calcTriangleNormals(mesh, weighting, null, pool, nbTasks);
+	}
+
+	/**
+	 * Calculates the face and vertex normals like the parallel calcTriangleNormals, and adds the tangents 
+	 * of the triangles to the given sums in the same loop. Every slice adds them to its own sums too,
+	 * which are added up in the same order as the normals.
+	 *
+	 * @param mesh	The mesh, its face and vertex normals are replaced.
+	 * @param weighting	The weighting of the face normals.
+	 * @param tangentSums	The tangent sums of TangentFrames, six floats per calculated normal, or null.
+	 * @param pool	The pool to run on, or null to run on the current thread.
+	 * @param nbTasks	The number of threads to divide the slices and the vertices over.
+	 */
+	static void calcTriangleNormals(final ObjData mesh, final ObjectParser.WeightingMode weighting, final float[] tangentSums, ForkJoinPool pool, final int nbTasks) {
+		final int nbSlices = getNbSlices(mesh.nbTriangles);
+		final float[][] partials = new float[nbSlices][];
+		final float[][] partialTangents = new float[nbSlices][];
+		final float[] cornerWeights = newCornerWeights(mesh, weighting);
+		final int[] valid = new int[mesh.nbTriangles];
+		final int[] nbValid = new int[nbSlices];
+		mesh.faceNormals = new float[3*mesh.nbTriangles];
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < Math.min(nbTasks, nbSlices); i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					for (int slice = task; slice < nbSlices; slice += nbTasks) {
+						partials[slice] = new float[3*mesh.getNbVertexNormals()];
+						if(tangentSums != null) {
+							partialTangents[slice] = slice == 0 ? tangentSums : new float[tangentSums.length];
+						}
+						int start = getStart(mesh.nbTriangles, slice, nbSlices);
+						nbValid[slice] = accumulate(mesh, weighting, start, getStart(mesh.nbTriangles, slice + 1, nbSlices), 
+								partials[slice], cornerWeights, partialTangents[slice], valid, start) - start;
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		mesh.nbValidTriangles = compact(valid, mesh.nbTriangles, nbValid);
+		mesh.validTriangles = valid;
+		final float[] vertexNormals = partials[0];
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int start = 3*getStart(mesh.getNbVertexNormals(), task, nbTasks);
+					int end = 3*getStart(mesh.getNbVertexNormals(), task + 1, nbTasks);
+					for (int j = 1; j < partials.length; j++) {
+						float[] partial = partials[j];
+						for (int k = start; k < end; k++) {
+							vertexNormals[k] += partial[k];
+						}
+					}
+					if(tangentSums != null) {
+						for (int j = 1; j < partialTangents.length; j++) {
+							float[] partial = partialTangents[j];
+							for (int k = 2*start; k < 2*end; k++) {
+								tangentSums[k] += partial[k];
+							}
+						}
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		mesh.vertexNormals = vertexNormals;
+	}
+
+	/**
+	 * Returns the number of slices the parallel calcTriangleNormals divides the given number of triangles in:
+	 * one per TRIANGLES_PER_SLICE triangles, but at most MAX_SLICES because every slice needs its own vertex normals.
+	 */
+	static int getNbSlices(int nbTriangles) {
+		return Math.max(1, Math.min(MAX_SLICES, (nbTriangles + TRIANGLES_PER_SLICE - 1) / TRIANGLES_PER_SLICE));
+	}
+
+	/**
+	 * Moves the valid triangles that every range of triangles wrote from its own first triangle on together,
+	 * in the order of the ranges.
+	 *
+	 * @param valid	The valid triangles of all ranges.
+	 * @param nbTriangles	The number of triangles that was divided in ranges.
+	 * @param nbValid	The number of valid triangles of every range.
+	 * @return	int
+	 * 		The number of valid triangles.
+	 */
+	private static int compact(int[] valid, int nbTriangles, int[] nbValid) {
+		int position = 0;
+		for (int range = 0; range < nbValid.length; range++) {
+			System.arraycopy(valid, getStart(nbTriangles, range, nbValid.length), valid, position, nbValid[range]);
+			position += nbValid[range];
+		}
+		return position;
+	}
+
+	/**
+	 * Calculates the normals of the triangles from start on, the ones that were just appended to the mesh, 
+	 * and adds them to the vertex normals, like calcTriangleNormals does for all triangles. 
+	 * The face and vertex normals and the valid triangles grow with the mesh, new vertices start with a zero normal.
+	 * Calling it after every append, in order, gives exactly the normals of calcTriangleNormals.
+	 *
+	 * @param mesh	The mesh, its normals must hold the triangles before start.
+	 * @param weighting	The weighting of the face normals.
+	 * @param start	The first appended triangle.
+	 * @param cornerWeights	The array for the angles of the corners, at least three per triangle, for ANGLE weighting, otherwise null.
+	 * @return	boolean
+	 * 		False if an appended triangle refers to a vertex that is not in the mesh yet, then nothing is added.
+	 */
+	static boolean accumulateAppended(ObjData mesh, ObjectParser.WeightingMode weighting, int start, float[] cornerWeights) {
+		if(findIndexOutOfRange(mesh.triangleVertices, 3*start, 3*mesh.nbTriangles, mesh.nbVertices) < 3*mesh.nbTriangles) {
+			return false;
+		}
+		if(mesh.faceNormals == null) {
+			mesh.validTriangles = new int[mesh.nbTriangles];
+			mesh.nbValidTriangles = 0;
+		}
+		mesh.vertexNormals = mesh.vertexNormals == null ? new float[3*mesh.nbVertices] : ObjData.grow(mesh.vertexNormals, 3*mesh.nbVertices);
+		mesh.faceNormals = mesh.faceNormals == null ? new float[3*mesh.nbTriangles] : ObjData.grow(mesh.faceNormals, 3*mesh.nbTriangles);
+		mesh.validTriangles = ObjData.grow(mesh.validTriangles, mesh.nbTriangles);
+		mesh.nbValidTriangles = accumulate(mesh, weighting, start, mesh.nbTriangles, mesh.vertexNormals, cornerWeights, null, 
+				mesh.validTriangles, mesh.nbValidTriangles);
+		return true;
+	}
+
+	/**
+	 * Returns the first element of the given range when count elements are divided in nbRanges ranges.
+	 */
+	static int getStart(int count, int range, int nbRanges) {
+		return (int) ((long) count * range / nbRanges);
+	}
+
+	/**
+	 * Returns an array for the angle of every triangle corner when the weighting needs them, otherwise null.
+	 */
+	static float[] newCornerWeights(ObjData mesh, ObjectParser.WeightingMode weighting) {
+		return weighting == ObjectParser.WeightingMode.ANGLE ? new float[3*mesh.nbTriangles] : null;
+	}
+
+	/**
+	 * Calculates the face normals of the triangles between start and end and adds those of the valid triangles 
+	 * to the given vertex normals, multiplied by the weight of their corner when there are corner weights.
+	 * When there are tangent sums, the tangents of the valid triangles are added to them in the same loop.
+	 *
+	 * @return	int
+	 * 		The position after the last valid triangle, which are written from the given position on.
+	 */
+	private static int accumulate(ObjData mesh, ObjectParser.WeightingMode weighting, int start, int end, float[] vertexNormals, 
+			float[] cornerWeights, float[] tangentSums, int[] valid, int position) {
+		int first = position;
+		position = calcFaceNormals(mesh, weighting, start, end, cornerWeights, valid, position);
+		int[] indices = mesh.getNormalIndices();
+		float[] faceNormals = mesh.faceNormals;
+		for (int j = first; j < position; j++) {
+			int i = 3*valid[j];
+			float x = faceNormals[i];
+			float y = faceNormals[i + 1];
+			float z = faceNormals[i + 2];
+			int a = 3*indices[i];
+			int b = 3*indices[i + 1];
+			int c = 3*indices[i + 2];
+			if(cornerWeights == null) {
+				add(vertexNormals, a, x, y, z);
+				add(vertexNormals, b, x, y, z);
+				add(vertexNormals, c, x, y, z);
+			} else {
+				add(vertexNormals, a, cornerWeights[i], x, y, z);
+				add(vertexNormals, b, cornerWeights[i + 1], x, y, z);
+				add(vertexNormals, c, cornerWeights[i + 2], x, y, z);
+			}
+			if(tangentSums != null) {
+				TangentFrames.addTriangle(mesh, i, indices, tangentSums);
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Calculates the normals of the triangles between start and end into the face normals of the mesh.
+	 * They are normalized, except for AREA weighting: the length of the cross product is twice the area of the triangle,
+	 * so it is kept and the square root and division are left out. Degenerate AREA triangles get a NaN normal
+	 * like the normalized ones do. For ANGLE weighting the angle of every corner is written to the corner weights.
+	 * Triangles that use a vertex twice get a NaN normal without reading their positions. The triangles with a valid normal
+	 * are written to the valid triangles, so whether a normal is NaN is only checked here, once per triangle,
+	 * with the same float operations that calculate it.
+	 * The vector kernels take as many full vectors of triangles as they can, the scalar loop does the rest.
+	 *
+	 * @param mesh	The mesh, its face normals array must be allocated and its vertex indices must be in range.
+	 * @param valid	The array for the valid triangles.
+	 * @param position	The position in the valid triangles of the first valid one.
+	 * @return	int
+	 * 		The position after the last valid triangle.
+	 */
+	static int calcFaceNormals(ObjData mesh, ObjectParser.WeightingMode weighting, int start, int end, float[] cornerWeights, 
+			int[] valid, int position) {
+		return calcFaceNormals(mesh, weighting, start, end, cornerWeights, valid, position, USE_VECTOR_KERNELS);
+	}
+
+	/**
+	 * Calculates the face normals like calcFaceNormals, with or without the vector kernels.
+	 * Only NormalBenchmark chooses, to compare both.
+	 *
+	 * @param vectorKernels	Whether the vector kernels are used, they must be available when it is true.
+	 */
+	static int calcFaceNormals(ObjData mesh, ObjectParser.WeightingMode weighting, int start, int end, float[] cornerWeights, 
+			int[] valid, int position, boolean vectorKernels) {
+		float[] positions = mesh.vertices;
+		int[] indices = mesh.triangleVertices;
+		float[] faceNormals = mesh.faceNormals;
+		if(vectorKernels) {
+			position = VECTOR_KERNELS.calcFaceNormals(mesh, weighting, start, end, cornerWeights, valid, position);
+			start = VECTOR_KERNELS.getBlockEnd(start, end);
+		}
+		for (int i = 3*start; i < 3*end; i += 3) {
+			int a = 3*indices[i];
+			int b = 3*indices[i + 1];
+			int c = 3*indices[i + 2];
+			if(a == b || b == c || c == a) {
+				faceNormals[i] = Float.NaN;
+				faceNormals[i + 1] = Float.NaN;
+				faceNormals[i + 2] = Float.NaN;
+				mesh.diagnostics.add(MeshDiagnostics.Issue.REPEATED_VERTEX, i / 3);
+				continue;
+			}
+			float bMinAx = positions[b] - positions[a];
+			float bMinAy = positions[b + 1] - positions[a + 1];
+			float bMinAz = positions[b + 2] - positions[a + 2];
+			float cMinAx = positions[c] - positions[a];
+			float cMinAy = positions[c + 1] - positions[a + 1];
+			float cMinAz = positions[c + 2] - positions[a + 2];
+			float x = bMinAy*cMinAz - bMinAz*cMinAy;
+			float y = cMinAx*bMinAz - cMinAz*bMinAx;
+			float z = bMinAx*cMinAy - bMinAy*cMinAx;
+			if(weighting == ObjectParser.WeightingMode.AREA) {
+				if(!(x*x + y*y + z*z > 0)) {
+					x = Float.NaN;
+					y = Float.NaN;
+					z = Float.NaN;
+				}
+			} else {
+				float length = length(x, y, z);
+				float scale = 1/length;
+				x *= scale;
+				y *= scale;
+				z *= scale;
+				if(cornerWeights != null) {
+					cornerWeights[i] = angle(length, bMinAx*cMinAx + bMinAy*cMinAy + bMinAz*cMinAz);
+					cornerWeights[i + 1] = angle(length, bMinAx*(bMinAx - cMinAx) + bMinAy*(bMinAy - cMinAy) + bMinAz*(bMinAz - cMinAz));
+					cornerWeights[i + 2] = angle(length, cMinAx*(cMinAx - bMinAx) + cMinAy*(cMinAy - bMinAy) + cMinAz*(cMinAz - bMinAz));
+				}
+			}
+			faceNormals[i] = x;
+			faceNormals[i + 1] = y;
+			faceNormals[i + 2] = z;
+			if(Float.isNaN(x) || Float.isNaN(y) || Float.isNaN(z)) {
+				mesh.diagnostics.add(MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, i / 3);
+			} else {
+				valid[position++] = i / 3;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Calculates the face normals and the normalized vertex normals by letting every vertex gather the normals
+	 * of the triangles around it from the adjacency. The triangles and then the vertices are divided in nbTasks ranges
+	 * that run in parallel without sharing a single value they write.
+	 * Every vertex adds the normals of its triangles in the order of the triangles, like calcTriangleNormals does,
+	 * so the normals are exactly the same as the SEQUENTIAL ones.
+	 * The adjacency holds all triangles, so the gather loop still skips the NaN face normals itself.
+	 *
+	 * @param mesh	The mesh, its face and vertex normals and its valid triangles are replaced.
+	 * @param weighting	The weighting of the face normals.
+	 * @param adjacency	The adjacency of the mesh.
+	 * @param pool	The pool to run on, or null to run on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles and the vertices in.
+	 */
+	static void gatherVertexNormals(final ObjData mesh, final ObjectParser.WeightingMode weighting, final VertexAdjacency adjacency, ForkJoinPool pool, final int nbTasks) {
+		final float[] cornerWeights = newCornerWeights(mesh, weighting);
+		final int[] valid = new int[mesh.nbTriangles];
+		final int[] nbValid = new int[nbTasks];
+		mesh.faceNormals = new float[3*mesh.nbTriangles];
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int start = getStart(mesh.nbTriangles, task, nbTasks);
+					nbValid[task] = calcFaceNormals(mesh, weighting, start, getStart(mesh.nbTriangles, task + 1, nbTasks), cornerWeights, valid, start) - start;
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		mesh.nbValidTriangles = compact(valid, mesh.nbTriangles, nbValid);
+		mesh.validTriangles = valid;
+		final float[] vertexNormals = new float[3*mesh.getNbVertexNormals()];
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					gather(mesh, adjacency, getStart(mesh.getNbVertexNormals(), task, nbTasks), getStart(mesh.getNbVertexNormals(), task + 1, nbTasks), vertexNormals, cornerWeights);
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		mesh.vertexNormals = vertexNormals;
+	}
+
+	/**
+	 * Sums the face normals around every vertex between start and end, weighted when there are corner weights,
+	 * and normalizes the sum.
+	 */
+	private static void gather(ObjData mesh, VertexAdjacency adjacency, int start, int end, float[] vertexNormals, float[] cornerWeights) {
+		float[] faceNormals = mesh.faceNormals;
+		int[] offsets = adjacency.offsets;
+		int[] corners = adjacency.corners;
+		for (int vertex = start; vertex < end; vertex++) {
+			float x = 0;
+			float y = 0;
+			float z = 0;
+			for (int j = offsets[vertex]; j < offsets[vertex + 1]; j++) {
+				int corner = corners[j];
+				int face = corner - corner % 3;
+				float faceX = faceNormals[face];
+				float faceY = faceNormals[face + 1];
+				float faceZ = faceNormals[face + 2];
+				if(!Float.isNaN(faceX) && !Float.isNaN(faceY) && !Float.isNaN(faceZ)) {
+					if(cornerWeights == null) {
+						x += faceX;
+						y += faceY;
+						z += faceZ;
+					} else {
+						float weight = cornerWeights[corner];
+						x += weight*faceX;
+						y += weight*faceY;
+						z += weight*faceZ;
+					}
+				}
+			}
+			vertexNormals[3*vertex] = x;
+			vertexNormals[3*vertex + 1] = y;
+			vertexNormals[3*vertex + 2] = z;
+		}
+		normalizeVertexNormals(vertexNormals, start, end);
+		checkVertexNormals(mesh, vertexNormals, start, end);
+	}
+
+	/**
+	 * Scales every vertex normal of the mesh to unit length, zero normals stay zero.
+	 */
+	static void normalizeVertexNormals(ObjData mesh) {
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		normalizeVertexNormals(mesh.vertexNormals, 0, mesh.getNbVertexNormals());
+		checkVertexNormals(mesh, mesh.vertexNormals, 0, mesh.getNbVertexNormals());
+	}
+
+	/**
+	 * Scales the vertex normals of the mesh to unit length in nbTasks ranges of vertices on the given pool.
+	 */
+	static void normalizeVertexNormals(final ObjData mesh, ForkJoinPool pool, final int nbTasks) {
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int start = getStart(mesh.getNbVertexNormals(), task, nbTasks);
+					int end = getStart(mesh.getNbVertexNormals(), task + 1, nbTasks);
+					normalizeVertexNormals(mesh.vertexNormals, start, end);
+					checkVertexNormals(mesh, mesh.vertexNormals, start, end);
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+	}
+
+	static void normalizeVertexNormals(float[] normals, int start, int end) {
+		normalizeVertexNormals(normals, start, end, USE_VECTOR_KERNELS);
+	}
+
+	/**
+	 * Normalizes the given vertex normals like normalizeVertexNormals, with or without the vector kernels.
+	 * Only NormalBenchmark chooses, to compare both.
+	 *
+	 * @param vectorKernels	Whether the vector kernels are used, they must be available when it is true.
+	 */
+	static void normalizeVertexNormals(float[] normals, int start, int end, boolean vectorKernels) {
+		if(vectorKernels) {
+			start = VECTOR_KERNELS.normalize(normals, start, end);
+		}
+		for (int i = 3*start; i < 3*end; i += 3) {
+			float length = length(normals[i], normals[i + 1], normals[i + 2]);
+			if(length != 0.0f) {
+				float scale = 1/length;
+				normals[i] *= scale;
+				normals[i + 1] *= scale;
+				normals[i + 2] *= scale;
+			}
+		}
+	}
+
+	/**
+	 * Counts the normals between start and end that are NaN in the diagnostics of the mesh, 
+	 * once per normal instead of inside the loops that add them up.
+	 */
+	static void checkVertexNormals(ObjData mesh, float[] normals, int start, int end) {
+		for (int i = 3*start; i < 3*end; i += 3) {
+			if(isNaN(normals, i)) {
+				mesh.diagnostics.add(MeshDiagnostics.Issue.NAN_VERTEX_NORMAL, i / 3);
+			}
+		}
+	}
+
+	/**
+	 * Returns the length of the given vector, as Vector3f.length does.
+	 */
+	static float length(float x, float y, float z) {
+		return (float) Math.sqrt(x*x + y*y + z*z);
+	}
+
+	/**
+	 * Returns the angle in radians between two edges of a triangle, 
+	 * from the length of their cross product and their dot product.
+	 */
+	static float angle(float crossLength, float dot) {
+		return (float) Math.atan2(crossLength, dot);
+	}
+
+	/**
+	 * Returns the first of the given corners whose vertex index is not between 0 and the number of vertices,
+	 * or end when they are all in range.
+	 * The vector kernels check as many full vectors of corners as they can, the scalar loop does the rest.
+	 */
+	static int findIndexOutOfRange(int[] indices, int start, int end, int nbVertices) {
+		int corner = start;
+		if(USE_VECTOR_KERNELS) {
+			corner = VECTOR_KERNELS.findIndexOutOfRange(indices, start, end, nbVertices);
+		}
+		for (; corner < end; corner++) {
+			if(indices[corner] < 0 || indices[corner] >= nbVertices) {
+				return corner;
+			}
+		}
+		return end;
+	}
+
+	private static void add(float[] normals, int index, float x, float y, float z) {
+		normals[index] += x;
+		normals[index + 1] += y;
+		normals[index + 2] += z;
+	}
+
+	private static void add(float[] normals, int index, float weight, float x, float y, float z) {
+		normals[index] += weight*x;
+		normals[index + 1] += weight*y;
+		normals[index + 2] += weight*z;
+	}
+
+	private static boolean isNaN(float[] normals, int index) {
+		return Float.isNaN(normals[index]) || Float.isNaN(normals[index + 1]) || Float.isNaN(normals[index + 2]);
+	}
+}
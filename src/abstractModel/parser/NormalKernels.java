@@ -0,0 +1,62 @@
+package abstractModel.parser;
+
+/**
+ * NormalKernels are the steps of NormalEngine that can work on several triangles, vertices or indices at once:
+ * checking the vertex indices, calculating the face normals and normalizing the vertex normals.
+ * Every step handles as many full blocks as it can and returns where it stopped, the scalar loops of NormalEngine do the rest,
+ * so the results are exactly those of the scalar loops.
+ *
+ * The only implementation, VectorNormalKernels, uses the jdk.incubator.vector module. It is kept in the src-vector
+ * source root, so the rest of the project compiles on a JDK without that module, and NormalEngine loads it through reflection.
+ *
+ * @author Geert Van Campenhout
+ */
+interface NormalKernels {
+
+	/**
+	 * Returns the first of the given corners whose vertex index is not between 0 and the number of vertices.
+	 *
+	 * @param indices	The vertex index of every corner.
+	 * @param start	The first corner.
+	 * @param end	The corner after the last one.
+	 * @param nbVertices	The number of vertices.
+	 * @return	int
+	 * 		The first corner out of range, or the first corner that is not checked because there are not enough corners left
+	 * 		for a full block.
+	 */
+	int findIndexOutOfRange(int[] indices, int start, int end, int nbVertices);
+
+	/**
+	 * Returns the triangle after the last one that calcFaceNormals calculates between start and end.
+	 */
+	int getBlockEnd(int start, int end);
+
+	/**
+	 * Calculates the normals of the triangles from start on in full blocks, as NormalEngine.calcFaceNormals does 
+	 * for the given weighting, up to getBlockEnd.
+	 * The triangles with a valid normal are written to the valid triangles, the others to the diagnostics.
+	 *
+	 * @param mesh	The mesh, its face normals array must be allocated and its vertex indices must be in range.
+	 * @param weighting	The weighting of the face normals.
+	 * @param start	The first triangle.
+	 * @param end	The triangle after the last one.
+	 * @param cornerWeights	The array for the angles of the corners for ANGLE weighting, otherwise null.
+	 * @param valid	The array for the valid triangles.
+	 * @param position	The position in the valid triangles of the first valid one.
+	 * @return	int
+	 * 		The position after the last valid triangle.
+	 */
+	int calcFaceNormals(ObjData mesh, ObjectParser.WeightingMode weighting, int start, int end, float[] cornerWeights, 
+			int[] valid, int position);
+
+	/**
+	 * Scales the vertex normals from start on to unit length in full blocks, zero normals stay zero.
+	 *
+	 * @param normals	The vertex normals, three floats per vertex.
+	 * @param start	The first vertex.
+	 * @param end	The vertex after the last one.
+	 * @return	int
+	 * 		The first vertex that is not normalized, because there are not enough vertices left for a full block.
+	 */
+	int normalize(float[] normals, int start, int end);
+}
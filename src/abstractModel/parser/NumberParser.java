@@ -0,0 +1,179 @@
+package abstractModel.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * NumberParser decodes floats and ints directly from a range of ASCII bytes, without creating a String.
+ * The results are exactly the same as those of Float.parseFloat and Integer.parseInt.
+ *
+ * Decimals with at most 15 significant digits and a small exponent, like the fixed-point numbers
+ * written by most exporters, are decoded on a fast path. All other input falls back on the methods of the JDK.
+ *
+ * @author Geert Van Campenhout
+ */
+public final class NumberParser {
+
+	//Every power of ten up to 10^22 is exactly representable as a double.
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	//Every integer below 2^53 is exactly representable as a double.
+	private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+
+	private NumberParser() {
+	}
+
+	/**
+	 * Parses the bytes between start and end as a float.
+	 *
+	 * The significand m and the decimal exponent e are accumulated exactly. If m < 2^53 and |e| <= 22
+	 * both m and 10^|e| are exact doubles, so a single double multiplication or division gives the
+	 * correctly rounded double q of the decimal value. Rounding q to a float is then correct as well,
+	 * unless q lies exactly halfway between two floats: in that case the exact value could be on either side
+	 * and the slow path decides.
+	 *
+	 * @param buffer	The buffer containing the bytes.
+	 * @param start	The index of the first byte.
+	 * @param end	The index after the last byte.
+	 * @return	float
+	 * 		The same value as Float.parseFloat would return for these bytes.
+	 * @throws NumberFormatException	If the bytes do not form a valid float.
+	 */
+	public static float parseFloat(ByteBuffer buffer, int start, int end) {
+		int index = start;
+		boolean negative = false;
+		if(index < end) {
+			byte b = buffer.get(index);
+			if(b == '-') {
+				negative = true;
+				index++;
+			} else if(b == '+') {
+				index++;
+			}
+		}
+		long significand = 0;
+		int nbDigits = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean point = false;
+		while(index < end) {
+			int digit = buffer.get(index) - '0';
+			if(digit >= 0 && digit <= 9) {
+				nbDigits++;
+				if(significand != 0 || digit != 0) {
+					if(++significantDigits > 18) {
+						return parseFloatSlow(buffer, start, end);
+					}
+					significand = 10 * significand + digit;
+				}
+				if(point) {
+					exponent--;
+				}
+			} else if(digit == '.' - '0' && !point) {
+				point = true;
+			} else {
+				break;
+			}
+			index++;
+		}
+		if(nbDigits == 0) {
+			return parseFloatSlow(buffer, start, end);
+		}
+		if(index < end) {
+			byte b = buffer.get(index);
+			if(b != 'e' && b != 'E') {
+				return parseFloatSlow(buffer, start, end);
+			}
+			index++;
+			boolean negativeExponent = false;
+			if(index < end) {
+				b = buffer.get(index);
+				if(b == '-') {
+					negativeExponent = true;
+					index++;
+				} else if(b == '+') {
+					index++;
+				}
+			}
+			if(index == end || end - index > 4) {
+				return parseFloatSlow(buffer, start, end);
+			}
+			int explicitExponent = 0;
+			while(index < end) {
+				int digit = buffer.get(index++) - '0';
+				if(digit < 0 || digit > 9) {
+					return parseFloatSlow(buffer, start, end);
+				}
+				explicitExponent = 10 * explicitExponent + digit;
+			}
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if(significand == 0) {
+			return negative ? -0.0f : 0.0f;
+		}
+		if(significand >= MAX_EXACT_SIGNIFICAND || exponent < -22 || exponent > 22) {
+			return parseFloatSlow(buffer, start, end);
+		}
+		double value = exponent < 0 ? significand / POWERS_OF_TEN[-exponent] : significand * POWERS_OF_TEN[exponent];
+		float result = (float) value;
+		if((double) result != value) {
+			double neighbour = value > result ? Math.nextUp(result) : Math.nextDown(result);
+			if(value - result == neighbour - value) {
+				return parseFloatSlow(buffer, start, end);
+			}
+		}
+		return negative ? -result : result;
+	}
+
+	/**
+	 * Parses the bytes between start and end as a decimal int.
+	 *
+	 * @param buffer	The buffer containing the bytes.
+	 * @param start	The index of the first byte.
+	 * @param end	The index after the last byte.
+	 * @return	int
+	 * 		The same value as Integer.parseInt would return for these bytes.
+	 * @throws NumberFormatException	If the bytes do not form a valid int.
+	 */
+	public static int parseInt(ByteBuffer buffer, int start, int end) {
+		int index = start;
+		boolean negative = false;
+		if(index < end) {
+			byte b = buffer.get(index);
+			if(b == '-') {
+				negative = true;
+				index++;
+			} else if(b == '+') {
+				index++;
+			}
+		}
+		//Nine digits always fit in an int.
+		if(index == end || end - index > 9) {
+			return Integer.parseInt(toString(buffer, start, end));
+		}
+		int result = 0;
+		while(index < end) {
+			int digit = buffer.get(index++) - '0';
+			if(digit < 0 || digit > 9) {
+				return Integer.parseInt(toString(buffer, start, end));
+			}
+			result = 10 * result + digit;
+		}
+		return negative ? -result : result;
+	}
+
+	private static float parseFloatSlow(ByteBuffer buffer, int start, int end) {
+		return Float.parseFloat(toString(buffer, start, end));
+	}
+
+	private static String toString(ByteBuffer buffer, int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,219 @@
+package abstractModel.parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ObjChunkParser parses a range of raw .obj bytes into an ObjData.
+ * A range always has to start at the beginning of a line and end after a complete line.
+ * Every thread that parses a chunk of a file uses its own ObjChunkParser.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ObjChunkParser {
+
+	private final ObjTokenizer tokenizer = new ObjTokenizer();
+	//Decoder for the layout of the face vertices, detected on the first face.
+	private FaceDecoder decoder;
+	//Zero based indices of the vertices of the face that is being parsed, they grow with the largest face.
+	private int[] faceVertices = new int[4];
+	private int[] faceTextures = new int[4];
+	private int[] faceNormals = new int[4];
+
+	/**
+	 * Parses all lines between start and end of the given buffer and adds their contents to the given data.
+	 *
+	 * @param buffer	The buffer containing the bytes of the .obj file.
+	 * @param start	The index of the first byte of the first line.
+	 * @param end	The index after the last byte of the last line.
+	 * @param data	The ObjData to add the parsed contents to.
+	 */
+	public void parse(ByteBuffer buffer, int start, int end, ObjData data) {
+		this.tokenizer.reset(buffer, start, end);
+		while(this.tokenizer.nextLine()) {
+			parseLine(data);
+		}
+	}
+
+	/**
+	 * Parses the current line of the tokenizer.
+	 * The directive is recognized from its first one or two bytes, only the rare directives 
+	 * that share a first byte are compared completely.
+	 * Numbers are decoded in place by the NumberParser, so no garbage is created per line.
+	 */
+	private void parseLine(ObjData data) {
+		ObjTokenizer tokenizer = this.tokenizer;
+		if(!tokenizer.nextToken()) {
+			//empty line
+			return;
+		}
+		int start = tokenizer.getTokenStart();
+		int length = tokenizer.getTokenEnd() - start;
+		switch(tokenizer.byteAt(start)) {
+		case 'v':
+			if(length == 1) {
+				//Vertex
+				float x = nextFloat(tokenizer);
+				float y = nextFloat(tokenizer);
+				float z = nextFloat(tokenizer);
+				data.addVertex(x, y, z);
+				return;
+			} else if(length == 2) {
+				byte second = tokenizer.byteAt(start + 1);
+				if(second == 't') {
+					//Textuurcoordinaat
+					float u = nextFloat(tokenizer);
+					float v = nextFloat(tokenizer);
+					data.addTextureCoordinate(u, v);
+					return;
+				} else if(second == 'n') {
+					//normaal
+					float x = nextFloat(tokenizer);
+					float y = nextFloat(tokenizer);
+					float z = nextFloat(tokenizer);
+					data.addNormal(x, y, z);
+					return;
+				}
+			}
+			break;
+		case 'f':
+			if(length == 1) {
+				//Vlak
+				parseFace(data);
+				return;
+			}
+			break;
+		case '#':
+			//ignore Comment lines
+			return;
+		case 'g':
+			if(length == 1) {
+				//Group start
+				data.diagnostics.add(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, data.nbTriangles);
+				return;
+			}
+			break;
+		case 'o':
+			if(length == 1) {
+				//objectname start
+				data.diagnostics.add(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, data.nbTriangles);
+				return;
+			}
+			break;
+		case 's':
+			if(length == 1) {
+				//smoothgroup start
+				if(!tokenizer.nextToken()) {
+					throw new NumberFormatException("Missing smoothing group.");
+				}
+				data.setSmoothingGroup(tokenizer.tokenEquals("off") ? 0 : tokenizer.rangeInt(tokenizer.getTokenStart(), tokenizer.getTokenEnd()));
+				return;
+			}
+			break;
+		case 'm':
+			if(tokenizer.tokenEquals("mtllib")) {
+				//Mtllib start
+				data.diagnostics.add(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, data.nbTriangles);
+				return;
+			}
+			break;
+		case 'u':
+			if(tokenizer.tokenEquals("usemtl")) {
+				//usemtl name material start
+				data.diagnostics.add(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, data.nbTriangles);
+				return;
+			}
+			break;
+		default:
+			break;
+		}
+		throw new UnsupportedOperationException("Lines starting with \"" + tokenizer.tokenString() + "\" not supported yet.");
+	}
+
+	private static float nextFloat(ObjTokenizer tokenizer) {
+		if(!tokenizer.nextToken()) {
+			throw new NumberFormatException("Missing coordinate.");
+		}
+		return tokenizer.tokenFloat();
+	}
+
+	/**
+	 * Parses the vertices of a face line and adds its triangles to the data.
+	 * Faces with more than three vertices are split in a fan of triangles around the first vertex,
+	 * so quads are split in the same two triangles as before.
+	 * Relative indices are stored relative to the start of the data, see ObjData.resolve.
+	 */
+	private void parseFace(ObjData data) {
+		ObjTokenizer tokenizer = this.tokenizer;
+		int nbVertices = 0;
+		while(tokenizer.nextToken()) {
+			if(nbVertices == this.faceVertices.length){
+				this.faceVertices = Arrays.copyOf(this.faceVertices, 2*nbVertices);
+				this.faceTextures = Arrays.copyOf(this.faceTextures, 2*nbVertices);
+				this.faceNormals = Arrays.copyOf(this.faceNormals, 2*nbVertices);
+			}
+			decodeFaceVertex(tokenizer.getTokenStart(), tokenizer.getTokenEnd());
+			FaceDecoder decoder = this.decoder;
+			this.faceVertices[nbVertices] = toIndex(decoder.vertex, data.nbVertices, -1);
+			this.faceTextures[nbVertices] = toIndex(decoder.texture, data.nbTextureCoordinates, 0);
+			this.faceNormals[nbVertices] = toIndex(decoder.normal, data.nbNormals, -1);
+			nbVertices++;
+		}
+		if(nbVertices < 3){
+			throw new UnsupportedOperationException("Don't support faces with less than 3 vertices.");
+		}
+		int[] v = this.faceVertices;
+		int[] t = this.faceTextures;
+		int[] n = this.faceNormals;
+		for (int i = 1; i < nbVertices - 1; i++) {
+			data.addTriangle(v[0], v[i], v[i+1], t[0], t[i], t[i+1], n[0], n[i], n[i+1]);
+		}
+	}
+
+	/**
+	 * Returns the zero based index of the given raw index from the file.
+	 *
+	 * @param raw	The one based or relative index, 0 if it is missing.
+	 * @param count	The number of vertices, texture coordinates or normals read so far in the data.
+	 * @param missing	The index to use when it is missing.
+	 */
+	private static int toIndex(int raw, int count, int missing) {
+		if(raw > 0) {
+			return raw - 1;
+		}
+		if(raw < 0) {
+			return ObjData.relative(count + raw);
+		}
+		return missing;
+	}
+
+	/**
+	 * Decodes a vertex token with the decoder for the layout of this file.
+	 * The layout is detected on the first face and again when a token does not match it.
+	 */
+	private void decodeFaceVertex(int start, int end) {
+		if(this.decoder != null && this.decoder.decode(this.tokenizer, start, end)) {
+			return;
+		}
+		FaceDecoder detected = FaceDecoder.forToken(this.tokenizer, start, end);
+		if(this.decoder != null && detected.getClass() == this.decoder.getClass() 
+				|| !detected.decode(this.tokenizer, start, end)) {
+			throw new NumberFormatException("Invalid face vertex \"" + this.tokenizer.rangeString(start, end) + "\".");
+		}
+		this.decoder = detected;
+	}
+
+	/**
+	 * Decodes a single vertex token between start and end of the given buffer, outside of a parsed range.
+	 * The returned decoder holds the raw indices of the token until the next token is decoded.
+	 *
+	 * @param buffer	The buffer containing the token.
+	 * @param start	The index of the first byte of the token.
+	 * @param end	The index after the last byte of the token.
+	 */
+	FaceDecoder decodeFaceVertex(ByteBuffer buffer, int start, int end) {
+		this.tokenizer.reset(buffer, start, end);
+		decodeFaceVertex(start, end);
+		return this.decoder;
+	}
+}
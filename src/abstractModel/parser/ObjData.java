@@ -0,0 +1,434 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ObjData holds the contents of (a part of) an .obj file in flat primitive arrays.
+ * The parsed chunks of a file are ObjData, and so is the whole mesh of an ObjectParser:
+ * a few large arrays instead of an object per vertex and per triangle keep a mesh with
+ * tens of millions of triangles in a reasonable heap.
+ * Coordinates are stored as consecutive x, y(, z) values, triangles as three consecutive indices.
+ * The indices are zero based, like those of the Triangle class.
+ * Relative (negative) indices of the file are stored with the RELATIVE offset, because they can only be made absolute
+ * once the number of vertices before this ObjData is known, see resolve.
+ * In the same way the triangles before the first s line of an ObjData are in the INHERIT smoothing group,
+ * because their group is the one of the last s line before this ObjData.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ObjData {
+
+	private static final int INITIAL_CAPACITY = 64;
+	//Offset of an index that is relative to the start of this ObjData, it keeps those indices below -1.
+	static final int RELATIVE = Integer.MIN_VALUE / 2;
+	//Smoothing group of the triangles that keep the group in effect at the start of this ObjData.
+	static final int INHERIT = -1;
+
+	float[] vertices = new float[3*INITIAL_CAPACITY];
+	int nbVertices;
+
+	float[] textureCoordinates = new float[2*INITIAL_CAPACITY];
+	int nbTextureCoordinates;
+
+	float[] normals = new float[3*INITIAL_CAPACITY];
+	int nbNormals;
+
+	int[] triangleVertices = new int[3*INITIAL_CAPACITY];
+	int[] triangleTextureCoordinates = new int[3*INITIAL_CAPACITY];
+	//-1 for vertices of a face without normal index.
+	int[] triangleNormals = new int[3*INITIAL_CAPACITY];
+	//The smoothing group of every triangle, 0 for no smoothing (s off).
+	int[] triangleGroups = new int[INITIAL_CAPACITY];
+	int nbTriangles;
+	//The smoothing group of the last s line, the group of the triangles that are added next.
+	int smoothingGroup = INHERIT;
+
+	//The calculated normals, three floats per vertex and per triangle, null until they are calculated.
+	//The face normals stay null when the normals of the file are reused, they are not normalized for AREA weighting.
+	float[] vertexNormals;
+	float[] faceNormals;
+	//The index of the calculated normal of every triangle corner, when the vertices are split per smoothing group,
+	//otherwise null and every vertex has one normal.
+	int[] cornerNormals;
+	int nbVertexNormals;
+	//The tangent of every calculated normal, four floats per normal, null unless tangents are calculated.
+	float[] tangents;
+	//The triangles with a valid face normal in the order of the triangles, the first nbValidTriangles of the array.
+	//NormalEngine finds them while it calculates the face normals, null when they have to be found again from the face normals.
+	int[] validTriangles;
+	int nbValidTriangles;
+	//The triangle corners around every vertex, built when needed and dropped when triangles are appended.
+	VertexAdjacency adjacency;
+	//The problems found while parsing, calculating the normals and writing.
+	final MeshDiagnostics diagnostics = new MeshDiagnostics();
+
+	public void addVertex(float x, float y, float z) {
+		if(3*nbVertices == vertices.length) {
+			vertices = Arrays.copyOf(vertices, 2*vertices.length);
+		}
+		int index = 3*nbVertices++;
+		vertices[index] = x;
+		vertices[index + 1] = y;
+		vertices[index + 2] = z;
+	}
+
+	public void addTextureCoordinate(float u, float v) {
+		if(2*nbTextureCoordinates == textureCoordinates.length) {
+			textureCoordinates = Arrays.copyOf(textureCoordinates, 2*textureCoordinates.length);
+		}
+		int index = 2*nbTextureCoordinates++;
+		textureCoordinates[index] = u;
+		textureCoordinates[index + 1] = v;
+	}
+
+	public void addNormal(float x, float y, float z) {
+		if(3*nbNormals == normals.length) {
+			normals = Arrays.copyOf(normals, 2*normals.length);
+		}
+		int index = 3*nbNormals++;
+		normals[index] = x;
+		normals[index + 1] = y;
+		normals[index + 2] = z;
+	}
+
+	/**
+	 * Adds a triangle with the given zero based vertex, texture coordinate and normal indices.
+	 */
+	public void addTriangle(int a, int b, int c, int textA, int textB, int textC, int normalA, int normalB, int normalC) {
+		if(3*nbTriangles == triangleVertices.length) {
+			triangleVertices = Arrays.copyOf(triangleVertices, 2*triangleVertices.length);
+			triangleTextureCoordinates = Arrays.copyOf(triangleTextureCoordinates, 2*triangleTextureCoordinates.length);
+			triangleNormals = Arrays.copyOf(triangleNormals, 2*triangleNormals.length);
+			triangleGroups = Arrays.copyOf(triangleGroups, 2*triangleGroups.length);
+		}
+		triangleGroups[nbTriangles] = smoothingGroup;
+		int index = 3*nbTriangles++;
+		triangleVertices[index] = a;
+		triangleVertices[index + 1] = b;
+		triangleVertices[index + 2] = c;
+		triangleTextureCoordinates[index] = textA;
+		triangleTextureCoordinates[index + 1] = textB;
+		triangleTextureCoordinates[index + 2] = textC;
+		triangleNormals[index] = normalA;
+		triangleNormals[index + 1] = normalB;
+		triangleNormals[index + 2] = normalC;
+	}
+
+	/**
+	 * Sets the smoothing group of the triangles that are added next.
+	 *
+	 * @param group	The number of the group, 0 for no smoothing.
+	 */
+	public void setSmoothingGroup(int group) {
+		if(group < 0) {
+			throw new IllegalArgumentException("Invalid smoothing group [" + group + "].");
+		}
+		smoothingGroup = group;
+	}
+
+	/**
+	 * Returns the index that is stored for the given index, counted from the first vertex, 
+	 * texture coordinate or normal of this ObjData. The index can be negative when it refers to an earlier ObjData.
+	 */
+	static int relative(int index) {
+		return RELATIVE + index;
+	}
+
+	/**
+	 * Returns the absolute index of the given stored index.
+	 *
+	 * @param index	The stored index.
+	 * @param base	The number of vertices, texture coordinates or normals before this ObjData.
+	 */
+	static int resolve(int index, int base) {
+		return index < -1 ? base + index - RELATIVE : index;
+	}
+
+	/**
+	 * Appends the contents of the given chunks, in order, to this ObjData.
+	 * A prefix sum over the sizes of the chunks gives the position of every chunk in the arrays,
+	 * so all chunks can be copied in parallel on the given pool and still end up 
+	 * in the same order as when the file was parsed sequentially.
+	 * The relative indices of the chunks are resolved on the way, and so are the inherited smoothing groups:
+	 * the group in effect at the start of every chunk is the last one set before it.
+	 * 
+	 * @param chunks	The parsed chunks, in the order in which they appear in the file.
+	 * @param pool	The pool to copy on, or null to copy on the current thread.
+	 */
+	void append(final ObjData[] chunks, ForkJoinPool pool) {
+		final int[] vertexOffsets = new int[chunks.length + 1];
+		final int[] textureOffsets = new int[chunks.length + 1];
+		final int[] normalOffsets = new int[chunks.length + 1];
+		final int[] triangleOffsets = new int[chunks.length + 1];
+		final int[] groups = new int[chunks.length + 1];
+		vertexOffsets[0] = this.nbVertices;
+		textureOffsets[0] = this.nbTextureCoordinates;
+		normalOffsets[0] = this.nbNormals;
+		triangleOffsets[0] = this.nbTriangles;
+		groups[0] = this.smoothingGroup == INHERIT ? 0 : this.smoothingGroup;
+		for (int i = 0; i < chunks.length; i++) {
+			vertexOffsets[i+1] = vertexOffsets[i] + chunks[i].nbVertices;
+			textureOffsets[i+1] = textureOffsets[i] + chunks[i].nbTextureCoordinates;
+			normalOffsets[i+1] = normalOffsets[i] + chunks[i].nbNormals;
+			triangleOffsets[i+1] = triangleOffsets[i] + chunks[i].nbTriangles;
+			groups[i+1] = chunks[i].smoothingGroup == INHERIT ? groups[i] : chunks[i].smoothingGroup;
+		}
+		this.vertices = grow(this.vertices, 3*vertexOffsets[chunks.length]);
+		this.textureCoordinates = grow(this.textureCoordinates, 2*textureOffsets[chunks.length]);
+		this.normals = grow(this.normals, 3*normalOffsets[chunks.length]);
+		this.triangleVertices = grow(this.triangleVertices, 3*triangleOffsets[chunks.length]);
+		this.triangleTextureCoordinates = grow(this.triangleTextureCoordinates, 3*triangleOffsets[chunks.length]);
+		this.triangleNormals = grow(this.triangleNormals, 3*triangleOffsets[chunks.length]);
+		this.triangleGroups = grow(this.triangleGroups, triangleOffsets[chunks.length]);
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < chunks.length; i++) {
+			final int chunk = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					ObjData data = chunks[chunk];
+					System.arraycopy(data.vertices, 0, vertices, 3*vertexOffsets[chunk], 3*data.nbVertices);
+					System.arraycopy(data.textureCoordinates, 0, textureCoordinates, 2*textureOffsets[chunk], 2*data.nbTextureCoordinates);
+					System.arraycopy(data.normals, 0, normals, 3*normalOffsets[chunk], 3*data.nbNormals);
+					int offset = 3*triangleOffsets[chunk];
+					for (int j = 0; j < 3*data.nbTriangles; j++) {
+						triangleVertices[offset + j] = resolve(data.triangleVertices[j], vertexOffsets[chunk]);
+						triangleTextureCoordinates[offset + j] = resolve(data.triangleTextureCoordinates[j], textureOffsets[chunk]);
+						triangleNormals[offset + j] = resolve(data.triangleNormals[j], normalOffsets[chunk]);
+					}
+					for (int j = 0; j < data.nbTriangles; j++) {
+						int group = data.triangleGroups[j];
+						triangleGroups[triangleOffsets[chunk] + j] = group == INHERIT ? groups[chunk] : group;
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		//In the order of the chunks, so the samples are the first ones in the file.
+		for (int i = 0; i < chunks.length; i++) {
+			this.diagnostics.addAll(chunks[i].diagnostics, triangleOffsets[i]);
+		}
+		this.nbVertices = vertexOffsets[chunks.length];
+		this.nbTextureCoordinates = textureOffsets[chunks.length];
+		this.nbNormals = normalOffsets[chunks.length];
+		this.nbTriangles = triangleOffsets[chunks.length];
+		this.smoothingGroup = groups[chunks.length];
+		this.adjacency = null;
+		this.cornerNormals = null;
+	}
+
+	/**
+	 * Appends the contents of the given ObjData to this one on the current thread.
+	 * Does the same as appending it as the only chunk, without the prefix sum and the task,
+	 * so that appending the few elements of a single line stays cheap.
+	 *
+	 * @param data	The parsed data.
+	 */
+	void append(ObjData data) {
+		int group = this.smoothingGroup == INHERIT ? 0 : this.smoothingGroup;
+		this.vertices = grow(this.vertices, 3*(this.nbVertices + data.nbVertices));
+		this.textureCoordinates = grow(this.textureCoordinates, 2*(this.nbTextureCoordinates + data.nbTextureCoordinates));
+		this.normals = grow(this.normals, 3*(this.nbNormals + data.nbNormals));
+		this.triangleVertices = grow(this.triangleVertices, 3*(this.nbTriangles + data.nbTriangles));
+		this.triangleTextureCoordinates = grow(this.triangleTextureCoordinates, 3*(this.nbTriangles + data.nbTriangles));
+		this.triangleNormals = grow(this.triangleNormals, 3*(this.nbTriangles + data.nbTriangles));
+		this.triangleGroups = grow(this.triangleGroups, this.nbTriangles + data.nbTriangles);
+		System.arraycopy(data.vertices, 0, this.vertices, 3*this.nbVertices, 3*data.nbVertices);
+		System.arraycopy(data.textureCoordinates, 0, this.textureCoordinates, 2*this.nbTextureCoordinates, 2*data.nbTextureCoordinates);
+		System.arraycopy(data.normals, 0, this.normals, 3*this.nbNormals, 3*data.nbNormals);
+		int offset = 3*this.nbTriangles;
+		for (int j = 0; j < 3*data.nbTriangles; j++) {
+			this.triangleVertices[offset + j] = resolve(data.triangleVertices[j], this.nbVertices);
+			this.triangleTextureCoordinates[offset + j] = resolve(data.triangleTextureCoordinates[j], this.nbTextureCoordinates);
+			this.triangleNormals[offset + j] = resolve(data.triangleNormals[j], this.nbNormals);
+		}
+		for (int j = 0; j < data.nbTriangles; j++) {
+			this.triangleGroups[this.nbTriangles + j] = data.triangleGroups[j] == INHERIT ? group : data.triangleGroups[j];
+		}
+		this.diagnostics.addAll(data.diagnostics, this.nbTriangles);
+		this.nbVertices += data.nbVertices;
+		this.nbTextureCoordinates += data.nbTextureCoordinates;
+		this.nbNormals += data.nbNormals;
+		this.nbTriangles += data.nbTriangles;
+		this.smoothingGroup = data.smoothingGroup == INHERIT ? group : data.smoothingGroup;
+		this.adjacency = null;
+		this.cornerNormals = null;
+	}
+
+	/**
+	 * Removes the triangles with a vertex index that is not between 0 and the number of vertices, and counts them
+	 * in the diagnostics, so that no later loop needs to check the indices.
+	 * The indices are checked in nbTasks ranges on the given pool, with the vector kernels when NormalEngine uses them.
+	 * Only when one is out of range the other triangles are moved together, in their order.
+	 *
+	 * @param pool	The pool to check on, or null to check on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles in.
+	 */
+	void removeTrianglesOutOfRange(ForkJoinPool pool, final int nbTasks) {
+		final int nbCorners = 3*this.nbTriangles;
+		final boolean[] found = new boolean[nbTasks];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int end = NormalEngine.getStart(nbCorners, task + 1, nbTasks);
+					found[task] = NormalEngine.findIndexOutOfRange(triangleVertices, NormalEngine.getStart(nbCorners, task, nbTasks), end, nbVertices) < end;
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		boolean anyFound = false;
+		for (int i = 0; i < nbTasks; i++) {
+			anyFound |= found[i];
+		}
+		if(!anyFound) {
+			return;
+		}
+		int count = 0;
+		for (int triangle = 0; triangle < this.nbTriangles; triangle++) {
+			int i = 3*triangle;
+			if(NormalEngine.findIndexOutOfRange(this.triangleVertices, i, i + 3, this.nbVertices) < i + 3) {
+				this.diagnostics.add(MeshDiagnostics.Issue.INVALID_INDEX, triangle);
+				continue;
+			}
+			System.arraycopy(this.triangleVertices, i, this.triangleVertices, 3*count, 3);
+			System.arraycopy(this.triangleTextureCoordinates, i, this.triangleTextureCoordinates, 3*count, 3);
+			System.arraycopy(this.triangleNormals, i, this.triangleNormals, 3*count, 3);
+			this.triangleGroups[count] = this.triangleGroups[triangle];
+			count++;
+		}
+		this.nbTriangles = count;
+		this.adjacency = null;
+		this.cornerNormals = null;
+	}
+
+	/**
+	 * Returns the given array, or a copy of it that is larger when it is shorter than the given length.
+	 */
+	static float[] grow(float[] array, int length) {
+		return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, 2*array.length));
+	}
+
+	static int[] grow(int[] array, int length) {
+		return length <= array.length ? array : Arrays.copyOf(array, Math.max(length, 2*array.length));
+	}
+
+	/**
+	 * Lets this ObjData use the texture coordinates, the given normals, the triangles and the split corner normals
+	 * of the given one, without copying them. Only the vertices and the calculated normals stay its own.
+	 * Neither ObjData may append or edit triangles afterwards.
+	 *
+	 * @param topology	The ObjData whose faces are used.
+	 */
+	void shareTopology(ObjData topology) {
+		this.textureCoordinates = topology.textureCoordinates;
+		this.nbTextureCoordinates = topology.nbTextureCoordinates;
+		this.normals = topology.normals;
+		this.nbNormals = topology.nbNormals;
+		this.triangleVertices = topology.triangleVertices;
+		this.triangleTextureCoordinates = topology.triangleTextureCoordinates;
+		this.triangleNormals = topology.triangleNormals;
+		this.triangleGroups = topology.triangleGroups;
+		this.nbTriangles = topology.nbTriangles;
+		this.smoothingGroup = topology.smoothingGroup;
+		this.cornerNormals = topology.cornerNormals;
+		this.nbVertexNormals = topology.nbVertexNormals;
+		this.validTriangles = null;
+		this.adjacency = null;
+	}
+
+	/**
+	 * Returns the triangle corners around every vertex, building them on the given pool the first time.
+	 *
+	 * @param pool	The pool to build on, or null to build on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles and the vertices in.
+	 */
+	VertexAdjacency getAdjacency(ForkJoinPool pool, int nbTasks) {
+		if(this.adjacency == null) {
+			this.adjacency = VertexAdjacency.build(this, pool, nbTasks);
+		}
+		return this.adjacency;
+	}
+
+	/**
+	 * Returns the triangles with a valid face normal, the first nbValidTriangles of the array.
+	 * When they were not found along with the face normals, because those were loaded or edited, 
+	 * they are found again from the NaN face normals. Without face normals all triangles are valid.
+	 */
+	int[] getValidTriangles() {
+		if(this.validTriangles == null) {
+			int[] valid = new int[this.nbTriangles];
+			int count = 0;
+			for (int triangle = 0; triangle < this.nbTriangles; triangle++) {
+				int i = 3*triangle;
+				if(this.faceNormals == null || !(Float.isNaN(this.faceNormals[i]) || Float.isNaN(this.faceNormals[i + 1]) || Float.isNaN(this.faceNormals[i + 2]))) {
+					valid[count++] = triangle;
+				}
+			}
+			this.validTriangles = valid;
+			this.nbValidTriangles = count;
+		}
+		return this.validTriangles;
+	}
+
+	/**
+	 * Returns the index of the calculated normal of every triangle corner, three per triangle like triangleVertices.
+	 */
+	int[] getNormalIndices() {
+		return this.cornerNormals != null ? this.cornerNormals : this.triangleVertices;
+	}
+
+	/**
+	 * Returns the number of calculated normals, which is the number of vertices unless they are split per smoothing group.
+	 */
+	int getNbVertexNormals() {
+		return this.cornerNormals != null ? this.nbVertexNormals : this.nbVertices;
+	}
+
+	public int getNbVertices() {
+		return this.nbVertices;
+	}
+
+	public int getNbTextureCoordinates() {
+		return this.nbTextureCoordinates;
+	}
+
+	public int getNbNormals() {
+		return this.nbNormals;
+	}
+
+	public int getNbTriangles() {
+		return this.nbTriangles;
+	}
+
+	/**
+	 * Returns the problems found while parsing, calculating the normals and writing.
+	 */
+	public MeshDiagnostics getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	/**
+	 * Empties this ObjData but keeps the allocated arrays.
+	 */
+	public void clear() {
+		nbVertices = 0;
+		nbTextureCoordinates = 0;
+		nbNormals = 0;
+		nbTriangles = 0;
+		vertexNormals = null;
+		faceNormals = null;
+		validTriangles = null;
+		tangents = null;
+		cornerNormals = null;
+		adjacency = null;
+		smoothingGroup = INHERIT;
+		diagnostics.clear();
+	}
+}
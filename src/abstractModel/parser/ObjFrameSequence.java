@@ -0,0 +1,241 @@
+package abstractModel.parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * ObjFrameSequence calculates the normals of the frames of an animation, .obj files whose faces are the same
+ * as those of the file parsed by an ObjectParser and of which only the positions of the vertices change.
+ * The faces, and the split of the vertices per smoothing group, are taken from the parsed file once.
+ * Of every frame only the vertex (v) lines are decoded, the other lines are skipped without parsing them
+ * and the file is not read further once all vertices are found. The faces of the frames are not checked,
+ * a frame is only refused when it has fewer vertices.
+ *
+ * The frames are processed in parallel, one frame per thread, with the settings of the parser.
+ * Every frame gets exactly the normals that parsing it with the parser would give.
+ * Welding and auto smoothing depend on the positions, so they can not be used for a sequence.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ObjFrameSequence {
+
+	//Size of the blocks in which gzip compressed frames are read.
+	private static final int STREAM_BLOCK_SIZE = 1 << 20;
+
+	//The faces of the parsed file, without vertices.
+	private final ObjData topology = new ObjData();
+	private final int nbVertices;
+	private final ObjectParser.WeightingMode weightingMode;
+	private final ObjectParser.AccumulationMode accumulationMode;
+	private final boolean calcTangents;
+	private final int parallelism;
+
+	/**
+	 * Creates a sequence for the file parsed by the given parser, with its settings.
+	 *
+	 * @param parser	The parser, it must have calculated the normals of its file.
+	 */
+	ObjFrameSequence(ObjectParser parser) {
+		ObjData mesh = parser.mesh;
+		if(mesh.vertexNormals == null || mesh.faceNormals == null) {
+			throw new IllegalArgumentException("The parser has not calculated the normals of " + parser.inputFileName + ".");
+		}
+		if(parser.normalMode != ObjectParser.NormalMode.RECOMPUTE || parser.sectionIndex != null) {
+			throw new IllegalArgumentException("A frame sequence only supports the RECOMPUTE normal mode for whole files.");
+		}
+		if(!Float.isNaN(parser.creaseAngle) || !Float.isNaN(parser.weldDistance)) {
+			throw new IllegalArgumentException("Auto smoothing and welding depend on the positions, they can not be used for a frame sequence.");
+		}
+		this.topology.shareTopology(mesh);
+		this.nbVertices = mesh.nbVertices;
+		this.weightingMode = parser.weightingMode;
+		this.accumulationMode = parser.accumulationMode;
+		this.calcTangents = parser.calcTangents;
+		this.parallelism = parser.parallelism;
+	}
+
+	/**
+	 * Calculates the normals of the given frames and writes every frame to its output file.
+	 *
+	 * @param inputFileNames	The names of the frames.
+	 * @param outputFileNames	The names of the files to write, one per frame. They may not exist yet.
+	 * @throws IOException
+	 */
+	public void process(final String[] inputFileNames, final String[] outputFileNames) throws IOException {
+		if(inputFileNames.length != outputFileNames.length) {
+			throw new IllegalArgumentException("Got " + inputFileNames.length + " frames but " + outputFileNames.length + " output files.");
+		}
+		long startTime = System.currentTimeMillis();
+		final int nbTasks = Math.max(1, Math.min(this.parallelism, inputFileNames.length));
+		ForkJoinPool pool = nbTasks > 1 ? new ForkJoinPool(nbTasks) : null;
+		try {
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int i = 0; i < nbTasks; i++) {
+				final int task = i;
+				tasks.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						for (int frame = task; frame < inputFileNames.length; frame += nbTasks) {
+							processFrame(inputFileNames[frame], outputFileNames[frame]);
+						}
+						return null;
+					}
+				});
+			}
+			ObjectParser.invokeAll(pool, tasks);
+		} catch (IllegalStateException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+		}
+		long duration = System.currentTimeMillis() - startTime;
+		System.out.println("Processing of " + inputFileNames.length + " frames finished in " + duration + " msec.");
+	}
+
+	/**
+	 * Reads the vertices of the given frame, calculates its normals like the parser and writes it.
+	 */
+	private void processFrame(String inputFileName, String outputFileName) throws IOException {
+		//Every frame runs on one thread, the frames themselves are in parallel.
+		ObjectParser frame = new ObjectParser(inputFileName);
+		frame.parallelism = 1;
+		ObjData mesh = frame.mesh;
+		mesh.shareTopology(this.topology);
+		mesh.vertices = new float[3*this.nbVertices];
+		mesh.nbVertices = this.nbVertices;
+		File file = new File(inputFileName);
+		int nbRead = ObjectParser.isGzip(inputFileName) ? readGzip(file, mesh.vertices) : readMapped(file, mesh.vertices);
+		if(nbRead != this.nbVertices) {
+			throw new IOException("Frame " + inputFileName + " has " + nbRead + " vertices instead of " + this.nbVertices + ".");
+		}
+		float[] tangentSums = this.calcTangents ? new float[6*mesh.getNbVertexNormals()] : null;
+		if(this.accumulationMode == ObjectParser.AccumulationMode.PARALLEL) {
+			//The slices on one thread, so the result is the same as the one of the parser.
+			NormalEngine.calcTriangleNormals(mesh, this.weightingMode, tangentSums, null, 1);
+		} else {
+			//GATHER and FUSED give exactly the SEQUENTIAL result.
+			NormalEngine.calcTriangleNormals(mesh, this.weightingMode, tangentSums);
+		}
+		NormalEngine.normalizeVertexNormals(mesh);
+		mesh.diagnostics.report(inputFileName, MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, 
+				MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		mesh.tangents = tangentSums == null ? null : TangentFrames.finish(mesh, tangentSums);
+		frame.write(outputFileName);
+	}
+
+	/**
+	 * Reads the vertices of the given file by mapping it in memory, region by region like ObjectParser does,
+	 * until all vertices are found.
+	 *
+	 * @return	int
+	 * 		The number of vertices read.
+	 */
+	private static int readMapped(File file, float[] vertices) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ObjTokenizer tokenizer = new ObjTokenizer();
+			long size = channel.size();
+			long position = 0;
+			int nbRead = 0;
+			while(position < size && 3*nbRead < vertices.length) {
+				long length = Math.min(size - position, ObjectParser.MAX_MAPPED_REGION);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = (int) length;
+				if(position + length < size) {
+					end = ObjTokenizer.lastLineFeed(buffer, 0, end) + 1;
+					if(end == 0) {
+						throw new IOException("Line at byte " + position + " of " + file + " is longer than " + ObjectParser.MAX_MAPPED_REGION + " bytes.");
+					}
+				}
+				nbRead = readVertices(tokenizer, buffer, end, vertices, nbRead);
+				position += end;
+			}
+			return nbRead;
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads the vertices of the given gzip compressed file, block by block like ObjectParser.parseStream,
+	 * until all vertices are found.
+	 *
+	 * @return	int
+	 * 		The number of vertices read.
+	 */
+	private static int readGzip(File file, float[] vertices) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file), STREAM_BLOCK_SIZE);
+		try {
+			ObjTokenizer tokenizer = new ObjTokenizer();
+			byte[] bytes = new byte[STREAM_BLOCK_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			int nbRead = 0;
+			int size = 0;
+			int read;
+			while(3*nbRead < vertices.length && (read = in.read(bytes, size, bytes.length - size)) >= 0) {
+				size += read;
+				if(size < bytes.length) {
+					continue;
+				}
+				int end = ObjTokenizer.lastLineFeed(buffer, 0, size) + 1;
+				if(end == 0) {
+					//The block does not contain a complete line.
+					bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+					buffer = ByteBuffer.wrap(bytes);
+					continue;
+				}
+				nbRead = readVertices(tokenizer, buffer, end, vertices, nbRead);
+				System.arraycopy(bytes, end, bytes, 0, size - end);
+				size -= end;
+			}
+			return readVertices(tokenizer, buffer, size, vertices, nbRead);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the vertex lines among the first end bytes of the buffer into the vertices,
+	 * after the given number of vertices that are already read. Other lines are skipped.
+	 *
+	 * @return	int
+	 * 		The number of vertices read, at most the number of vertices of the sequence.
+	 */
+	private static int readVertices(ObjTokenizer tokenizer, ByteBuffer buffer, int end, float[] vertices, int nbRead) {
+		tokenizer.reset(buffer, 0, end);
+		int i = 3*nbRead;
+		while(i < vertices.length && tokenizer.nextLine()) {
+			if(tokenizer.nextToken() && tokenizer.getTokenEnd() - tokenizer.getTokenStart() == 1
+					&& tokenizer.byteAt(tokenizer.getTokenStart()) == 'v') {
+				vertices[i] = nextFloat(tokenizer);
+				vertices[i + 1] = nextFloat(tokenizer);
+				vertices[i + 2] = nextFloat(tokenizer);
+				i += 3;
+			}
+		}
+		return i / 3;
+	}
+
+	private static float nextFloat(ObjTokenizer tokenizer) {
+		if(!tokenizer.nextToken()) {
+			throw new NumberFormatException("Missing coordinate.");
+		}
+		return tokenizer.tokenFloat();
+	}
+}
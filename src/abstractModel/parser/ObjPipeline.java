@@ -0,0 +1,227 @@
+package abstractModel.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ObjPipeline reads and parses an .obj stream in stages that run at the same time:
+ * an I/O thread fills byte blocks ahead of time, a parse thread turns complete lines into ObjData batches,
+ * and the thread that calls take() appends the batches to the mesh.
+ *
+ * The stages are connected by bounded queues. The blocks and batches are recycled through free queues,
+ * so a stage that runs ahead blocks as soon as the next stage has not caught up.
+ *
+ * @author Geert Van Campenhout
+ */
+class ObjPipeline {
+
+	//Marks the end of the stream in the queues.
+	private static final Block END_OF_BLOCKS = new Block(0);
+	private static final ObjData END_OF_DATA = new ObjData();
+
+	/**
+	 * A block of bytes read from the stream.
+	 */
+	private static class Block {
+		final byte[] bytes;
+		final ByteBuffer buffer;
+		int length;
+
+		Block(int size) {
+			this.bytes = new byte[size];
+			this.buffer = ByteBuffer.wrap(this.bytes);
+		}
+	}
+
+	private final InputStream in;
+	private final BlockingQueue<Block> freeBlocks;
+	private final BlockingQueue<Block> filledBlocks;
+	private final BlockingQueue<ObjData> freeData;
+	private final BlockingQueue<ObjData> parsedData;
+	private final ExecutorService executor;
+	private Future<Void> reader;
+	private Future<Void> parser;
+
+	/**
+	 * Creates a pipeline for the given stream.
+	 *
+	 * @param in	The stream to read.
+	 * @param blockSize	The number of bytes read at once.
+	 * @param depth	The number of blocks and batches each stage can be ahead of the next one.
+	 */
+	ObjPipeline(InputStream in, int blockSize, int depth) {
+		this.in = in;
+		this.freeBlocks = new ArrayBlockingQueue<Block>(depth);
+		this.filledBlocks = new ArrayBlockingQueue<Block>(depth + 1);
+		this.freeData = new ArrayBlockingQueue<ObjData>(depth);
+		this.parsedData = new ArrayBlockingQueue<ObjData>(depth + 1);
+		for (int i = 0; i < depth; i++) {
+			this.freeBlocks.add(new Block(blockSize));
+			this.freeData.add(new ObjData());
+		}
+		this.executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ObjPipeline");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Starts the I/O and the parse stage.
+	 */
+	void start() {
+		this.reader = this.executor.submit(new Callable<Void>() {
+			public Void call() throws IOException, InterruptedException {
+				read();
+				return null;
+			}
+		});
+		this.parser = this.executor.submit(new Callable<Void>() {
+			public Void call() throws InterruptedException {
+				parse();
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * The I/O stage: fills free blocks from the stream.
+	 */
+	private void read() throws IOException, InterruptedException {
+		try {
+			while(true) {
+				Block block = this.freeBlocks.take();
+				int length = 0;
+				int read = 0;
+				while(length < block.bytes.length && (read = this.in.read(block.bytes, length, block.bytes.length - length)) >= 0) {
+					length += read;
+				}
+				block.length = length;
+				this.filledBlocks.put(block);
+				if(read < 0) {
+					return;
+				}
+			}
+		} finally {
+			this.filledBlocks.put(END_OF_BLOCKS);
+		}
+	}
+
+	/**
+	 * The parse stage: parses the complete lines of every block into a batch.
+	 * The start of a line that continues in the next block is kept in the carry buffer.
+	 */
+	private void parse() throws InterruptedException {
+		ObjChunkParser chunkParser = new ObjChunkParser();
+		byte[] carry = new byte[1 << 12];
+		int carryLength = 0;
+		try {
+			Block block;
+			while((block = this.filledBlocks.take()) != END_OF_BLOCKS) {
+				ObjData data = this.freeData.take();
+				int first = indexOfLineFeed(block);
+				if(first == -1) {
+					carry = append(carry, carryLength, block.bytes, 0, block.length);
+					carryLength += block.length;
+				} else {
+					int last = ObjTokenizer.lastLineFeed(block.buffer, first, block.length);
+					carry = append(carry, carryLength, block.bytes, 0, first + 1);
+					carryLength += first + 1;
+					chunkParser.parse(ByteBuffer.wrap(carry), 0, carryLength, data);
+					chunkParser.parse(block.buffer, first + 1, last + 1, data);
+					carry = append(carry, 0, block.bytes, last + 1, block.length - last - 1);
+					carryLength = block.length - last - 1;
+				}
+				this.freeBlocks.put(block);
+				this.parsedData.put(data);
+			}
+			if(carryLength > 0) {
+				ObjData data = this.freeData.take();
+				chunkParser.parse(ByteBuffer.wrap(carry), 0, carryLength, data);
+				this.parsedData.put(data);
+			}
+		} finally {
+			this.parsedData.put(END_OF_DATA);
+		}
+	}
+
+	private static int indexOfLineFeed(Block block) {
+		for (int i = 0; i < block.length; i++) {
+			if(block.bytes[i] == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Copies the given bytes behind the first length bytes of the carry buffer, growing it when needed.
+	 */
+	private static byte[] append(byte[] carry, int length, byte[] bytes, int offset, int count) {
+		if(length + count > carry.length) {
+			carry = Arrays.copyOf(carry, Math.max(2 * carry.length, length + count));
+		}
+		System.arraycopy(bytes, offset, carry, length, count);
+		return carry;
+	}
+
+	/**
+	 * Returns the next parsed batch, waiting for the parse stage if needed.
+	 * Hand the batch back with recycle when it is appended.
+	 *
+	 * @return	ObjData
+	 * 		The next batch, or null at the end of the stream.
+	 * @throws IOException	If reading the stream failed.
+	 */
+	ObjData take() throws IOException {
+		try {
+			ObjData data = this.parsedData.take();
+			if(data != END_OF_DATA) {
+				return data;
+			}
+			//A failed parse stage leaves the I/O stage waiting for free blocks, so check it first.
+			this.parser.get();
+			this.reader.get();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the parse stage.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Hands an appended batch back to the parse stage.
+	 */
+	void recycle(ObjData data) {
+		data.clear();
+		this.freeData.add(data);
+	}
+
+	/**
+	 * Stops the stages, also when they did not finish.
+	 */
+	void close() {
+		this.executor.shutdownNow();
+	}
+}
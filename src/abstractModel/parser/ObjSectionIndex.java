@@ -0,0 +1,515 @@
+package abstractModel.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ObjSectionIndex records where the sections of an .obj file are, so single sections can be loaded
+ * without parsing the whole file.
+ * A section is a run of lines with the same object (o), group (g) and material (usemtl).
+ * For every section the index keeps its byte range, its number of faces, the range of vertex indices its faces use
+ * and the smoothing group in effect at its start.
+ * The vertex, texture coordinate and normal lines are recorded in runs, so only the runs that hold
+ * the vertices of the loaded sections need to be parsed.
+ *
+ * The index is made once with a single pass over the file and can be used for any number of loads,
+ * as long as the file does not change.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ObjSectionIndex {
+
+	//Largest number of lines in a run, so a load does not parse too many vertices it does not need.
+	static final int MAX_RUN_LENGTH = 1 << 16;
+
+	private static final int VERTEX = 0;
+	private static final int TEXTURE = 1;
+	private static final int NORMAL = 2;
+
+	/**
+	 * A section of an .obj file.
+	 */
+	public static class Section {
+		private final String object;
+		private final String group;
+		private final String material;
+		//Byte range of the lines of the section, without the o, g or usemtl line that starts it.
+		private final long start;
+		private long end;
+		private int nbFaces;
+		//Smallest and largest zero based index used by the faces of the section, for vertices, texture coordinates and normals.
+		//The largest is -1 when no face uses that kind.
+		final int[] first = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE};
+		final int[] last = {-1, -1, -1};
+		//Number of vertices, texture coordinates and normals before the section, to resolve relative indices.
+		final int[] base;
+		//The smoothing group in effect at the start of the section.
+		final int smoothingGroup;
+
+		Section(String object, String group, String material, long start, int[] base, int smoothingGroup) {
+			this.object = object;
+			this.group = group;
+			this.material = material;
+			this.start = start;
+			this.end = start;
+			this.base = base;
+			this.smoothingGroup = smoothingGroup;
+		}
+
+		/**
+		 * Returns the name of the object the section belongs to, or null if it is before the first o line.
+		 */
+		public String getObject() {
+			return this.object;
+		}
+
+		/**
+		 * Returns the name of the group the section belongs to, or null if it is before the first g line.
+		 */
+		public String getGroup() {
+			return this.group;
+		}
+
+		/**
+		 * Returns the material of the section, or null if it is before the first usemtl line.
+		 */
+		public String getMaterial() {
+			return this.material;
+		}
+
+		public long getStart() {
+			return this.start;
+		}
+
+		public long getEnd() {
+			return this.end;
+		}
+
+		public int getNbFaces() {
+			return this.nbFaces;
+		}
+
+		/**
+		 * Returns the smallest zero based vertex index used by the faces of the section.
+		 */
+		public int getFirstVertex() {
+			return this.first[VERTEX];
+		}
+
+		/**
+		 * Returns the largest zero based vertex index used by the faces of the section.
+		 */
+		public int getLastVertex() {
+			return this.last[VERTEX];
+		}
+
+		/**
+		 * Checks if the object, the group or the material of this section has the given name.
+		 */
+		public boolean hasName(String name) {
+			return name.equals(this.object) || name.equals(this.group) || name.equals(this.material);
+		}
+
+		@Override
+		public String toString() {
+			return "Section[o=" + this.object + ", g=" + this.group + ", usemtl=" + this.material
+					+ ", bytes " + this.start + "-" + this.end + ", " + this.nbFaces + " faces]";
+		}
+	}
+
+	/**
+	 * A run of consecutive vertex, texture coordinate or normal lines.
+	 */
+	private static class Run {
+		final long start;
+		long end;
+		//Zero based index of the first vertex, texture coordinate or normal of the run.
+		final int first;
+		int length;
+
+		Run(long start, int first) {
+			this.start = start;
+			this.end = start;
+			this.first = first;
+		}
+	}
+
+	private final long fileSize;
+	private final long modificationTime;
+	private final List<Section> sections = new ArrayList<Section>();
+	//The runs of the VERTEX, TEXTURE and NORMAL lines.
+	private final List<List<Run>> runs = Arrays.asList(new ArrayList<Run>(), new ArrayList<Run>(), new ArrayList<Run>());
+
+	private ObjSectionIndex(long fileSize, long modificationTime) {
+		this.fileSize = fileSize;
+		this.modificationTime = modificationTime;
+	}
+
+	/**
+	 * Returns all sections with faces, in the order in which they appear in the file.
+	 */
+	public List<Section> getSections() {
+		return Collections.unmodifiableList(this.sections);
+	}
+
+	/**
+	 * Returns the sections whose object, group or material has one of the given names.
+	 *
+	 * @param names	The names of the sections.
+	 */
+	public List<Section> getSections(String... names) {
+		List<Section> result = new ArrayList<Section>();
+		for (Section section : this.sections) {
+			for (String name : names) {
+				if(section.hasName(name)) {
+					result.add(section);
+					break;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Makes the index of the given .obj file with a single pass over its bytes.
+	 *
+	 * @param file	The .obj file, it cannot be compressed.
+	 * @return	ObjSectionIndex
+	 * 		The index of the file.
+	 * @throws IOException
+	 */
+	public static ObjSectionIndex build(File file) throws IOException {
+		if(ObjectParser.isGzip(file.getName())) {
+			throw new IllegalArgumentException("Cannot index the compressed file [" + file + "], it cannot be read from the middle.");
+		}
+		ObjSectionIndex index = new ObjSectionIndex(file.length(), getModificationTime(file));
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			Indexer indexer = index.new Indexer();
+			long position = 0;
+			while(position < size) {
+				long length = Math.min(size - position, ObjectParser.MAX_MAPPED_REGION);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = (int) length;
+				if(position + length < size) {
+					end = ObjTokenizer.lastLineFeed(buffer, 0, end) + 1;
+					if(end == 0) {
+						throw new IOException("Line at byte " + position + " of " + file + " is longer than " + ObjectParser.MAX_MAPPED_REGION + " bytes.");
+					}
+				}
+				indexer.index(buffer, end, position);
+				position += end;
+			}
+			indexer.finish();
+		} finally {
+			channel.close();
+		}
+		return index;
+	}
+
+	/**
+	 * Keeps the state of the pass over the file.
+	 */
+	private class Indexer {
+		private final ObjTokenizer tokenizer = new ObjTokenizer();
+		private String object;
+		private String group;
+		private String material;
+		private int smoothingGroup;
+		private Section section;
+		//Number of vertices, texture coordinates and normals before the current line.
+		private final int[] counts = new int[3];
+		private Run run;
+		private int runKind = -1;
+
+		Indexer() {
+			this.section = new Section(null, null, null, 0, new int[3], 0);
+		}
+
+		/**
+		 * Indexes the first end bytes of the given buffer, that starts at the given offset in the file.
+		 */
+		void index(MappedByteBuffer buffer, int end, long offset) {
+			ObjTokenizer tokenizer = this.tokenizer;
+			tokenizer.reset(buffer, 0, end);
+			while(tokenizer.nextLine()) {
+				long lineStart = offset + tokenizer.getTokenStart();
+				long lineEnd = offset + tokenizer.getPosition();
+				if(!tokenizer.nextToken()) {
+					continue;
+				}
+				int start = tokenizer.getTokenStart();
+				int length = tokenizer.getTokenEnd() - start;
+				byte first = tokenizer.byteAt(start);
+				if(first == 'v' && length <= 2) {
+					int kind = length == 1 ? VERTEX : tokenizer.byteAt(start + 1) == 't' ? TEXTURE : tokenizer.byteAt(start + 1) == 'n' ? NORMAL : -1;
+					if(kind != -1) {
+						addToRun(kind, lineStart, lineEnd);
+						continue;
+					}
+				}
+				if(first == '#') {
+					continue;
+				}
+				this.runKind = -1;
+				if(first == 'f' && length == 1) {
+					indexFace(lineEnd);
+				} else if(first == 'o' && length == 1) {
+					this.object = restOfLine();
+					startSection(lineEnd);
+				} else if(first == 'g' && length == 1) {
+					this.group = restOfLine();
+					startSection(lineEnd);
+				} else if(first == 'u' && tokenizer.tokenEquals("usemtl")) {
+					this.material = restOfLine();
+					startSection(lineEnd);
+				} else if(first == 's' && length == 1 && tokenizer.nextToken()) {
+					this.smoothingGroup = tokenizer.tokenEquals("off") ? 0 : tokenizer.rangeInt(tokenizer.getTokenStart(), tokenizer.getTokenEnd());
+				}
+			}
+		}
+
+		private void addToRun(int kind, long lineStart, long lineEnd) {
+			if(kind != this.runKind || this.run.length == MAX_RUN_LENGTH) {
+				this.run = new Run(lineStart, this.counts[kind]);
+				runs.get(kind).add(this.run);
+				this.runKind = kind;
+			}
+			this.run.end = lineEnd;
+			this.run.length++;
+			this.counts[kind]++;
+		}
+
+		/**
+		 * Adds the indices of the vertices of the current face line to the ranges of the current section.
+		 */
+		private void indexFace(long lineEnd) {
+			ObjTokenizer tokenizer = this.tokenizer;
+			Section section = this.section;
+			while(tokenizer.nextToken()) {
+				int index = tokenizer.getTokenStart();
+				int end = tokenizer.getTokenEnd();
+				for (int kind = VERTEX; kind <= NORMAL && index < end; kind++) {
+					int value = tokenizer.parseIntAt(index, end);
+					if(value != 0) {
+						//Negative indices count back from the last one read.
+						int zeroBased = value > 0 ? value - 1 : this.counts[kind] + value;
+						section.first[kind] = Math.min(section.first[kind], zeroBased);
+						section.last[kind] = Math.max(section.last[kind], zeroBased);
+					}
+					index = tokenizer.getParsedEnd();
+					if(index >= end || tokenizer.byteAt(index) != '/') {
+						break;
+					}
+					index++;
+				}
+			}
+			section.nbFaces++;
+			section.end = lineEnd;
+		}
+
+		private String restOfLine() {
+			ObjTokenizer tokenizer = this.tokenizer;
+			if(!tokenizer.nextToken()) {
+				return "";
+			}
+			int start = tokenizer.getTokenStart();
+			int end = tokenizer.getTokenEnd();
+			while(tokenizer.nextToken()) {
+				end = tokenizer.getTokenEnd();
+			}
+			return tokenizer.rangeString(start, end);
+		}
+
+		private void startSection(long lineEnd) {
+			finishSection();
+			this.section = new Section(this.object, this.group, this.material, lineEnd, this.counts.clone(), this.smoothingGroup);
+		}
+
+		private void finishSection() {
+			if(this.section.nbFaces > 0) {
+				sections.add(this.section);
+			}
+		}
+
+		void finish() {
+			finishSection();
+		}
+	}
+
+	/**
+	 * Parses the given sections of the file this index was made of, and the vertices they use, into the lists of the parser.
+	 * The vertices, texture coordinates and normals get new indices that are consecutive in the order of the file.
+	 *
+	 * @param parser	The parser to fill.
+	 * @param file	The .obj file this index was made of.
+	 * @param selected	The sections to load, from this index.
+	 * @throws IOException
+	 */
+	void load(ObjectParser parser, File file, List<Section> selected) throws IOException {
+		if(file.length() != this.fileSize || getModificationTime(file) != this.modificationTime) {
+			throw new IllegalArgumentException("The file [" + file + "] changed after its section index was made.");
+		}
+		ObjChunkParser chunkParser = new ObjChunkParser();
+		ObjData data = new ObjData();
+		ObjData scratch = new ObjData();
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			int[][] ranges = new int[3][];
+			for (int kind = VERTEX; kind <= NORMAL; kind++) {
+				ranges[kind] = getUsedRanges(selected, kind);
+				loadRuns(channel, chunkParser, kind, ranges[kind], scratch, data);
+			}
+			for (Section section : selected) {
+				scratch.clear();
+				parseRange(channel, chunkParser, section.start, section.end, scratch);
+				data.diagnostics.addAll(scratch.diagnostics, data.nbTriangles);
+				for (int i = 0; i < 3*scratch.nbTriangles; i += 3) {
+					int group = scratch.triangleGroups[i / 3];
+					data.setSmoothingGroup(group == ObjData.INHERIT ? section.smoothingGroup : group);
+					int[] v = scratch.triangleVertices;
+					int[] t = scratch.triangleTextureCoordinates;
+					int[] n = scratch.triangleNormals;
+					int[] vertices = ranges[VERTEX];
+					int[] textures = ranges[TEXTURE];
+					int[] normals = ranges[NORMAL];
+					int[] base = section.base;
+					data.addTriangle(renumber(vertices, v[i], base[VERTEX]), renumber(vertices, v[i+1], base[VERTEX]), renumber(vertices, v[i+2], base[VERTEX]),
+							renumber(textures, t[i], base[TEXTURE]), renumber(textures, t[i+1], base[TEXTURE]), renumber(textures, t[i+2], base[TEXTURE]),
+							renumber(normals, n[i], base[NORMAL]), renumber(normals, n[i+1], base[NORMAL]), renumber(normals, n[i+2], base[NORMAL]));
+				}
+			}
+		} finally {
+			channel.close();
+		}
+		parser.append(data);
+	}
+
+	/**
+	 * Returns the ranges of zero based indices of the given kind that the given sections use, merged and sorted,
+	 * as consecutive first, last and new index of the first.
+	 */
+	private static int[] getUsedRanges(List<Section> selected, int kind) {
+		List<int[]> used = new ArrayList<int[]>();
+		for (Section section : selected) {
+			if(section.last[kind] >= 0) {
+				used.add(new int[] {section.first[kind], section.last[kind]});
+			}
+		}
+		Collections.sort(used, new Comparator<int[]>() {
+			public int compare(int[] a, int[] b) {
+				return Integer.compare(a[0], b[0]);
+			}
+		});
+		int[] ranges = new int[3*used.size()];
+		int nbRanges = 0;
+		int renumbered = 0;
+		for (int[] range : used) {
+			if(nbRanges > 0 && range[0] <= ranges[3*nbRanges - 2] + 1) {
+				int last = ranges[3*nbRanges - 2];
+				if(range[1] > last) {
+					ranges[3*nbRanges - 2] = range[1];
+					renumbered += range[1] - last;
+				}
+			} else {
+				ranges[3*nbRanges] = range[0];
+				ranges[3*nbRanges + 1] = range[1];
+				ranges[3*nbRanges + 2] = renumbered;
+				renumbered += range[1] - range[0] + 1;
+				nbRanges++;
+			}
+		}
+		return Arrays.copyOf(ranges, 3*nbRanges);
+	}
+
+	/**
+	 * Returns the new index of the given zero based index, or the index itself if it is not in the ranges.
+	 * A relative index is first resolved against the given number of vertices, texture coordinates or normals before the section.
+	 */
+	private static int renumber(int[] ranges, int index, int base) {
+		index = ObjData.resolve(index, base);
+		int low = 0;
+		int high = ranges.length / 3 - 1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			if(index < ranges[3*middle]) {
+				high = middle - 1;
+			} else if(index > ranges[3*middle + 1]) {
+				low = middle + 1;
+			} else {
+				return ranges[3*middle + 2] + index - ranges[3*middle];
+			}
+		}
+		//A missing texture coordinate (0) or normal (-1).
+		return index < 0 ? index : 0;
+	}
+
+	/**
+	 * Parses the runs of the given kind that overlap the given ranges and adds the values in the ranges to the data.
+	 */
+	private void loadRuns(FileChannel channel, ObjChunkParser chunkParser, int kind, int[] ranges, ObjData scratch, ObjData data) throws IOException {
+		List<Run> runs = this.runs.get(kind);
+		int runIndex = 0;
+		for (int i = 0; i < ranges.length; i += 3) {
+			int first = ranges[i];
+			int last = ranges[i + 1];
+			while(runIndex < runs.size() && runs.get(runIndex).first + runs.get(runIndex).length <= first) {
+				runIndex++;
+			}
+			for (; runIndex < runs.size() && runs.get(runIndex).first <= last; runIndex++) {
+				Run run = runs.get(runIndex);
+				scratch.clear();
+				parseRange(channel, chunkParser, run.start, run.end, scratch);
+				int from = Math.max(first, run.first) - run.first;
+				int to = Math.min(last, run.first + run.length - 1) - run.first;
+				for (int j = from; j <= to; j++) {
+					if(kind == VERTEX) {
+						data.addVertex(scratch.vertices[3*j], scratch.vertices[3*j+1], scratch.vertices[3*j+2]);
+					} else if(kind == TEXTURE) {
+						data.addTextureCoordinate(scratch.textureCoordinates[2*j], scratch.textureCoordinates[2*j+1]);
+					} else {
+						data.addNormal(scratch.normals[3*j], scratch.normals[3*j+1], scratch.normals[3*j+2]);
+					}
+				}
+				if(run.first + run.length - 1 > last) {
+					//The next range can start in the same run.
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Parses the lines between the given byte offsets of the file, mapping at most MAX_MAPPED_REGION bytes at once.
+	 */
+	private static void parseRange(FileChannel channel, ObjChunkParser chunkParser, long start, long end, ObjData data) throws IOException {
+		long position = start;
+		while(position < end) {
+			long length = Math.min(end - position, ObjectParser.MAX_MAPPED_REGION);
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int regionEnd = (int) length;
+			if(position + length < end) {
+				regionEnd = ObjTokenizer.lastLineFeed(buffer, 0, regionEnd) + 1;
+				if(regionEnd == 0) {
+					throw new IOException("Line at byte " + position + " is longer than " + ObjectParser.MAX_MAPPED_REGION + " bytes.");
+				}
+			}
+			chunkParser.parse(buffer, 0, regionEnd, data);
+			position += regionEnd;
+		}
+	}
+
+	private static long getModificationTime(File file) throws IOException {
+		return Files.getLastModifiedTime(file.toPath()).toMillis();
+	}
+}
@@ -0,0 +1,240 @@
+package abstractModel.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ObjTokenizer walks over the raw bytes of an .obj file and splits them into lines and tokens.
+ * The bytes are read in place from the given ByteBuffer, no Strings are created per line and
+ * no charset decoding is done. Only the ASCII characters used by the .obj format are interpreted.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ObjTokenizer {
+
+	private ByteBuffer buffer;
+	//Index of the first byte of the next line.
+	private int position;
+	//Index after the last byte of the region that is tokenized.
+	private int limit;
+	//Index after the last byte of the current line (without the line terminator).
+	private int lineEnd;
+	//Index where the search for the next token on the current line starts.
+	private int cursor;
+
+	//Range of the current token.
+	private int tokenStart;
+	private int tokenEnd;
+	//Index after the last digit read by parseIntAt.
+	private int parsedEnd;
+
+	/**
+	 * Lets this tokenizer walk over the bytes of the given buffer between start (inclusive) and end (exclusive).
+	 *
+	 * @param buffer	The buffer containing the bytes of the .obj file.
+	 * @param start	The index of the first byte to tokenize.
+	 * @param end	The index after the last byte to tokenize.
+	 */
+	public void reset(ByteBuffer buffer, int start, int end) {
+		this.buffer = buffer;
+		this.position = start;
+		this.limit = end;
+		this.lineEnd = start;
+		this.cursor = start;
+		this.tokenStart = start;
+		this.tokenEnd = start;
+	}
+
+	/**
+	 * Moves to the next line.
+	 *
+	 * @return	boolean
+	 * 		False when there are no more lines.
+	 */
+	public boolean nextLine() {
+		if(position >= limit) {
+			return false;
+		}
+		int index = position;
+		while(index < limit && buffer.get(index) != '\n') {
+			index++;
+		}
+		cursor = position;
+		lineEnd = index;
+		tokenStart = position;
+		tokenEnd = position;
+		position = index + 1;
+		return true;
+	}
+
+	/**
+	 * Moves to the next token on the current line.
+	 * Tokens are separated by spaces, tabs and carriage returns.
+	 *
+	 * @return	boolean
+	 * 		False when there are no more tokens on the current line.
+	 */
+	public boolean nextToken() {
+		int index = cursor;
+		while(index < lineEnd && isWhitespace(buffer.get(index))) {
+			index++;
+		}
+		if(index >= lineEnd) {
+			cursor = lineEnd;
+			tokenStart = lineEnd;
+			tokenEnd = lineEnd;
+			return false;
+		}
+		tokenStart = index;
+		while(index < lineEnd && !isWhitespace(buffer.get(index))) {
+			index++;
+		}
+		tokenEnd = index;
+		cursor = index;
+		return true;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	/**
+	 * Returns the index of the first byte of the line after the current line.
+	 */
+	public int getPosition() {
+		return this.position;
+	}
+
+	public int getTokenStart() {
+		return this.tokenStart;
+	}
+
+	public int getTokenEnd() {
+		return this.tokenEnd;
+	}
+
+	/**
+	 * Returns the byte at the given index of the underlying buffer.
+	 *
+	 * @param index	The index of the byte.
+	 */
+	public byte byteAt(int index) {
+		return buffer.get(index);
+	}
+
+	/**
+	 * Checks if the current token consists of exactly the characters of the given String.
+	 *
+	 * @param value	The ASCII String to compare with.
+	 */
+	public boolean tokenEquals(String value) {
+		if(tokenEnd - tokenStart != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if(buffer.get(tokenStart + i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the current token as a String. Only meant for names and error messages, not for the hot path.
+	 */
+	public String tokenString() {
+		return rangeString(tokenStart, tokenEnd);
+	}
+
+	/**
+	 * Returns the bytes between start and end as a String.
+	 *
+	 * @param start	The index of the first byte.
+	 * @param end	The index after the last byte.
+	 */
+	public String rangeString(int start, int end) {
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Parses the current token as a float.
+	 */
+	public float tokenFloat() {
+		return NumberParser.parseFloat(buffer, tokenStart, tokenEnd);
+	}
+
+	/**
+	 * Parses the bytes between start and end as an int.
+	 *
+	 * @param start	The index of the first byte.
+	 * @param end	The index after the last byte.
+	 */
+	public int rangeInt(int start, int end) {
+		return NumberParser.parseInt(buffer, start, end);
+	}
+
+	/**
+	 * Parses the int that starts at the given index and ends before the first byte that is not a digit, 
+	 * or at end. Afterwards getParsedEnd() gives the index after the last digit, 
+	 * it equals the given index when there was no number at the index.
+	 *
+	 * @param index	The index of the first byte of the number, which may be a minus sign.
+	 * @param end	The index after the last byte that may belong to the number.
+	 * @return	int
+	 * 		The parsed number, or 0 when there was no number.
+	 */
+	public int parseIntAt(int index, int end) {
+		int digitEnd = index;
+		if(digitEnd < end && buffer.get(digitEnd) == '-') {
+			digitEnd++;
+		}
+		int result = 0;
+		while(digitEnd < end) {
+			int digit = buffer.get(digitEnd) - '0';
+			if(digit < 0 || digit > 9) {
+				break;
+			}
+			result = 10 * result + digit;
+			digitEnd++;
+		}
+		int nbDigits = digitEnd - index;
+		if(nbDigits > 0 && buffer.get(index) == '-') {
+			nbDigits--;
+			result = -result;
+		}
+		if(nbDigits == 0) {
+			parsedEnd = index;
+			return 0;
+		}
+		parsedEnd = digitEnd;
+		if(nbDigits > 9) {
+			//Might have overflowed, let the NumberParser decide.
+			return NumberParser.parseInt(buffer, index, digitEnd);
+		}
+		return result;
+	}
+
+	public int getParsedEnd() {
+		return this.parsedEnd;
+	}
+
+	/**
+	 * Returns the index of the last line feed in the given buffer before end, or -1 if there is none.
+	 *
+	 * @param buffer	The buffer to search in.
+	 * @param start	The index where the search stops.
+	 * @param end	The index after the last byte to search.
+	 */
+	public static int lastLineFeed(ByteBuffer buffer, int start, int end) {
+		for (int i = end - 1; i >= start; i--) {
+			if(buffer.get(i) == '\n') {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
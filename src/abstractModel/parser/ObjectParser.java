@@ -1,20 +1,34 @@
 package abstractModel.parser;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
-import abstractModel.TexCoord2f;
 import abstractModel.Triangle;
 import abstractModel.Vector3f;
-import abstractModel.Vertex;
 
 /**
  * ObjectParser is used to parse .obj files.
@@ -28,11 +42,105 @@ public class ObjectParser {
 
 	private static final String SPACE = new String(" ");
 	
-	List<Vertex> coordinates;
-	List<Vector3f> normals;
-	List<TexCoord2f> textureCoordinates;
-	List<Triangle> triangles;
+	//Largest region of the input file that is mapped in memory at once.
+	static final long MAX_MAPPED_REGION = 1L << 30;
+	//Smallest part of the input file that is worth parsing on a separate thread.
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	//Smallest number of triangles that is worth handling on a separate thread.
+	private static final int MIN_TRIANGLES_PER_TASK = 1 << 14;
+	//Size of the blocks in which streams are read.
+	private static final int STREAM_BLOCK_SIZE = 1 << 22;
+	//Number of blocks the I/O stage of the PIPELINED mode may read ahead.
+	private static final int PIPELINE_DEPTH = 4;
+	//Input and output files with this suffix are gzip compressed.
+	private static final String GZIP_SUFFIX = ".gz";
+	
+	/**
+	 * The ways in which the input file can be read.
+	 * READER decodes the file line by line to Strings.
+	 * MAPPED memory-maps the file and tokenizes the raw bytes in place.
+	 * PIPELINED reads the file on a separate thread ahead of a separate parse thread, 
+	 * so waiting for the storage overlaps with parsing.
+	 * Gzip compressed files (.gz) are always decompressed to raw bytes, in the PIPELINED mode on the I/O thread.
+	 */
+	public enum InputMode {
+		READER, MAPPED, PIPELINED
+	}
+	
+	/**
+	 * What to do with the vertex normals (vn) that are already in the input file.
+	 * RECOMPUTE ignores them and always calculates new normals.
+	 * REUSE writes them out unchanged, with the normal index of every face vertex, when they are complete 
+	 * and have unit length, otherwise new normals are calculated.
+	 * VERIFY calculates new normals and only writes the output file when they deviate 
+	 * more than the maximum deviation from the given ones.
+	 */
+	public enum NormalMode {
+		RECOMPUTE, REUSE, VERIFY
+	}
+	
+	/**
+	 * The ways in which the face normals are added to the vertex normals.
+	 * SEQUENTIAL adds them one triangle after the other on the current thread.
+	 * PARALLEL divides the triangles in slices that each add to their own copy of the vertex normals on parallelism threads,
+	 * the copies are added up afterwards. It needs a copy of the vertex normals per slice and its result can differ 
+	 * in the last bits from the SEQUENTIAL one, because the additions are grouped per slice. 
+	 * The number of slices only depends on the number of triangles, so the result does not depend on the parallelism.
+	 * GATHER first lists the triangles around every vertex, after which every vertex sums the normals of its own 
+	 * triangles on parallelism threads. It needs the list of triangles instead of the copies, which is kept for 
+	 * later use, and gives exactly the SEQUENTIAL result.
+	 * FUSED adds the face normals of every block of the file right after it is parsed, while its triangles are still 
+	 * in the cache, instead of in a separate pass over all triangles afterwards. It also gives exactly the SEQUENTIAL result.
+	 * Blocks that are parsed in parallel, faces that refer to vertices further in the file and split or welded vertices 
+	 * need the whole mesh, then the remaining triangles are added after parsing.
+	 */
+	public enum AccumulationMode {
+		SEQUENTIAL, PARALLEL, GATHER, FUSED
+	}
+	
+	/**
+	 * How much the normal of a face counts in the normals of its vertices.
+	 * UNIFORM adds the normalized face normals, every face counts the same.
+	 * AREA adds the cross products of the edges without normalizing them, so a face counts with its area. 
+	 * It saves a square root and a division per triangle.
+	 * ANGLE adds the normalized face normals times the angle of the face at the vertex,
+	 * so the normal does not depend on how the faces around a vertex are triangulated.
+	 */
+	public enum WeightingMode {
+		UNIFORM, AREA, ANGLE
+	}
+	
+	//The vertices, texture coordinates, given normals and triangles of the file and the calculated normals.
+	final ObjData mesh = new ObjData();
 	String inputFileName;
+	InputMode inputMode = InputMode.READER;
+	
+	int parallelism = Runtime.getRuntime().availableProcessors();
+	NormalMode normalMode = NormalMode.RECOMPUTE;
+	AccumulationMode accumulationMode = AccumulationMode.SEQUENTIAL;
+	WeightingMode weightingMode = WeightingMode.UNIFORM;
+	boolean useSmoothingGroups;
+	//The number of triangles whose normals are added in the FUSED accumulation mode, and the angles of their corners.
+	private int nbFusedTriangles;
+	private float[] fusedCornerWeights;
+	//Crease angle in degrees for auto smoothing, NaN when it is off.
+	float creaseAngle = Float.NaN;
+	//Largest distance between vertices whose normals are accumulated together, NaN when welding is off.
+	float weldDistance = Float.NaN;
+	boolean calcTangents;
+	//Largest angle in degrees between calculated and given normals for which VERIFY does not write the output.
+	float maxNormalDeviation = 1.0f;
+	float normalDeviation = Float.NaN;
+	boolean outputWritten;
+	boolean useCache;
+	ObjSectionIndex sectionIndex;
+	String[] sectionNames;
+	
+	private final ObjChunkParser chunkParser = new ObjChunkParser();
+	//Reused to hand the lines of the reader to the chunk parser without allocating.
+	private byte[] lineBytes = new byte[256];
+	private ByteBuffer lineBuffer = ByteBuffer.wrap(this.lineBytes);
+	private final ObjData lineData = new ObjData();
 	
 	/**
 	 * Creates a new ObjectParser for the file with the given name.
@@ -40,10 +148,6 @@ public class ObjectParser {
 	 * @param inputFileName	The name of the file that needs to be parsed.
 	 */
 	public ObjectParser(String inputFileName){
-		this.coordinates = new ArrayList<Vertex>();
-		this.normals = new ArrayList<Vector3f>();
-		this.textureCoordinates = new ArrayList<TexCoord2f>();
-		this.triangles = new ArrayList<Triangle>();
 		this.inputFileName = inputFileName;
 	}
 	
@@ -62,9 +166,350 @@ public class ObjectParser {
 			throw new IllegalArgumentException("The given output file [" + outputFileName + "] already exists.");
 		}
 		
+		this.outputWritten = false;
 		long calcStartTime = System.currentTimeMillis();
 		System.out.println("Start parsing file: " + inputFileName);
 		File file = new File(this.inputFileName);
+		boolean useCache = this.useCache && this.normalMode != NormalMode.VERIFY && this.sectionIndex == null && !this.calcTangents;
+		if(useCache && MeshCache.load(this, file)) {
+			long duration = System.currentTimeMillis() - calcStartTime;
+			System.out.println("Loading of " + inputFileName + " from " + MeshCache.getCacheFile(file) + " finished in " + duration + " msec.");
+			this.mesh.diagnostics.report(this.inputFileName, MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, MeshDiagnostics.Issue.INVALID_INDEX, 
+					MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		} else {
+			parseAndCalcNormals(file);
+			if(this.normalMode == NormalMode.VERIFY) {
+		    	this.normalDeviation = calcNormalDeviation();
+		    	if(this.normalDeviation <= this.maxNormalDeviation) {
+		    		System.out.println("The normals of " + inputFileName + " deviate at most " + this.normalDeviation 
+		    				+ " degrees from the calculated ones, " + outputFileName + " is not written.");
+		    		outputFile.delete();
+		    		return;
+		    	}
+		    }
+			if(useCache) {
+				try {
+					MeshCache.save(this, file);
+				} catch (IOException e) {
+					System.err.println("Could not write " + MeshCache.getCacheFile(file) + ": " + e.getMessage());
+				}
+			}
+		}
+	    
+	    writeFile(outputFile);
+	    if(this.mesh.tangents != null) {
+	    	TangentFrames.write(this.mesh, outputFile);
+	    }
+	    this.outputWritten = true;
+	}
+	
+	/**
+	 * Writes the mesh of this parser, as it is now, to the file with the given name.
+	 * After parse, this writes the edits made through getDynamicMesh.
+	 * 
+	 * @param outputFileName	The name of the file to write.
+	 * @throws IOException 
+	 */
+	public void write(String outputFileName) throws IOException {
+		File outputFile = new File(outputFileName);
+		if(!outputFile.createNewFile()) {
+			throw new IllegalArgumentException("The given output file [" + outputFileName + "] already exists.");
+		}
+		writeFile(outputFile);
+		if(this.mesh.tangents != null) {
+			TangentFrames.write(this.mesh, outputFile);
+		}
+	}
+	
+	/**
+	 * Returns a DynamicMesh to edit the parsed mesh with, which keeps its normals up to date 
+	 * with the weighting mode of this parser.
+	 * It can only be used after parse, and not when the vertices are split per smoothing group or by auto smoothing.
+	 * Neither when a weld distance is set: the welded normals are shared by positions, not by vertices.
+	 * 
+	 * @return	DynamicMesh
+	 * 		The editable mesh.
+	 */
+	public DynamicMesh getDynamicMesh() {
+		if(!Float.isNaN(this.weldDistance)) {
+			throw new IllegalArgumentException("The normals of a welded mesh are shared by positions, it can not be edited.");
+		}
+		return new DynamicMesh(this.mesh, this.weightingMode);
+	}
+	
+	/**
+	 * Returns an ObjFrameSequence to calculate the normals of the frames of an animation with, 
+	 * whose faces are those of the parsed file, with the settings of this parser.
+	 * It can only be used after parse, in the RECOMPUTE normal mode and without welding or auto smoothing.
+	 * 
+	 * @return	ObjFrameSequence
+	 * 		The sequence.
+	 */
+	public ObjFrameSequence getFrameSequence() {
+		return new ObjFrameSequence(this);
+	}
+	
+	/**
+	 * Parses the given file and gives every vertex a normal, as set by the normal mode.
+	 */
+	void parseAndCalcNormals(File file) throws IOException {
+		long calcStartTime = System.currentTimeMillis();
+		this.mesh.diagnostics.clear();
+		if(this.sectionIndex != null) {
+			this.sectionIndex.load(this, file, this.sectionIndex.getSections(this.sectionNames));
+		} else if(this.inputMode == InputMode.PIPELINED) {
+			parsePipelined(file);
+		} else if(isGzip(this.inputFileName)) {
+			parseGzip(file);
+		} else if(this.inputMode == InputMode.MAPPED) {
+			parseMapped(file);
+		} else {
+			parseReader(file);
+		}
+		
+		/*We have here, in the mesh.
+		 * vertices = the vertices coordinates, three floats per vertex.
+		 * normals = the normals coordinates given in the file, often empty.
+		 * textureCoordinates = the texture coordinates, two floats per coordinate.
+		 * 
+		 * triangleVertices = the vertex indices, three per triangle.
+		 */
+		
+		long calcStopTime = System.currentTimeMillis();
+		long duration = calcStopTime - calcStartTime;
+		System.out.println("Parsing of " + inputFileName + " finished in " + duration + " msec.");
+		removeTrianglesOutOfRange();
+		this.mesh.diagnostics.report(this.inputFileName, MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, MeshDiagnostics.Issue.INVALID_INDEX);
+		
+		if(this.normalMode == NormalMode.REUSE && reuseInputNormals()) {
+			System.out.println("The normals of " + inputFileName + " are complete and are reused.");
+			if(this.calcTangents) {
+				float[] tangentSums = new float[6*this.mesh.getNbVertexNormals()];
+				TangentFrames.accumulate(this.mesh, tangentSums);
+				this.mesh.tangents = TangentFrames.finish(this.mesh, tangentSums);
+			}
+		} else {
+			if(this.normalMode == NormalMode.REUSE) {
+				System.out.println("The normals of " + inputFileName + " are not complete or not of unit length, new ones are calculated.");
+			}
+			calcVertexNormals();
+			this.mesh.diagnostics.report(this.inputFileName, MeshDiagnostics.Issue.REPEATED_VERTEX, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, 
+					MeshDiagnostics.Issue.NAN_VERTEX_NORMAL);
+		}
+	}
+	
+	/**
+	 * Sets whether a binary sidecar with the parsed mesh and its normals is kept next to the input file.
+	 * When the sidecar is up to date it is loaded instead of parsing the input file.
+	 * The sidecar is not used in the VERIFY normal mode.
+	 * 
+	 * @param useCache	True to use the sidecar.
+	 */
+	public void setUseCache(boolean useCache) {
+		this.useCache = useCache;
+	}
+	
+	/**
+	 * Lets the parser load only the sections of the input file whose object, group or material has one of the given names,
+	 * and the vertices they use. The vertices get new indices in the written file.
+	 * The sidecar of setUseCache is not used for a part of a file.
+	 * 
+	 * @param index	The index made of the input file with ObjSectionIndex.build.
+	 * @param names	The names of the sections to load.
+	 */
+	public void setSections(ObjSectionIndex index, String... names) {
+		this.sectionIndex = index;
+		this.sectionNames = names;
+	}
+	
+	/**
+	 * Sets the way in which the face normals are added to the vertex normals.
+	 * 
+	 * @param accumulationMode	The accumulation mode to use.
+	 */
+	public void setAccumulationMode(AccumulationMode accumulationMode) {
+		this.accumulationMode = accumulationMode;
+	}
+	
+	/**
+	 * Sets how much the normal of a face counts in the normals of its vertices.
+	 * 
+	 * @param weightingMode	The weighting mode to use.
+	 */
+	public void setWeightingMode(WeightingMode weightingMode) {
+		this.weightingMode = weightingMode;
+	}
+	
+	/**
+	 * Sets whether the smoothing groups (s) of the file are used when new normals are calculated.
+	 * If they are, a vertex gets a normal per smoothing group of the triangles around it, 
+	 * and triangles without smoothing group (s off) are shaded flat.
+	 * Otherwise, or when the file has no smoothing groups, every vertex gets one normal, 
+	 * the average of all triangles around it, unless auto smoothing is on.
+	 * 
+	 * @param useSmoothingGroups	True to use the smoothing groups.
+	 */
+	public void setUseSmoothingGroups(boolean useSmoothingGroups) {
+		this.useSmoothingGroups = useSmoothingGroups;
+	}
+	
+	/**
+	 * Turns on auto smoothing for files without smoothing groups: the triangles around every vertex are clustered 
+	 * by the angle between their normals and every cluster gets its own normal, so sharp edges stay sharp.
+	 * 
+	 * @param degrees	The largest angle between the normals of two triangles that are smoothed together, 
+	 * 		between 0 and 180, or NaN to turn auto smoothing off.
+	 */
+	public void setCreaseAngle(float degrees) {
+		if(degrees < 0 || degrees > 180) {
+			throw new IllegalArgumentException("Invalid crease angle [" + degrees + "], it has to be between 0 and 180 degrees.");
+		}
+		this.creaseAngle = degrees;
+	}
+	
+	/**
+	 * Turns on welding: vertices within the given distance of each other, like the copies of a vertex on a texture seam, 
+	 * get the same normal, accumulated over the triangles around all of them. 
+	 * The vertices themselves are not merged, the output keeps every vertex with its own index.
+	 * 
+	 * @param distance	The largest distance between two vertices that are welded, 0 to only weld equal positions, 
+	 * 		or NaN to turn welding off.
+	 */
+	public void setWeldDistance(float distance) {
+		if(distance < 0 || distance == Float.POSITIVE_INFINITY) {
+			throw new IllegalArgumentException("Invalid weld distance [" + distance + "], it has to be finite and not negative.");
+		}
+		this.weldDistance = distance;
+	}
+	
+	/**
+	 * Sets whether a tangent is calculated for every vertex normal, from the texture coordinates of the triangles,
+	 * in the same loop over the triangles as the normals for the SEQUENTIAL and PARALLEL accumulation modes.
+	 * The tangents are written to a binary sidecar next to the output file, see TangentFrames. 
+	 * The mesh cache is not used when tangents are calculated.
+	 * 
+	 * @param calcTangents	True to calculate the tangents.
+	 */
+	public void setCalcTangents(boolean calcTangents) {
+		this.calcTangents = calcTangents;
+	}
+	
+	/**
+	 * Sets what to do with the vertex normals that are already in the input file.
+	 * 
+	 * @param normalMode	The normal mode to use.
+	 */
+	public void setNormalMode(NormalMode normalMode) {
+		this.normalMode = normalMode;
+	}
+	
+	/**
+	 * Sets the largest angle between the calculated and the given normals for which the VERIFY mode does not write the output.
+	 * 
+	 * @param degrees	The maximum deviation in degrees.
+	 */
+	public void setMaxNormalDeviation(float degrees) {
+		this.maxNormalDeviation = degrees;
+	}
+	
+	/**
+	 * Returns the largest angle in degrees between a calculated and a given normal, as found by the VERIFY mode.
+	 * NaN when the normals were not verified.
+	 */
+	public float getNormalDeviation() {
+		return this.normalDeviation;
+	}
+	
+	/**
+	 * Returns the problems found in the mesh: the ignored lines of the input file, the degenerate triangles, 
+	 * the NaN vertex normals and the triangles left out of the last written file.
+	 */
+	public MeshDiagnostics getDiagnostics() {
+		return this.mesh.diagnostics;
+	}
+	
+	/**
+	 * Returns whether the last call to parse wrote the output file.
+	 */
+	public boolean isOutputWritten() {
+		return this.outputWritten;
+	}
+	
+	/**
+	 * Uses the normals given in the file, and the normal index of every triangle corner, if they are complete.
+	 * The corners of a vertex keep their own normal, so the hard edges of the file stay hard.
+	 * 
+	 * @return	boolean
+	 * 		False if the given normals are not complete and new ones need to be calculated.
+	 */
+	private boolean reuseInputNormals() {
+		if(!InputNormals.isComplete(this.mesh)) {
+			return false;
+		}
+		this.mesh.vertexNormals = Arrays.copyOf(this.mesh.normals, 3*this.mesh.nbNormals);
+		this.mesh.cornerNormals = Arrays.copyOf(this.mesh.triangleNormals, 3*this.mesh.nbTriangles);
+		this.mesh.nbVertexNormals = this.mesh.nbNormals;
+		this.mesh.faceNormals = null;
+		this.mesh.validTriangles = null;
+		return true;
+	}
+	
+	/**
+	 * Removes the triangles that refer to a vertex that is not in the file in parallel, 
+	 * before anything else uses their indices.
+	 */
+	private void removeTrianglesOutOfRange() {
+		int nbTasks = getNbTriangleTasks();
+		ForkJoinPool pool = newPool(nbTasks);
+		try {
+			this.mesh.removeTrianglesOutOfRange(pool, nbTasks);
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the largest deviation between the calculated and the given normals in parallel.
+	 */
+	private float calcNormalDeviation() {
+		int nbTasks = getNbTriangleTasks();
+		ForkJoinPool pool = newPool(nbTasks);
+		try {
+			return InputNormals.getMaxDeviation(this.mesh, pool, nbTasks);
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of tasks to divide the triangles of the mesh over: 
+	 * one per MIN_TRIANGLES_PER_TASK triangles, at least one and at most parallelism.
+	 */
+	private int getNbTriangleTasks() {
+		return Math.min(this.parallelism, Math.max(1, this.mesh.nbTriangles / MIN_TRIANGLES_PER_TASK));
+	}
+	
+	/**
+	 * Returns a pool with the given number of threads, or null to run on the current thread when there is only one.
+	 */
+	private static ForkJoinPool newPool(int nbTasks) {
+		return nbTasks > 1 ? new ForkJoinPool(nbTasks) : null;
+	}
+	
+	/**
+	 * Sets the way in which the input file is read.
+	 * 
+	 * @param inputMode	The input mode to use.
+	 */
+	public void setInputMode(InputMode inputMode) {
+		this.inputMode = inputMode;
+	}
+	
+	private void parseReader(File file) throws FileNotFoundException {
 	    FileInputStream fileInputStream = new FileInputStream(file);
 	    DataInputStream in = new DataInputStream(fileInputStream);
 	    BufferedReader br = new BufferedReader(new InputStreamReader(in));
@@ -80,47 +525,314 @@ public class ObjectParser {
 			System.err.println("IOxception in ObjectParser.parse");
 			e.printStackTrace();
 		}
-		
-		/*We have here.
-		 * coordinates = a list of the vertices coordinates.
-		 * normals = empty in our case but should become a list of the normals coordinates.
-		 * textureCoordinates = a list of the texture coordinates.
-		 * 
-		 * coordinatesIndices = a list of 
-		 */
-		
-		long calcStopTime = System.currentTimeMillis();
-		long duration = calcStopTime - calcStartTime;
-		System.out.println("Parsing of " + inputFileName + " finished in " + duration + " msec.");
-	    
-		calcTriangleNormals();
-	    normalizeVertexNormals();
-	    
-	    writeFile(outputFile);
 	}
 	
+	/**
+	 * Sets the number of threads that parse a memory-mapped file.
+	 * 
+	 * @param parallelism	The number of threads, 1 parses the file sequentially.
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1.");
+		}
+		this.parallelism = parallelism;
+	}
+	
+	/**
+	 * Parses the given file by mapping it in memory.
+	 * Files larger than MAX_MAPPED_REGION are mapped region by region, 
+	 * every region ends after the last complete line it contains.
+	 */
+	private void parseMapped(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		ForkJoinPool pool = null;
+		try {
+			long size = channel.size();
+			int nbChunks = (int) Math.min(this.parallelism, Math.max(1, size / MIN_CHUNK_SIZE));
+			if(nbChunks > 1) {
+				pool = new ForkJoinPool(nbChunks);
+			}
+			long position = 0;
+			while(position < size) {
+				long length = Math.min(size - position, MAX_MAPPED_REGION);
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+				int end = (int) length;
+				if(position + length < size) {
+					end = ObjTokenizer.lastLineFeed(buffer, 0, end) + 1;
+					if(end == 0) {
+						throw new IOException("Line at byte " + position + " of " + file + " is longer than " + MAX_MAPPED_REGION + " bytes.");
+					}
+				}
+				parseBuffer(buffer, end, pool, nbChunks);
+				position += end;
+			}
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Parses the first end bytes of the given buffer, in nbChunks parallel chunks on the pool if it is not null.
+	 */
+	private void parseBuffer(ByteBuffer buffer, int end, ForkJoinPool pool, int nbChunks) {
+		if(pool == null || nbChunks == 1) {
+			ObjData data = new ObjData();
+			this.chunkParser.parse(buffer, 0, end, data);
+			append(data);
+		} else {
+			append(parseChunks(pool, buffer, end, nbChunks), pool);
+		}
+	}
+	
+	/**
+	 * Parses the given gzip compressed file.
+	 * When the sizes of its members are known, as in files written by this parser, the members are
+	 * decompressed concurrently and the result is parsed in parallel chunks like a mapped file.
+	 * Otherwise the file is decompressed and parsed as a stream.
+	 */
+	private void parseGzip(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		ForkJoinPool pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+		try {
+			ByteBuffer inflated = ParallelGzipInput.inflate(channel, pool);
+			if(inflated != null) {
+				int nbChunks = (int) Math.min(this.parallelism, Math.max(1, inflated.limit() / MIN_CHUNK_SIZE));
+				parseBuffer(inflated, inflated.limit(), pool, nbChunks);
+				return;
+			}
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
+			channel.close();
+		}
+		InputStream in = new GZIPInputStream(new FileInputStream(file), STREAM_BLOCK_SIZE);
+		try {
+			parseStream(in);
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Parses the bytes of the given stream. The stream is read in blocks, every block is parsed 
+	 * up to its last complete line and the rest of the block is moved to the start of the next one.
+	 */
+	private void parseStream(InputStream in) throws IOException {
+		byte[] bytes = new byte[STREAM_BLOCK_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		ObjData data = new ObjData();
+		int size = 0;
+		int read;
+		while((read = in.read(bytes, size, bytes.length - size)) >= 0) {
+			size += read;
+			if(size < bytes.length) {
+				continue;
+			}
+			int end = ObjTokenizer.lastLineFeed(buffer, 0, size) + 1;
+			if(end == 0) {
+				//The block does not contain a complete line.
+				bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+				buffer = ByteBuffer.wrap(bytes);
+				continue;
+			}
+			this.chunkParser.parse(buffer, 0, end, data);
+			append(data);
+			data.clear();
+			System.arraycopy(bytes, end, bytes, 0, size - end);
+			size -= end;
+		}
+		this.chunkParser.parse(buffer, 0, size, data);
+		append(data);
+	}
+	
+	/**
+	 * Parses the given file with an ObjPipeline: the file is read and decompressed on one thread, 
+	 * parsed on another one and the parsed batches are appended to the lists on the current thread.
+	 */
+	private void parsePipelined(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		if(isGzip(file.getName())) {
+			in = new GZIPInputStream(in, STREAM_BLOCK_SIZE);
+		}
+		ObjPipeline pipeline = new ObjPipeline(in, STREAM_BLOCK_SIZE, PIPELINE_DEPTH);
+		try {
+			pipeline.start();
+			ObjData data;
+			while((data = pipeline.take()) != null) {
+				append(data);
+				pipeline.recycle(data);
+			}
+		} finally {
+			pipeline.close();
+			in.close();
+		}
+	}
+	
+	/**
+	 * Splits the first end bytes of the buffer at line boundaries into nbChunks chunks 
+	 * and parses them concurrently, every chunk in its own ObjData.
+	 */
+	private static ObjData[] parseChunks(ForkJoinPool pool, final ByteBuffer buffer, int end, int nbChunks) {
+		final int[] bounds = new int[nbChunks + 1];
+		for (int i = 1; i < nbChunks; i++) {
+			int bound = Math.max(bounds[i-1], (int) ((long) end * i / nbChunks));
+			while(bound < end && buffer.get(bound) != '\n') {
+				bound++;
+			}
+			bounds[i] = Math.min(end, bound + 1);
+		}
+		bounds[nbChunks] = end;
+		final ObjData[] chunks = new ObjData[nbChunks];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbChunks; i++) {
+			final int chunk = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					ObjData data = new ObjData();
+					new ObjChunkParser().parse(buffer.duplicate(), bounds[chunk], bounds[chunk+1], data);
+					chunks[chunk] = data;
+					return null;
+				}
+			});
+		}
+		invokeAll(pool, tasks);
+		return chunks;
+	}
+	
+	/**
+	 * Runs the given tasks on the pool and waits until they are all done.
+	 * Exceptions thrown by a task are rethrown.
+	 * 
+	 * @param pool	The pool to run the tasks on, or null to run them one after the other on the current thread.
+	 * @param tasks	The tasks to run.
+	 */
+	static void invokeAll(ForkJoinPool pool, List<Callable<Void>> tasks) {
+		if(pool == null) {
+			for (Callable<Void> task : tasks) {
+				try {
+					task.call();
+				} catch (RuntimeException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			return;
+		}
+		for (Future<Void> future : pool.invokeAll(tasks)) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while parsing.", e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+	
+	/**
+	 * Appends the contents of the given chunks, in order, to the mesh of this parser.
+	 * 
+	 * @param chunks	The parsed chunks, in the order in which they appear in the file.
+	 * @param pool	The pool to copy the chunks on, or null to copy them on the current thread.
+	 */
+	void append(ObjData[] chunks, ForkJoinPool pool) {
+		int nbTriangles = this.mesh.nbTriangles;
+		this.mesh.append(chunks, pool);
+		this.nbFaces += this.mesh.nbTriangles - nbTriangles;
+		//Chunks that were parsed in parallel are too large to still be in the cache.
+		if(pool == null && this.nbFusedTriangles == nbTriangles && isFusing()) {
+			fuse();
+		}
+	}
+	
+	/**
+	 * Appends the contents of a single parsed block or line to the mesh of this parser, on the current thread.
+	 * 
+	 * @param data	The parsed data.
+	 */
+	void append(ObjData data) {
+		int nbTriangles = this.mesh.nbTriangles;
+		this.mesh.append(data);
+		this.nbFaces += this.mesh.nbTriangles - nbTriangles;
+		if(this.nbFusedTriangles == nbTriangles && isFusing()) {
+			fuse();
+		}
+	}
+	
+	/**
+	 * Checks if the face normals are added to the vertex normals while the file is parsed: 
+	 * in the FUSED accumulation mode, when every vertex gets one normal.
+	 */
+	private boolean isFusing() {
+		return this.accumulationMode == AccumulationMode.FUSED && !this.useSmoothingGroups 
+				&& Float.isNaN(this.creaseAngle) && Float.isNaN(this.weldDistance);
+	}
+	
+	/**
+	 * Adds the normals of the triangles that were appended since the last call to the vertex normals.
+	 * 
+	 * @return	boolean
+	 * 		False if they refer to a vertex that is not parsed yet, then they are left for the next call.
+	 */
+	private boolean fuse() {
+		if(this.weightingMode == WeightingMode.ANGLE) {
+			this.fusedCornerWeights = this.fusedCornerWeights == null ? new float[3*this.mesh.nbTriangles] 
+					: ObjData.grow(this.fusedCornerWeights, 3*this.mesh.nbTriangles);
+		}
+		if(!NormalEngine.accumulateAppended(this.mesh, this.weightingMode, this.nbFusedTriangles, this.fusedCornerWeights)) {
+			return false;
+		}
+		this.nbFusedTriangles = this.mesh.nbTriangles;
+		return true;
+	}
+	
+	static boolean isGzip(String fileName) {
+		return fileName.endsWith(GZIP_SUFFIX);
+	}
+	
+	/**
+	 * Writes the mesh to the given file, gzip compressed on parallelism threads when the name of the file ends with .gz.
+	 */
 	private void writeFile(File outputFile) throws IOException {
-		PrintWriter pw = new PrintWriter(new FileWriter(outputFile));
+		PrintWriter pw;
+		if(isGzip(outputFile.getName())) {
+			pw = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+					new ParallelGzipOutputStream(new FileOutputStream(outputFile), this.parallelism), StandardCharsets.US_ASCII)));
+		} else {
+			pw = new PrintWriter(new FileWriter(outputFile));
+		}
 		writeVertexCoordinates(pw);
 		writeTextureCoordinates(pw);
 		writeVertexNormalsCoordinates(pw);
 		writeTriangles(pw);
 	 
 		pw.close();
+		this.mesh.diagnostics.report(outputFile.getPath(), MeshDiagnostics.Issue.SKIPPED_TRIANGLE);
 	}
 
 	private void writeVertexCoordinates(PrintWriter pw) {
 		String V = new String("v ");
 		StringBuilder sb;
 		pw.println("# Vertices");
-		for (Vertex vertex : coordinates) {
+		float[] vertices = mesh.vertices;
+		for (int i = 0; i < 3*mesh.nbVertices; i += 3) {
 			sb = new StringBuilder();
 			sb.append(V);
-			sb.append(vertex.coord.x);
+			sb.append(vertices[i]);
 			sb.append(SPACE);
-			sb.append(vertex.coord.y);
+			sb.append(vertices[i + 1]);
 			sb.append(SPACE);
-			sb.append(vertex.coord.z);
+			sb.append(vertices[i + 2]);
 			pw.println(sb.toString());
 		}
 	}
@@ -129,12 +841,13 @@ public class ObjectParser {
 		String VT = new String("vt ");
 		StringBuilder sb;
 		pw.println("# Texture coordinates");
-		for (TexCoord2f texCoord : textureCoordinates) {
+		float[] textureCoordinates = mesh.textureCoordinates;
+		for (int i = 0; i < 2*mesh.nbTextureCoordinates; i += 2) {
 			sb = new StringBuilder();
 			sb.append(VT);
-			sb.append(texCoord.x);
+			sb.append(textureCoordinates[i]);
 			sb.append(SPACE);
-			sb.append(texCoord.y);
+			sb.append(textureCoordinates[i + 1]);
 			pw.println(sb.toString());
 		}
 	}
@@ -143,14 +856,15 @@ public class ObjectParser {
 		String VN = new String("vn ");
 		StringBuilder sb;
 		pw.println("# Vertex normals");
-		for (Vertex vertex : coordinates) {
+		float[] normals = mesh.vertexNormals;
+		for (int i = 0; i < 3*mesh.getNbVertexNormals(); i += 3) {
 			sb = new StringBuilder();
 			sb.append(VN);
-			sb.append(vertex.normal.x);
+			sb.append(normals[i]);
 			sb.append(SPACE);
-			sb.append(vertex.normal.y);
+			sb.append(normals[i + 1]);
 			sb.append(SPACE);
-			sb.append(vertex.normal.z);
+			sb.append(normals[i + 2]);
 			pw.println(sb.toString());
 		}
 	}
@@ -160,51 +874,119 @@ public class ObjectParser {
 		String SLASH = new String("/");
 		StringBuilder sb;
 		pw.println("# Faces");
-		for (Triangle triangle: triangles) {
-			if(Float.isNaN(triangle.getNormal().x) || Float.isNaN(triangle.getNormal().y) || Float.isNaN(triangle.getNormal().z)) {
-				System.out.println("INFO: Leaving out Triangle with NaN normal.");
-			} else {
-			
-			
+		int[] vertices = mesh.triangleVertices;
+		int[] textVertices = mesh.triangleTextureCoordinates;
+		int[] normals = mesh.getNormalIndices();
+		//All triangles are valid when the normals of the file were reused.
+		int[] valid = mesh.getValidTriangles();
+		mesh.diagnostics.clear(MeshDiagnostics.Issue.SKIPPED_TRIANGLE);
+		int next = 0;
+		for (int j = 0; j < mesh.nbValidTriangles; j++) {
+			int triangle = valid[j];
+			for (; next < triangle; next++) {
+				mesh.diagnostics.add(MeshDiagnostics.Issue.SKIPPED_TRIANGLE, next);
+			}
+			next = triangle + 1;
+			int i = 3*triangle;
 			
 			sb = new StringBuilder();
 			sb.append(F);
-			int vertex1 = triangle.vertex[0] + 1;
+			int vertex1 = vertices[i] + 1;
 			sb.append(vertex1);
 			sb.append(SLASH);
-			sb.append(triangle.textVertex[0] + 1);
+			sb.append(textVertices[i] + 1);
 			sb.append(SLASH);
-			sb.append(vertex1);
+			sb.append(normals[i] + 1);
 			
 			sb.append(SPACE);
 			
-			int vertex2 = triangle.vertex[1] + 1;
+			int vertex2 = vertices[i + 1] + 1;
 			sb.append(vertex2);
 			sb.append(SLASH);
-			sb.append(triangle.textVertex[1] + 1);
+			sb.append(textVertices[i + 1] + 1);
 			sb.append(SLASH);
-			sb.append(vertex2);
+			sb.append(normals[i + 1] + 1);
 			
 			sb.append(SPACE);
 			
-			int vertex3 = triangle.vertex[2] + 1;
+			int vertex3 = vertices[i + 2] + 1;
 			sb.append(vertex3);
 			sb.append(SLASH);
-			sb.append(triangle.textVertex[2] + 1);
+			sb.append(textVertices[i + 2] + 1);
 			sb.append(SLASH);
-			sb.append(vertex3);
+			sb.append(normals[i + 2] + 1);
 			pw.println(sb.toString());
-			}
+		}
+		for (; next < mesh.nbTriangles; next++) {
+			mesh.diagnostics.add(MeshDiagnostics.Issue.SKIPPED_TRIANGLE, next);
 		}
 	}
 
-	private void normalizeVertexNormals() {
-		for (Vertex vertex : coordinates) {
-			vertex.normalizeNormal();
+	/**
+	 * Calculates the normal of every triangle and the normalized normal of every vertex, or of every vertex 
+	 * and smoothing group, as set by the accumulation mode.
+	 */
+	private void calcVertexNormals() {
+		int nbTasks = getNbTriangleTasks();
+		ForkJoinPool pool = newPool(nbTasks);
+		try {
+			this.mesh.cornerNormals = null;
+			//The vertex of every corner for the accumulation, the welded one when welding is on.
+			int[] welded = null;
+			int[] corners = this.mesh.triangleVertices;
+			if(!Float.isNaN(this.weldDistance)) {
+				welded = PositionWeld.weld(this.mesh, this.weldDistance, pool, nbTasks);
+				corners = PositionWeld.getWeldedCorners(this.mesh, welded);
+			}
+			if(this.useSmoothingGroups && SmoothingGroups.isUsed(this.mesh)) {
+				SmoothingGroups.split(this.mesh, corners);
+			} else if(!Float.isNaN(this.creaseAngle)) {
+				VertexAdjacency adjacency = welded == null ? this.mesh.getAdjacency(pool, nbTasks)
+						: VertexAdjacency.build(corners, this.mesh.nbVertices, 3*this.mesh.nbTriangles, pool, nbTasks);
+				AutoSmooth.split(this.mesh, corners, this.creaseAngle, adjacency, pool, nbTasks);
+			} else if(welded != null) {
+				//The normals are accumulated on the welded vertices and copied to the others afterwards.
+				this.mesh.cornerNormals = corners;
+				this.mesh.nbVertexNormals = this.mesh.nbVertices;
+			}
+			float[] tangentSums = this.calcTangents ? new float[6*this.mesh.getNbVertexNormals()] : null;
+			if(isFusing() && fuse()) {
+				this.fusedCornerWeights = null;
+				NormalEngine.normalizeVertexNormals(this.mesh, pool, nbTasks);
+				if(tangentSums != null) {
+					TangentFrames.accumulate(this.mesh, tangentSums);
+				}
+			} else if(this.accumulationMode == AccumulationMode.PARALLEL) {
+				//Also on one thread, so the result is the same for every parallelism.
+				NormalEngine.calcTriangleNormals(this.mesh, this.weightingMode, tangentSums, pool, nbTasks);
+				NormalEngine.normalizeVertexNormals(this.mesh, pool, nbTasks);
+			} else if(this.accumulationMode == AccumulationMode.GATHER && nbTasks > 1) {
+				VertexAdjacency adjacency = this.mesh.cornerNormals == null ? this.mesh.getAdjacency(pool, nbTasks)
+						: VertexAdjacency.build(this.mesh.cornerNormals, this.mesh.nbVertexNormals, 3*this.mesh.nbTriangles, pool, nbTasks);
+				NormalEngine.gatherVertexNormals(this.mesh, this.weightingMode, adjacency, pool, nbTasks);
+				if(tangentSums != null) {
+					TangentFrames.accumulate(this.mesh, tangentSums);
+				}
+			} else {
+				calcTriangleNormals(tangentSums);
+				NormalEngine.normalizeVertexNormals(this.mesh);
+			}
+			if(this.mesh.cornerNormals == corners) {
+				PositionWeld.copy(this.mesh.vertexNormals, 3, welded);
+				if(tangentSums != null) {
+					PositionWeld.copy(tangentSums, 6, welded);
+				}
+				this.mesh.cornerNormals = null;
+			}
+			this.mesh.tangents = tangentSums == null ? null : TangentFrames.finish(this.mesh, tangentSums);
+		} finally {
+			if(pool != null) {
+				pool.shutdown();
+			}
 		}
 	}
 
-	private void calcTriangleNormals() {
+	private void calcTriangleNormals(float[] tangentSums) {
 		/*Ignoring Smoothing Groups
 	    In the case where smoothing groups are not checked there will be a single vertex normal for each vertex of the mesh. 
 	    The vertex normal is the average of the face normals of each of the faces that share that vertex. 
@@ -217,28 +999,7 @@ public class ObjectParser {
 	    As a last step, all the normals in the array can be normalized.
 	    */
 		
-		for (Triangle triangle : this.triangles) {
-			Vector3f normal = triangle.getNormal();
-			Vertex a = this.coordinates.get(triangle.vertex[0]);
-			Vertex b = this.coordinates.get(triangle.vertex[1]);
-			Vertex c = this.coordinates.get(triangle.vertex[2]);
-			if(normal == null) {
-				normal = triangle.calcNormalizedNormal(a, b, c);
-				triangle.setNormal(normal);
-			}
-			if(Float.isNaN(normal.x) || Float.isNaN(normal.y) || Float.isNaN(normal.z)) {
-				System.out.println("WARN: Triangle with NaN normal found, it will be left out.");
-			} else {
-				a.addToNormal(normal);
-				b.addToNormal(normal);
-				c.addToNormal(normal);
-				if(Float.isNaN(a.normal.x) || Float.isNaN(a.normal.y) || Float.isNaN(a.normal.z) ||
-						Float.isNaN(b.normal.x) || Float.isNaN(b.normal.y) || Float.isNaN(b.normal.z) ||
-						Float.isNaN(c.normal.x) || Float.isNaN(c.normal.y) || Float.isNaN(c.normal.z)) {
-					System.out.println("Vertex with NaN normal");
-				}
-			}
-		}
+		NormalEngine.calcTriangleNormals(this.mesh, this.weightingMode, tangentSums);
 	}
 
 	/**
@@ -247,98 +1008,69 @@ public class ObjectParser {
 	 * @param strLine	The line to parse.
 	 */
 	public void parseLine(String strLine){
-		String[] splittedString = strLine.split(" ");
-		String cmd = splittedString[0];
-		for (int i = 1; i < splittedString.length; i++) {
-			if(splittedString[i].equals("")){
-				for (int j = i; j < splittedString.length-1; j++) {
-					splittedString[j] = splittedString[j+1];
-				}
-			}
+		int length = toLineBytes(strLine);
+		this.chunkParser.parse(this.lineBuffer, 0, length, this.lineData);
+		append(this.lineData);
+		this.lineData.clear();
+	}
+	
+	/**
+	 * Copies the characters of the given string into the line buffer, which grows when it is too small.
+	 * 
+	 * @param string	The string to copy.
+	 * @return	int
+	 * 		The number of bytes copied.
+	 */
+	private int toLineBytes(String string) {
+		int length = string.length();
+		if(this.lineBytes.length < length) {
+			this.lineBytes = new byte[Math.max(length, 2*this.lineBytes.length)];
+			this.lineBuffer = ByteBuffer.wrap(this.lineBytes);
 		}
-		if(cmd.equals("v")){
-			//Vertex
-			this.coordinates.add(new Vertex(
-					Float.parseFloat(splittedString[1]),
-					Float.parseFloat(splittedString[2]),
-					Float.parseFloat(splittedString[3])));
-		} else if(cmd.equals("vt")){
-			//Textuurcoordinaat
-			this.textureCoordinates.add(new TexCoord2f(
-					Float.parseFloat(splittedString[1]), 
-					Float.parseFloat(splittedString[2])));
-		} else if(cmd.equals("vn")){
-			//normaal
-			this.normals.add(new Vector3f(
-					Float.parseFloat(splittedString[1]),
-					Float.parseFloat(splittedString[2]),
-					Float.parseFloat(splittedString[3])));
-		} else if(cmd.equals("f")){
-			//Vlak
-			if(splittedString.length-1 == 3){
-				nbFaces++;
-				this.triangles.add(parseTriangle(splittedString));
-				
-				
-			} else if(splittedString.length-1 == 4){
-				String[] triangle1 = new String[] {splittedString[0], splittedString[1], splittedString[2], splittedString[3]};
-				String[] triangle2 = new String[] {splittedString[0], splittedString[1], splittedString[3], splittedString[4]};
-				nbFaces++;
-				this.triangles.add(parseTriangle(triangle1));
-				nbFaces++;
-				this.triangles.add(parseTriangle(triangle2));
-			} else{
-				throw new UnsupportedOperationException("Don't support faces with more than 4 vertices.");
-			}
-			
-		} else if(cmd.equals("#")){
-			//ignore Comment lines
-		} else if(cmd.equals("g")){
-			//Group start
-			System.err.println("Implement groups");
-		} else if(cmd.equals("mtllib")){
-			//Mtllib start
-			System.err.println("Implement mtllib");
-		} else if(cmd.equals("o")){
-			//objectname start
-			System.err.println("Implement o");
-		} else if(cmd.equals("usemtl")){
-			//usemtl name material start
-			System.err.println("Implement usemtl");
-		} else if(cmd.equals("s")){
-			//smoothgroup start
-			System.err.println("Implement s");
-		} else if(cmd.equals("")){
-			//empty line
-		} else{
-			throw new UnsupportedOperationException("Lines starting with \"" + cmd + "\" not supported yet.");
-		}
-	}
-	
-	/**
-	 * Parses a subString that came from a plane line of the .obj file.
+		for (int i = 0; i < length; i++) {
+			this.lineBytes[i] = (byte) string.charAt(i);
+		}
+		return length;
+	}
+	
+	/**
+	 * Parses the tokens of a face line of the .obj file into a triangle, with the face decoder of the chunk parser.
+	 * The first token is the f of the line, only the next three vertex tokens are used.
 	 * 
-	 * @param subString	The subString to parse.
+	 * @param splittedString	The tokens of the face line.
+	 * @throws NumberFormatException	If a vertex token is not a valid face vertex.
 	 */
 	public Triangle parseTriangle(String[] splittedString){
 		int[] coords = new int[3];
 		int[] textCoords = new int[3];
-		for (int i = 1; i < splittedString.length; i++) {
-			String[] splitSubString;
-			splitSubString = splittedString[i].split("/");
+		for (int i = 1; i < Math.min(splittedString.length, 4); i++) {
+			int length = toLineBytes(splittedString[i]);
+			FaceDecoder decoder = this.chunkParser.decodeFaceVertex(this.lineBuffer, 0, length);
 			
 			int arrayIndex = i-1;
 			
-			coords[arrayIndex] = Integer.parseInt(splitSubString[0])-1;
-			if(splitSubString.length >1){
-				if(!splitSubString[1].equals(""))
-					textCoords[arrayIndex] = Integer.parseInt(splitSubString[1])-1;
+			//Negative indices count back from the last vertex read.
+			coords[arrayIndex] = toIndex(decoder.vertex, this.mesh.nbVertices);
+			if(decoder.texture != 0) {
+				textCoords[arrayIndex] = toIndex(decoder.texture, this.mesh.nbTextureCoordinates);
 			}
 		}
 		return new Triangle(coords, textCoords);
 	}
 	
-	public int nbFaces = 0;
+	private static int toIndex(int index, int count) {
+		return index < 0 ? count + index : index - 1;
+	}
+	
+	//The number of triangles made from the faces of the parsed files.
+	int nbFaces;
+	
+	/**
+	 * Returns the number of triangles made from the faces of the parsed files.
+	 */
+	public int getNbFaces() {
+		return this.nbFaces;
+	}
 	
 	/**
 	 * Main method to test the ObjectParser.
@@ -350,14 +1082,14 @@ public class ObjectParser {
 		ObjectParser objparser = new ObjectParser("OBJ/Assassin.obj");
 		objparser.parse("OBJ/testOutput.obj");
 		System.out.println("done parsing");
-		System.out.println("Number of coordinates: " + objparser.coordinates.size());
-		if(objparser.normals.size() > 0) {
-			System.out.println("This OBJ file already contained normals (vn). New ones are calculated.");
-		}
-		System.out.println("Number of normals: " + objparser.normals.size());
-		System.out.println("Number of texture coordinates: " + objparser.textureCoordinates.size());
-		System.out.println("Number of faces: " + objparser.nbFaces);
-		System.out.println("Number of triangles: " + objparser.triangles.size());
+		System.out.println("Number of coordinates: " + objparser.mesh.nbVertices);
+		if(objparser.mesh.nbNormals > 0) {
+			System.out.println("This OBJ file already contained normals (vn). Use NormalMode.REUSE or VERIFY to avoid calculating new ones.");
+		}
+		System.out.println("Number of normals: " + objparser.mesh.nbNormals);
+		System.out.println("Number of texture coordinates: " + objparser.mesh.nbTextureCoordinates);
+		System.out.println("Number of faces: " + objparser.getNbFaces());
+		System.out.println("Number of triangles: " + objparser.mesh.nbTriangles);
 		
 //		printVertices(objparser);
 //		printTriangleNormals(objparser);
@@ -368,42 +1100,32 @@ public class ObjectParser {
 	private static void calculateBoundaries(ObjectParser objparser) {
 		Vector3f max = new Vector3f(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
 		Vector3f min = new Vector3f(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
-		for (Vertex vertex : objparser.coordinates) {
-			if(vertex.coord.x > max.x) {
-				max.x = vertex.coord.x;
-			}
-			if(vertex.coord.x < min.x) {
-				min.x = vertex.coord.x;
-			}
-			
-			if(vertex.coord.y > max.y) {
-				max.y = vertex.coord.y;
-			}
-			if(vertex.coord.y < min.y) {
-				min.y = vertex.coord.y;
-			}
-			
-			if(vertex.coord.z > max.z) {
-				max.z = vertex.coord.z;
-			}
-			if(vertex.coord.z < min.z) {
-				min.z = vertex.coord.z;
-			}
+		float[] vertices = objparser.mesh.vertices;
+		for (int i = 0; i < 3*objparser.mesh.nbVertices; i += 3) {
+			max.x = Math.max(max.x, vertices[i]);
+			min.x = Math.min(min.x, vertices[i]);
+			max.y = Math.max(max.y, vertices[i + 1]);
+			min.y = Math.min(min.y, vertices[i + 1]);
+			max.z = Math.max(max.z, vertices[i + 2]);
+			min.z = Math.min(min.z, vertices[i + 2]);
 		}
 		System.out.println("Boundary box = min (" + min.x + ", " + min.y + ", " + min.z + ") - max (" + max.x + ", " + max.y + ", " + max.z + ")");
 	}
 	
 
 //	private static void printVertices(ObjectParser objparser) {
-//		for (int i = 0; i < objparser.coordinates.size(); i++) {
-//			Vertex vertex = objparser.coordinates.get(i);
-//			System.out.println("Vertex " + i + ": " + vertex.coord + " - normal = " + vertex.normal);
+//		ObjData mesh = objparser.mesh;
+//		for (int i = 0; i < mesh.nbVertices; i++) {
+//			System.out.println("Vertex " + i + ": (" + mesh.vertices[3*i] + ", " + mesh.vertices[3*i+1] + ", " + mesh.vertices[3*i+2] 
+//					+ ") - normal = (" + mesh.vertexNormals[3*i] + ", " + mesh.vertexNormals[3*i+1] + ", " + mesh.vertexNormals[3*i+2] + ")");
 //		}
 //	}
 //
 //	private static void printTriangleNormals(ObjectParser objparser) {
-//		for (Triangle triangle : objparser.triangles) {
-//			System.out.println("Triangle (" + triangle.vertex[0] + "," + triangle.vertex[1] + "," + triangle.vertex[2] + ") = " + triangle.getNormal());
+//		ObjData mesh = objparser.mesh;
+//		for (int i = 0; i < mesh.nbTriangles; i++) {
+//			System.out.println("Triangle (" + mesh.triangleVertices[3*i] + "," + mesh.triangleVertices[3*i+1] + "," + mesh.triangleVertices[3*i+2] 
+//					+ ") = (" + mesh.faceNormals[3*i] + ", " + mesh.faceNormals[3*i+1] + ", " + mesh.faceNormals[3*i+2] + ")");
 //		}
 //	}
 }
@@ -0,0 +1,196 @@
+package abstractModel.parser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * ParallelGzipInput decompresses gzip files that consist of several members on several threads.
+ * The members can only be found without decompressing them when every member header gives the size of the member,
+ * as the members written by ParallelGzipOutputStream ("NC" extra field) and by bgzip ("BC" extra field) do.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ParallelGzipInput {
+
+	private static final int FHCRC = 2;
+	private static final int FEXTRA = 4;
+	private static final int FNAME = 8;
+	private static final int FCOMMENT = 16;
+
+	private ParallelGzipInput() {
+	}
+
+	/**
+	 * Decompresses the gzip file behind the given channel, every member on its own task.
+	 *
+	 * @param channel	The channel of the gzip file.
+	 * @param pool	The pool to decompress on, or null to decompress on the current thread.
+	 * @return	ByteBuffer
+	 * 		The decompressed bytes, or null if the members cannot be found without decompressing them
+	 * 		or together are too large for one buffer.
+	 * @throws IOException	If the file is not a valid gzip file.
+	 */
+	public static ByteBuffer inflate(FileChannel channel, ForkJoinPool pool) throws IOException {
+		long size = channel.size();
+		if(size > Integer.MAX_VALUE) {
+			return null;
+		}
+		final ByteBuffer compressed = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		//Start of the deflate data, end of the deflate data and offset in the output of every member.
+		final List<long[]> members = new ArrayList<long[]>();
+		long outputSize = 0;
+		int position = 0;
+		while(position < size) {
+			if(!isHeader(compressed, position, (int) size)) {
+				if(position == 0) {
+					throw new IOException("Invalid gzip header at byte 0.");
+				}
+				//Like GZIPInputStream, the bytes after the last member are ignored when they do not start another one.
+				break;
+			}
+			int memberSize = getMemberSize(compressed, position, (int) size);
+			if(memberSize <= 0 || position + memberSize > size) {
+				return null;
+			}
+			int dataStart = getDataStart(compressed, position);
+			int dataEnd = position + memberSize - 8;
+			if(dataStart > dataEnd) {
+				throw new IOException("Invalid gzip member at byte " + position + ".");
+			}
+			long isize = compressed.getInt(dataEnd + 4) & 0xffffffffL;
+			members.add(new long[] {dataStart, dataEnd, outputSize});
+			outputSize += isize;
+			position += memberSize;
+		}
+		if(outputSize > Integer.MAX_VALUE - 8) {
+			return null;
+		}
+		final byte[] output = new byte[(int) outputSize];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < members.size(); i++) {
+			final long[] member = members.get(i);
+			final int outputEnd = i + 1 < members.size() ? (int) members.get(i + 1)[2] : output.length;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					try {
+						inflateMember(compressed, (int) member[0], (int) member[1], output, (int) member[2], outputEnd);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			ObjectParser.invokeAll(pool, tasks);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return ByteBuffer.wrap(output);
+	}
+
+	/**
+	 * Checks if the fixed part of a gzip member header, with the deflate compression method, starts at the given position.
+	 */
+	private static boolean isHeader(ByteBuffer compressed, int position, int size) {
+		return position + 10 <= size && compressed.get(position) == 0x1f && compressed.get(position + 1) == (byte) 0x8b 
+				&& compressed.get(position + 2) == 8;
+	}
+
+	/**
+	 * Returns the size of the member that starts at the given position as given in its header, or -1 if the header does not give it.
+	 */
+	private static int getMemberSize(ByteBuffer compressed, int position, int size) {
+		if((compressed.get(position + 3) & FEXTRA) == 0 || position + 12 > size) {
+			return -1;
+		}
+		int extraLength = compressed.getShort(position + 10) & 0xffff;
+		int index = position + 12;
+		int extraEnd = Math.min(index + extraLength, size);
+		while(index + 4 <= extraEnd) {
+			byte id1 = compressed.get(index);
+			byte id2 = compressed.get(index + 1);
+			int length = compressed.getShort(index + 2) & 0xffff;
+			if(id1 == 'N' && id2 == 'C' && length == 4 && index + 8 <= extraEnd) {
+				return compressed.getInt(index + 4);
+			}
+			if(id1 == 'B' && id2 == 'C' && length == 2 && index + 6 <= extraEnd) {
+				return (compressed.getShort(index + 4) & 0xffff) + 1;
+			}
+			index += 4 + length;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first byte of deflate data of the member that starts at the given position.
+	 */
+	private static int getDataStart(ByteBuffer compressed, int position) {
+		int flags = compressed.get(position + 3);
+		int index = position + 10;
+		if((flags & FEXTRA) != 0) {
+			index += 2 + (compressed.getShort(index) & 0xffff);
+		}
+		if((flags & FNAME) != 0) {
+			while(compressed.get(index++) != 0) {
+			}
+		}
+		if((flags & FCOMMENT) != 0) {
+			while(compressed.get(index++) != 0) {
+			}
+		}
+		if((flags & FHCRC) != 0) {
+			index += 2;
+		}
+		return index;
+	}
+
+	/**
+	 * Inflates the deflate data between dataStart and dataEnd into output between outputStart and outputEnd,
+	 * and checks it against the CRC32 in the trailer of the member.
+	 */
+	private static void inflateMember(ByteBuffer compressed, int dataStart, int dataEnd, byte[] output, int outputStart, int outputEnd) throws IOException {
+		ByteBuffer data = compressed.duplicate();
+		data.limit(dataEnd).position(dataStart);
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data);
+			int index = outputStart;
+			byte[] excess = new byte[1];
+			while(!inflater.finished()) {
+				int inflated = 0;
+				if(index < outputEnd) {
+					inflated = inflater.inflate(output, index, outputEnd - index);
+					index += inflated;
+				} else if(inflater.inflate(excess) > 0) {
+					throw new IOException("Gzip member at byte " + dataStart + " is larger than its size says.");
+				}
+				if(inflated == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IOException("Gzip member at byte " + dataStart + " is corrupt.");
+				}
+			}
+			if(index != outputEnd) {
+				throw new IOException("Gzip member at byte " + dataStart + " is smaller than its size says.");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Gzip member at byte " + dataStart + " is corrupt.", e);
+		} finally {
+			inflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(output, outputStart, outputEnd - outputStart);
+		if((int) crc.getValue() != compressed.getInt(dataEnd)) {
+			throw new IOException("CRC error in gzip member at byte " + dataStart + ".");
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package abstractModel.parser;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * ParallelGzipOutputStream compresses the written bytes in gzip format on several threads.
+ * The bytes are cut in blocks that are compressed independently of each other, every block becomes a gzip member.
+ * Concatenated members form a valid gzip file that every gzip reader can decompress.
+ *
+ * Every member carries its own compressed size in an extra header field with ID "NC",
+ * so the ParallelGzipInput can find the members without decompressing them and decompress them concurrently.
+ *
+ * @author Geert Van Campenhout
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	//Number of uncompressed bytes in a block.
+	static final int BLOCK_SIZE = 1 << 20;
+	//Size of the gzip header of a member: fixed part, XLEN and the NC subfield.
+	static final int HEADER_SIZE = 10 + 2 + 8;
+	//Size of the gzip trailer of a member: CRC32 and ISIZE.
+	static final int TRAILER_SIZE = 8;
+
+	private final OutputStream out;
+	private final ForkJoinPool pool;
+	private final int level;
+	//Compressions that are not yet written, in the order of their blocks.
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private final int maxPending;
+
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int blockSize;
+	private boolean closed;
+
+	/**
+	 * Creates a stream that compresses on the given number of threads with the default compression level.
+	 *
+	 * @param out	The stream to write the compressed bytes to.
+	 * @param nbThreads	The number of threads that compress blocks.
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int nbThreads) {
+		this(out, nbThreads, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Creates a stream that compresses on the given number of threads.
+	 *
+	 * @param out	The stream to write the compressed bytes to.
+	 * @param nbThreads	The number of threads that compress blocks.
+	 * @param level	The compression level, as for Deflater.
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int nbThreads, int level) {
+		this.out = out;
+		this.pool = new ForkJoinPool(nbThreads);
+		this.level = level;
+		//Keep every thread busy while the oldest block is written, without buffering the whole file.
+		this.maxPending = 2 * nbThreads;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(blockSize == BLOCK_SIZE) {
+			submitBlock();
+		}
+		block[blockSize++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len > 0) {
+			if(blockSize == BLOCK_SIZE) {
+				submitBlock();
+			}
+			int length = Math.min(len, BLOCK_SIZE - blockSize);
+			System.arraycopy(b, off, block, blockSize, length);
+			blockSize += length;
+			off += length;
+			len -= length;
+		}
+	}
+
+	/**
+	 * Hands the current block to the pool and writes the finished members,
+	 * waiting for the oldest one when too many blocks are pending.
+	 */
+	private void submitBlock() throws IOException {
+		final byte[] data = block;
+		final int size = blockSize;
+		pending.add(pool.submit(new Callable<byte[]>() {
+			public byte[] call() {
+				return compress(data, size, level);
+			}
+		}));
+		block = new byte[BLOCK_SIZE];
+		blockSize = 0;
+		while(!pending.isEmpty() && (pending.size() >= maxPending || pending.peek().isDone())) {
+			writeOldest();
+		}
+	}
+
+	private void writeOldest() throws IOException {
+		try {
+			out.write(pending.poll().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing.", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Compressing a block failed.", e.getCause());
+		}
+	}
+
+	/**
+	 * Writes all bytes written so far as complete members, the following bytes start a new member.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(blockSize > 0) {
+			submitBlock();
+		}
+		while(!pending.isEmpty()) {
+			writeOldest();
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+
+	/**
+	 * Compresses the first size bytes of the given block to a complete gzip member.
+	 */
+	static byte[] compress(byte[] data, int size, int level) {
+		Deflater deflater = new Deflater(level, true);
+		byte[] member = new byte[HEADER_SIZE + size + size / 1000 + 64 + TRAILER_SIZE];
+		int length = HEADER_SIZE;
+		try {
+			deflater.setInput(data, 0, size);
+			deflater.finish();
+			while(!deflater.finished()) {
+				if(length == member.length - TRAILER_SIZE) {
+					member = Arrays.copyOf(member, 2 * member.length);
+				}
+				length += deflater.deflate(member, length, member.length - TRAILER_SIZE - length);
+			}
+		} finally {
+			deflater.end();
+		}
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, size);
+		int memberSize = length + TRAILER_SIZE;
+		//ID1, ID2, CM = deflate, FLG = FEXTRA, MTIME = 0, XFL = 0, OS = unknown
+		byte[] header = {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 255, 8, 0, 'N', 'C', 4, 0};
+		System.arraycopy(header, 0, member, 0, header.length);
+		putInt(member, header.length, memberSize);
+		putInt(member, length, (int) crc.getValue());
+		putInt(member, length + 4, size);
+		return Arrays.copyOf(member, memberSize);
+	}
+
+	private static void putInt(byte[] bytes, int index, int value) {
+		bytes[index] = (byte) value;
+		bytes[index + 1] = (byte) (value >>> 8);
+		bytes[index + 2] = (byte) (value >>> 16);
+		bytes[index + 3] = (byte) (value >>> 24);
+	}
+}
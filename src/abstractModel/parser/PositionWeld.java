@@ -0,0 +1,166 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * PositionWeld finds the vertices of a mesh that are at the same position, like the copies exporters make
+ * of the vertices on a texture seam, so their normals can be accumulated as if they were one vertex.
+ * The mesh itself is not changed, the vertices keep their indices in the output.
+ *
+ * The vertices are put in a spatial hash: the space is divided in cubic cells of the weld distance,
+ * and every vertex is added to the bucket of the hash of its cell. The buckets are a VertexAdjacency
+ * of the cell hashes, so they are built with the same parallel counting sort, and every bucket lists its vertices
+ * in increasing order. Every vertex then looks in the buckets of its own and the 26 neighbouring cells,
+ * in parallel over ranges of vertices, for the vertex with the lowest index within the weld distance.
+ * With a weld distance of 0 the cells are the positions themselves and only equal positions are welded.
+ *
+ * @author Geert Van Campenhout
+ */
+final class PositionWeld {
+
+	private PositionWeld() {
+	}
+
+	/**
+	 * Returns the vertex every vertex of the mesh is welded to: the vertex with the lowest index within the given distance,
+	 * or the vertex that one is welded to itself.
+	 *
+	 * @param mesh	The mesh.
+	 * @param distance	The largest distance between two vertices that are welded.
+	 * @param pool	The pool to run on, or null to run on the current thread.
+	 * @param nbTasks	The number of ranges to divide the vertices in.
+	 * @return	int[]
+	 * 		The index of the welded vertex of every vertex, the vertex itself for vertices that are not welded.
+	 */
+	static int[] weld(final ObjData mesh, final float distance, ForkJoinPool pool, final int nbTasks) {
+		if(!(distance >= 0 && distance < Float.POSITIVE_INFINITY)) {
+			throw new IllegalArgumentException("Invalid weld distance [" + distance + "].");
+		}
+		final int nbVertices = mesh.nbVertices;
+		//A power of two at least as large as the number of vertices.
+		final int nbBuckets = Integer.highestOneBit(Math.max(1, nbVertices - 1)) << 1;
+		final int[] buckets = new int[nbVertices];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					float[] positions = mesh.vertices;
+					for (int vertex = NormalEngine.getStart(nbVertices, task, nbTasks); vertex < NormalEngine.getStart(nbVertices, task + 1, nbTasks); vertex++) {
+						int i = 3*vertex;
+						buckets[vertex] = bucket(cell(positions[i], distance), cell(positions[i + 1], distance), cell(positions[i + 2], distance), nbBuckets);
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		final VertexAdjacency hash = VertexAdjacency.build(buckets, nbBuckets, nbVertices, pool, nbTasks);
+
+		final int[] welded = new int[nbVertices];
+		final float maxSquared = distance*distance;
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					float[] positions = mesh.vertices;
+					//Only the own cell holds equal positions.
+					int range = distance == 0 ? 0 : 1;
+					for (int vertex = NormalEngine.getStart(nbVertices, task, nbTasks); vertex < NormalEngine.getStart(nbVertices, task + 1, nbTasks); vertex++) {
+						int i = 3*vertex;
+						float x = positions[i];
+						float y = positions[i + 1];
+						float z = positions[i + 2];
+						long cellX = cell(x, distance);
+						long cellY = cell(y, distance);
+						long cellZ = cell(z, distance);
+						int lowest = vertex;
+						for (int dx = -range; dx <= range; dx++) {
+							for (int dy = -range; dy <= range; dy++) {
+								for (int dz = -range; dz <= range; dz++) {
+									int bucket = bucket(cellX + dx, cellY + dy, cellZ + dz, nbBuckets);
+									for (int j = hash.offsets[bucket]; j < hash.offsets[bucket + 1]; j++) {
+										int other = hash.corners[j];
+										if(other >= lowest) {
+											//The vertices of a bucket are in increasing order.
+											break;
+										}
+										int o = 3*other;
+										float differenceX = positions[o] - x;
+										float differenceY = positions[o + 1] - y;
+										float differenceZ = positions[o + 2] - z;
+										if(differenceX*differenceX + differenceY*differenceY + differenceZ*differenceZ <= maxSquared) {
+											lowest = other;
+											break;
+										}
+									}
+								}
+							}
+						}
+						welded[vertex] = lowest;
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		//A vertex can be welded to one that is welded to a lower one itself, the lower ones are done first.
+		for (int vertex = 0; vertex < nbVertices; vertex++) {
+			welded[vertex] = welded[welded[vertex]];
+		}
+		return welded;
+	}
+
+	/**
+	 * Returns the index of the cell of the given coordinate, the bits of the coordinate for a distance of 0.
+	 */
+	private static long cell(float coordinate, float distance) {
+		if(distance == 0) {
+			//-0.0 and 0.0 are the same position.
+			return Float.floatToIntBits(coordinate + 0.0f);
+		}
+		return (long) Math.floor(coordinate / distance);
+	}
+
+	/**
+	 * Returns the bucket of the given cell.
+	 */
+	private static int bucket(long x, long y, long z, int nbBuckets) {
+		long hash = (x * 0x9E3779B97F4A7C15L) ^ (y * 0xC2B2AE3D27D4EB4FL) ^ (z * 0x165667B19E3779F9L);
+		return (int) (hash ^ (hash >>> 32)) & (nbBuckets - 1);
+	}
+
+	/**
+	 * Returns the welded vertex of every triangle corner of the mesh.
+	 *
+	 * @param mesh	The mesh.
+	 * @param welded	The welded vertex of every vertex, as returned by weld.
+	 */
+	static int[] getWeldedCorners(ObjData mesh, int[] welded) {
+		int[] corners = new int[3*mesh.nbTriangles];
+		int[] triangleVertices = mesh.triangleVertices;
+		for (int i = 0; i < corners.length; i++) {
+			corners[i] = welded[triangleVertices[i]];
+		}
+		return corners;
+	}
+
+	/**
+	 * Gives every welded vertex the values, like the normal, of the vertex it is welded to.
+	 *
+	 * @param values	The values, size floats per vertex.
+	 * @param size	The number of values per vertex.
+	 * @param welded	The welded vertex of every vertex, as returned by weld.
+	 */
+	static void copy(float[] values, int size, int[] welded) {
+		for (int vertex = 0; vertex < welded.length; vertex++) {
+			if(welded[vertex] != vertex) {
+				System.arraycopy(values, size*welded[vertex], values, size*vertex, size);
+			}
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package abstractModel.parser;
+
+import java.util.Arrays;
+
+/**
+ * SmoothingGroups splits the vertices of a mesh per smoothing group (s), by giving every triangle corner
+ * the index of the normal it gets in the output.
+ * The corners of the triangles of one smoothing group share one normal per vertex, so a vertex on the border
+ * between two groups gets two normals and the edge between the groups stays sharp.
+ * A triangle without smoothing group (s off or s 0) gets one normal for its three corners, its own face normal.
+ *
+ * The normal of a (vertex, group) pair is looked up in an open addressing hash table with linear probing,
+ * that keeps the pairs as longs and the normals as ints in two primitive arrays, so no object is made per pair.
+ * The normals are numbered in the order of the corners, so the numbering does not depend on the hashing.
+ *
+ * @author Geert Van Campenhout
+ */
+final class SmoothingGroups {
+
+	//Key of an empty slot, no pair has it because vertex indices are not negative.
+	private static final long EMPTY = -1L;
+	//The table grows when it is more than half full.
+	private static final int MAX_LOAD_SHIFT = 1;
+
+	private long[] keys;
+	private int[] values;
+	private int size;
+	//The number of bits of a slot index, the table has 2^bits slots.
+	private int bits;
+
+	private SmoothingGroups(int expectedSize) {
+		this.bits = Math.max(4, 32 - Integer.numberOfLeadingZeros(expectedSize << MAX_LOAD_SHIFT));
+		this.keys = new long[1 << this.bits];
+		this.values = new int[1 << this.bits];
+		Arrays.fill(this.keys, EMPTY);
+	}
+
+	/**
+	 * Gives every triangle corner of the mesh the index of its normal, in the corner normals of the mesh.
+	 *
+	 * @param mesh	The mesh, its triangles must have their smoothing groups.
+	 * @param triangleVertices	The vertex of every triangle corner, the vertices of the mesh or the welded ones.
+	 */
+	static void split(ObjData mesh, int[] triangleVertices) {
+		SmoothingGroups table = new SmoothingGroups(mesh.nbVertices);
+		int[] triangleGroups = mesh.triangleGroups;
+		int[] cornerNormals = new int[3*mesh.nbTriangles];
+		int nbNormals = 0;
+		for (int triangle = 0; triangle < mesh.nbTriangles; triangle++) {
+			int group = triangleGroups[triangle];
+			int corner = 3*triangle;
+			if(group <= 0) {
+				cornerNormals[corner] = nbNormals;
+				cornerNormals[corner + 1] = nbNormals;
+				cornerNormals[corner + 2] = nbNormals;
+				nbNormals++;
+			} else {
+				for (int k = corner; k < corner + 3; k++) {
+					int normal = table.putIfAbsent(((long) triangleVertices[k] << 32) | group, nbNormals);
+					if(normal == nbNormals) {
+						nbNormals++;
+					}
+					cornerNormals[k] = normal;
+				}
+			}
+		}
+		mesh.cornerNormals = cornerNormals;
+		mesh.nbVertexNormals = nbNormals;
+	}
+
+	/**
+	 * Checks if any triangle of the mesh is in a smoothing group.
+	 */
+	static boolean isUsed(ObjData mesh) {
+		for (int triangle = 0; triangle < mesh.nbTriangles; triangle++) {
+			if(mesh.triangleGroups[triangle] > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the value of the given key, after adding the given value for it when the key is not in the table yet.
+	 */
+	private int putIfAbsent(long key, int value) {
+		int mask = this.keys.length - 1;
+		int slot = slot(key);
+		while(true) {
+			long current = this.keys[slot];
+			if(current == key) {
+				return this.values[slot];
+			}
+			if(current == EMPTY) {
+				this.keys[slot] = key;
+				this.values[slot] = value;
+				if(++this.size << MAX_LOAD_SHIFT > this.keys.length) {
+					grow();
+				}
+				return value;
+			}
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	/**
+	 * Returns the first slot of the given key, from the high bits of the key multiplied by the golden ratio.
+	 */
+	private int slot(long key) {
+		return (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - this.bits));
+	}
+
+	private void grow() {
+		long[] oldKeys = this.keys;
+		int[] oldValues = this.values;
+		this.bits++;
+		this.keys = new long[1 << this.bits];
+		this.values = new int[1 << this.bits];
+		Arrays.fill(this.keys, EMPTY);
+		int mask = this.keys.length - 1;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != EMPTY) {
+				int slot = slot(oldKeys[i]);
+				while(this.keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+}
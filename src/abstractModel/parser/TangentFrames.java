@@ -0,0 +1,218 @@
+package abstractModel.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * TangentFrames calculates a tangent for every calculated vertex normal, from the texture coordinates of the triangles:
+ * four floats per normal, the unit tangent perpendicular to the normal and the sign of the bitangent,
+ * which is sign * (normal x tangent).
+ *
+ * Every triangle adds its unit tangent and bitangent to the corners, weighted by the angle of the corner,
+ * and the sum is made perpendicular to the normal at the end. The sums are made per calculated normal, 
+ * in the same loop over the triangles that adds up the normals, and the sums are six floats per normal, the tangent and the bitangent.
+ *
+ * The vertices are not split any further for the tangents. A normal whose triangles lie on both sides of a UV seam,
+ * or whose texture coordinates are mirrored on some of its triangles, gets one averaged tangent and one sign,
+ * which is wrong for part of those triangles. Such a mesh needs split vertices in the file, by smoothing groups or
+ * separate normal indices, to get a tangent per side.
+ *
+ * The tangents are written to a binary sidecar next to the output file, big endian:
+ * magic, version, number of normals, followed by the four floats of every tangent.
+ *
+ * @author Geert Van Campenhout
+ */
+final class TangentFrames {
+
+	//The suffix added to the name of the output file to get the name of its tangent sidecar.
+	static final String SUFFIX = ".tangents";
+
+	private static final int MAGIC = 0x54414E47;
+	private static final int VERSION = 1;
+	private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+	private TangentFrames() {
+	}
+
+	/**
+	 * Adds the tangents of the valid triangles of the mesh to the sums, in a separate loop over the triangles,
+	 * for when the normals are not added up by NormalEngine.accumulate.
+	 *
+	 * @param mesh	The mesh.
+	 * @param sums	The sums, six floats per calculated normal.
+	 */
+	static void accumulate(ObjData mesh, float[] sums) {
+		int[] normalIndices = mesh.getNormalIndices();
+		int[] valid = mesh.getValidTriangles();
+		for (int j = 0; j < mesh.nbValidTriangles; j++) {
+			addTriangle(mesh, 3*valid[j], normalIndices, sums);
+		}
+	}
+
+	/**
+	 * Adds the unit tangent and bitangent of the triangle with the given first corner to the sums of its corners.
+	 * Triangles without texture coordinates, and degenerate triangles, add nothing.
+	 *
+	 * @param mesh	The mesh.
+	 * @param i	The first corner of the triangle, three times its index.
+	 * @param normalIndices	The calculated normal of every corner.
+	 * @param sums	The sums, six floats per calculated normal.
+	 */
+	static void addTriangle(ObjData mesh, int i, int[] normalIndices, float[] sums) {
+		int[] textureIndices = mesh.triangleTextureCoordinates;
+		int textA = 2*textureIndices[i];
+		int textB = 2*textureIndices[i + 1];
+		int textC = 2*textureIndices[i + 2];
+		if(textA < 0 || textB < 0 || textC < 0 || textA >= 2*mesh.nbTextureCoordinates
+				|| textB >= 2*mesh.nbTextureCoordinates || textC >= 2*mesh.nbTextureCoordinates) {
+			return;
+		}
+		float[] positions = mesh.vertices;
+		float[] uv = mesh.textureCoordinates;
+		int[] indices = mesh.triangleVertices;
+		int a = 3*indices[i];
+		int b = 3*indices[i + 1];
+		int c = 3*indices[i + 2];
+		float bMinAx = positions[b] - positions[a];
+		float bMinAy = positions[b + 1] - positions[a + 1];
+		float bMinAz = positions[b + 2] - positions[a + 2];
+		float cMinAx = positions[c] - positions[a];
+		float cMinAy = positions[c + 1] - positions[a + 1];
+		float cMinAz = positions[c + 2] - positions[a + 2];
+		float bMinAs = uv[textB] - uv[textA];
+		float bMinAt = uv[textB + 1] - uv[textA + 1];
+		float cMinAs = uv[textC] - uv[textA];
+		float cMinAt = uv[textC + 1] - uv[textA + 1];
+		//Only the direction counts, so the division by the area in texture space becomes its sign.
+		float sign = bMinAs*cMinAt - cMinAs*bMinAt < 0 ? -1 : 1;
+		float tangentX = sign*(cMinAt*bMinAx - bMinAt*cMinAx);
+		float tangentY = sign*(cMinAt*bMinAy - bMinAt*cMinAy);
+		float tangentZ = sign*(cMinAt*bMinAz - bMinAt*cMinAz);
+		float bitangentX = sign*(bMinAs*cMinAx - cMinAs*bMinAx);
+		float bitangentY = sign*(bMinAs*cMinAy - cMinAs*bMinAy);
+		float bitangentZ = sign*(bMinAs*cMinAz - cMinAs*bMinAz);
+		float tangentScale = 1/NormalEngine.length(tangentX, tangentY, tangentZ);
+		float bitangentScale = 1/NormalEngine.length(bitangentX, bitangentY, bitangentZ);
+		float crossLength = NormalEngine.length(bMinAy*cMinAz - bMinAz*cMinAy, cMinAx*bMinAz - cMinAz*bMinAx, bMinAx*cMinAy - bMinAy*cMinAx);
+		if(!(crossLength > 0 && tangentScale < Float.POSITIVE_INFINITY && bitangentScale < Float.POSITIVE_INFINITY)) {
+			return;
+		}
+		tangentX *= tangentScale;
+		tangentY *= tangentScale;
+		tangentZ *= tangentScale;
+		bitangentX *= bitangentScale;
+		bitangentY *= bitangentScale;
+		bitangentZ *= bitangentScale;
+		add(sums, 6*normalIndices[i], NormalEngine.angle(crossLength, bMinAx*cMinAx + bMinAy*cMinAy + bMinAz*cMinAz),
+				tangentX, tangentY, tangentZ, bitangentX, bitangentY, bitangentZ);
+		add(sums, 6*normalIndices[i + 1], NormalEngine.angle(crossLength, bMinAx*(bMinAx - cMinAx) + bMinAy*(bMinAy - cMinAy) + bMinAz*(bMinAz - cMinAz)),
+				tangentX, tangentY, tangentZ, bitangentX, bitangentY, bitangentZ);
+		add(sums, 6*normalIndices[i + 2], NormalEngine.angle(crossLength, cMinAx*(cMinAx - bMinAx) + cMinAy*(cMinAy - bMinAy) + cMinAz*(cMinAz - bMinAz)),
+				tangentX, tangentY, tangentZ, bitangentX, bitangentY, bitangentZ);
+	}
+
+	private static void add(float[] sums, int index, float weight, float tangentX, float tangentY, float tangentZ,
+			float bitangentX, float bitangentY, float bitangentZ) {
+		sums[index] += weight*tangentX;
+		sums[index + 1] += weight*tangentY;
+		sums[index + 2] += weight*tangentZ;
+		sums[index + 3] += weight*bitangentX;
+		sums[index + 4] += weight*bitangentY;
+		sums[index + 5] += weight*bitangentZ;
+	}
+
+	/**
+	 * Returns the tangents of the given sums: the summed tangent without its part along the normal, scaled to unit length,
+	 * and the sign of the bitangent. A normal without tangent, because none of its triangles has texture coordinates,
+	 * gets a unit vector perpendicular to it.
+	 *
+	 * @param mesh	The mesh, its vertex normals must be calculated.
+	 * @param sums	The sums, six floats per calculated normal.
+	 * @return	float[]
+	 * 		Four floats per calculated normal.
+	 */
+	static float[] finish(ObjData mesh, float[] sums) {
+		int nbNormals = mesh.getNbVertexNormals();
+		float[] normals = mesh.vertexNormals;
+		float[] tangents = new float[4*nbNormals];
+		for (int normal = 0; normal < nbNormals; normal++) {
+			int n = 3*normal;
+			int s = 6*normal;
+			float normalX = normals[n];
+			float normalY = normals[n + 1];
+			float normalZ = normals[n + 2];
+			float dot = normalX*sums[s] + normalY*sums[s + 1] + normalZ*sums[s + 2];
+			float x = sums[s] - dot*normalX;
+			float y = sums[s + 1] - dot*normalY;
+			float z = sums[s + 2] - dot*normalZ;
+			float length = NormalEngine.length(x, y, z);
+			if(!(length > 0)) {
+				//Any direction perpendicular to the normal, from the axis that is furthest from it.
+				float absX = Math.abs(normalX);
+				float absY = Math.abs(normalY);
+				float absZ = Math.abs(normalZ);
+				if(absX <= absY && absX <= absZ) {
+					x = 0;
+					y = normalZ;
+					z = -normalY;
+				} else if(absY <= absZ) {
+					x = -normalZ;
+					y = 0;
+					z = normalX;
+				} else {
+					x = normalY;
+					y = -normalX;
+					z = 0;
+				}
+				length = NormalEngine.length(x, y, z);
+				if(!(length > 0)) {
+					//A zero normal, the tangent is the x axis.
+					x = 1;
+					length = 1;
+				}
+			}
+			float scale = 1/length;
+			int t = 4*normal;
+			tangents[t] = x*scale;
+			tangents[t + 1] = y*scale;
+			tangents[t + 2] = z*scale;
+			//The bitangent points along normal x tangent, unless the texture is mirrored.
+			float crossX = normalY*z - normalZ*y;
+			float crossY = normalZ*x - normalX*z;
+			float crossZ = normalX*y - normalY*x;
+			tangents[t + 3] = crossX*sums[s + 3] + crossY*sums[s + 4] + crossZ*sums[s + 5] < 0 ? -1 : 1;
+		}
+		return tangents;
+	}
+
+	/**
+	 * Returns the tangent sidecar of the given output file.
+	 */
+	static File getSidecarFile(File output) {
+		return new File(output.getPath() + SUFFIX);
+	}
+
+	/**
+	 * Writes the tangents of the mesh to the sidecar of the given output file.
+	 *
+	 * @param mesh	The mesh, its tangents must be calculated.
+	 * @param output	The output file.
+	 */
+	static void write(ObjData mesh, File output) throws IOException {
+		FileChannel channel = FileChannel.open(getSidecarFile(output).toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(mesh.getNbVertexNormals());
+			MeshCache.write(channel, buffer, mesh.tangents, 4 * mesh.getNbVertexNormals());
+			MeshCache.write(channel, buffer);
+		} finally {
+			channel.close();
+		}
+	}
+}
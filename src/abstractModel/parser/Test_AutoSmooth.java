@@ -0,0 +1,277 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that auto smoothing clusters the triangles around every vertex by the crease angle:
+ * two triangles that share an edge are in the same cluster when they are within the crease angle, and every cluster gets
+ * the sum of the normals of its triangles.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_AutoSmooth {
+
+	private static final String[] CUBE = {"v 0 0 0", "v 1 0 0", "v 1 1 0", "v 0 1 0", "v 0 0 1", "v 1 0 1", "v 1 1 1", "v 0 1 1",
+			"f 1 4 3 2", "f 5 6 7 8", "f 1 2 6 5", "f 2 3 7 6", "f 3 4 8 7", "f 4 1 5 8"};
+	private static final ObjectParser.AccumulationMode[] MODES = {ObjectParser.AccumulationMode.SEQUENTIAL,
+			ObjectParser.AccumulationMode.PARALLEL, ObjectParser.AccumulationMode.GATHER};
+	private static final float DELTA = 1e-6f;
+
+	private File dir;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_AutoSmooth").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	private ObjData parse(String[] lines, float creaseAngle, ObjectParser.AccumulationMode mode, int parallelism) throws IOException {
+		File input = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(input);
+		for (String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+		ObjectParser parser = new ObjectParser(input.getPath());
+		if(!Float.isNaN(creaseAngle)) {
+			parser.setCreaseAngle(creaseAngle);
+		}
+		parser.setAccumulationMode(mode);
+		parser.setParallelism(parallelism);
+		parser.parse(new File(this.dir, "output" + this.nbFiles++ + ".obj").getPath());
+		return parser.mesh;
+	}
+
+	/**
+	 * Returns the lines of a grid of size by size vertices with the given heights, two triangles per square.
+	 */
+	private static String[] createGrid(int size, float[] heights) {
+		String[] lines = new String[size*size + 2*(size - 1)*(size - 1)];
+		int line = 0;
+		for (int i = 0; i < size*size; i++) {
+			lines[line++] = "v " + i / size + " " + i % size + " " + heights[i];
+		}
+		for (int i = 0; i < size - 1; i++) {
+			for (int j = 0; j < size - 1; j++) {
+				int a = i*size + j + 1;
+				lines[line++] = "f " + a + " " + (a + 1) + " " + (a + size + 1);
+				lines[line++] = "f " + a + " " + (a + size + 1) + " " + (a + size);
+			}
+		}
+		return lines;
+	}
+
+	private static void assertNormal(String message, ObjData mesh, int corner, float x, float y, float z) {
+		int normal = 3*mesh.getNormalIndices()[corner];
+		assertEquals(message, x, mesh.vertexNormals[normal], DELTA);
+		assertEquals(message, y, mesh.vertexNormals[normal + 1], DELTA);
+		assertEquals(message, z, mesh.vertexNormals[normal + 2], DELTA);
+	}
+
+	/** Test of a cube with a crease angle below 90 degrees: every vertex is split per face, every corner gets the normal of its face. */
+	@Test
+	public void test_cube_sharp() throws IOException {
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			ObjData mesh = parse(CUBE, 30, mode, 4);
+			assertEquals(mode.toString(), 24, mesh.getNbVertexNormals());
+			for (int corner = 0; corner < 3*mesh.nbTriangles; corner++) {
+				int i = 3*(corner / 3);
+				float length = NormalEngine.length(mesh.faceNormals[i], mesh.faceNormals[i + 1], mesh.faceNormals[i + 2]);
+				assertNormal(mode.toString(), mesh, corner, mesh.faceNormals[i] / length, mesh.faceNormals[i + 1] / length, mesh.faceNormals[i + 2] / length);
+			}
+		}
+	}
+
+	/** Test of a cube with a crease angle of 180 degrees: nothing is split, the normals are those without auto smoothing. */
+	@Test
+	public void test_cube_smooth() throws IOException {
+		ObjData unsplit = parse(CUBE, Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL, 1);
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			ObjData mesh = parse(CUBE, 180, mode, 4);
+			assertEquals(mode.toString(), 8, mesh.getNbVertexNormals());
+			assertArrayEquals(mode.toString(), Arrays.copyOf(unsplit.triangleVertices, 3*unsplit.nbTriangles), mesh.getNormalIndices());
+			assertArrayEquals(mode.toString(), Arrays.copyOf(unsplit.vertexNormals, 3*unsplit.nbVertices), Arrays.copyOf(mesh.vertexNormals, 3*mesh.nbVertices), DELTA);
+		}
+	}
+
+	/**
+	 * Test of a grid whose triangles are all within the crease angle of each other:
+	 * the normals and their indices are those without auto smoothing.
+	 */
+	@Test
+	public void test_grid_noSharpEdges() throws IOException {
+		int size = 30;
+		Random random = new Random(17);
+		float[] heights = new float[size*size];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = random.nextFloat()*0.1f;
+		}
+		String[] lines = createGrid(size, heights);
+		ObjData unsplit = parse(lines, Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL, 1);
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			ObjData mesh = parse(lines, 60, mode, 4);
+			assertEquals(mode.toString(), size*size, mesh.getNbVertexNormals());
+			assertArrayEquals(mode.toString(), Arrays.copyOf(unsplit.triangleVertices, 3*unsplit.nbTriangles), mesh.getNormalIndices());
+			assertArrayEquals(mode.toString(), Arrays.copyOf(unsplit.vertexNormals, 3*unsplit.nbVertices), Arrays.copyOf(mesh.vertexNormals, 3*mesh.nbVertices), DELTA);
+		}
+	}
+
+	/**
+	 * Returns the cluster of every corner: the triangles around a vertex are joined, until nothing changes, when they share
+	 * an edge and are within the crease angle, and every corner gets the smallest corner of its vertex it is joined to.
+	 */
+	private static int[] getClusters(ObjData mesh, float[] unitNormals, float minCos) {
+		int[] clusters = new int[3*mesh.nbTriangles];
+		List<List<Integer>> around = new ArrayList<List<Integer>>();
+		for (int vertex = 0; vertex < mesh.nbVertices; vertex++) {
+			around.add(new ArrayList<Integer>());
+		}
+		for (int corner = 0; corner < clusters.length; corner++) {
+			clusters[corner] = corner;
+			around.get(mesh.triangleVertices[corner]).add(corner);
+		}
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for (List<Integer> corners : around) {
+				for (int a : corners) {
+					for (int b : corners) {
+						int faceA = a - a % 3;
+						int faceB = b - b % 3;
+						boolean shareEdge = false;
+						for (int i = 0; i < 3; i++) {
+							for (int j = 0; j < 3; j++) {
+								shareEdge |= faceA + i != a && faceB + j != b && mesh.triangleVertices[faceA + i] == mesh.triangleVertices[faceB + j];
+							}
+						}
+						float cos = unitNormals[faceA]*unitNormals[faceB] + unitNormals[faceA + 1]*unitNormals[faceB + 1] + unitNormals[faceA + 2]*unitNormals[faceB + 2];
+						if(shareEdge && cos >= minCos && clusters[b] < clusters[a]) {
+							clusters[a] = clusters[b];
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+		return clusters;
+	}
+
+	/**
+	 * Test of a grid with heights of 0 or 1, whose triangles are at least 35 degrees apart when they are not parallel:
+	 * with a crease angle of 30 degrees the corners of every vertex share one normal per cluster of parallel triangles 
+	 * that are connected by their edges, on any number of threads and in every accumulation mode.
+	 */
+	@Test
+	public void test_grid_steps() throws IOException {
+		int size = 30;
+		Random random = new Random(17);
+		float[] heights = new float[size*size];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = random.nextInt(2);
+		}
+		String[] lines = createGrid(size, heights);
+		float minCos = (float) Math.cos(Math.toRadians(30));
+		int[] expectedIndices = null;
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			for (int parallelism : new int[] {1, 4}) {
+				String message = mode + " on " + parallelism + " threads";
+				ObjData mesh = parse(lines, 30, mode, parallelism);
+				if(expectedIndices == null) {
+					expectedIndices = mesh.getNormalIndices().clone();
+				} else {
+					assertArrayEquals(message, expectedIndices, mesh.getNormalIndices());
+				}
+				float[] unitNormals = new float[3*mesh.nbTriangles];
+				for (int i = 0; i < unitNormals.length; i += 3) {
+					float length = NormalEngine.length(mesh.faceNormals[i], mesh.faceNormals[i + 1], mesh.faceNormals[i + 2]);
+					for (int k = 0; k < 3; k++) {
+						unitNormals[i + k] = mesh.faceNormals[i + k] / length;
+					}
+				}
+				//The cluster of every corner, the smallest corner of the triangles around its vertex that are connected to it,
+				//the sum of the face normals and the normal index of every (vertex, cluster) pair.
+				int[] clusters = getClusters(mesh, unitNormals, minCos);
+				Map<Long, float[]> sums = new HashMap<Long, float[]>();
+				Map<Long, Integer> normals = new HashMap<Long, Integer>();
+				for (int corner = 0; corner < 3*mesh.nbTriangles; corner++) {
+					int face = corner - corner % 3;
+					int vertex = mesh.triangleVertices[corner];
+					long key = ((long) vertex << 32) | clusters[corner];
+					if(!sums.containsKey(key)) {
+						sums.put(key, new float[3]);
+					}
+					float[] sum = sums.get(key);
+					for (int k = 0; k < 3; k++) {
+						sum[k] += mesh.faceNormals[face + k];
+					}
+					Integer normal = normals.get(key);
+					if(normal == null) {
+						normals.put(key, mesh.getNormalIndices()[corner]);
+					} else {
+						assertEquals(message + ": corner " + corner, normal.intValue(), mesh.getNormalIndices()[corner]);
+					}
+				}
+				assertTrue(normals.size() > mesh.nbVertices);
+				assertEquals(message, normals.size(), mesh.getNbVertexNormals());
+				assertEquals(message, normals.size(), new HashSet<Integer>(normals.values()).size());
+				for (Map.Entry<Long, float[]> entry : sums.entrySet()) {
+					float[] sum = entry.getValue();
+					float length = NormalEngine.length(sum[0], sum[1], sum[2]);
+					int normal = 3*normals.get(entry.getKey());
+					for (int k = 0; k < 3; k++) {
+						assertEquals(message, sum[k] / length, mesh.vertexNormals[normal + k], DELTA);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test of a cone of 36 triangles around its apex, whose neighbouring triangles are 10 degrees apart and whose opposite ones
+	 * are 90 degrees apart: with a crease angle of 30 degrees the fan is smooth, so the apex keeps one normal, the one without auto smoothing.
+	 */
+	@Test
+	public void test_fan_smooth() throws IOException {
+		int nbSides = 36;
+		String[] lines = new String[2*nbSides + 1];
+		lines[0] = "v 0 0 1";
+		for (int i = 0; i < nbSides; i++) {
+			double angle = 2*Math.PI*i / nbSides;
+			lines[1 + i] = "v " + (float) Math.cos(angle) + " " + (float) Math.sin(angle) + " 0";
+			lines[1 + nbSides + i] = "f 1 " + (2 + i) + " " + (2 + (i + 1) % nbSides);
+		}
+		ObjData unsplit = parse(lines, Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL, 1);
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			ObjData mesh = parse(lines, 30, mode, 4);
+			assertEquals(mode.toString(), nbSides + 1, mesh.getNbVertexNormals());
+			assertArrayEquals(mode.toString(), Arrays.copyOf(unsplit.triangleVertices, 3*unsplit.nbTriangles), mesh.getNormalIndices());
+			assertNormal(mode.toString(), mesh, 0, 0, 0, 1);
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the normals DynamicMesh updates after random edits are bit for bit
+ * those of a full calculation of the edited mesh.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_DynamicMesh {
+
+	private static final int GRID_SIZE = 20;
+	private static final int NB_ROUNDS = 200;
+
+	/**
+	 * Returns a grid of size by size vertices with random heights, two triangles per square.
+	 */
+	private static ObjData createGrid(int size, Random random) {
+		ObjData mesh = new ObjData();
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				mesh.addVertex(i, j, random.nextFloat());
+			}
+		}
+		for (int i = 0; i < size - 1; i++) {
+			for (int j = 0; j < size - 1; j++) {
+				int a = i*size + j;
+				mesh.addTriangle(a, a + 1, a + size + 1, 0, 0, 0, -1, -1, -1);
+				mesh.addTriangle(a, a + size + 1, a + size, 0, 0, 0, -1, -1, -1);
+			}
+		}
+		return mesh;
+	}
+
+	/**
+	 * Calculates the normals of a copy of the vertices and triangles of the given mesh from scratch
+	 * and checks that they are those of the mesh.
+	 */
+	private static void assertSameAsFullCalculation(ObjData mesh, ObjectParser.WeightingMode weighting, int round) {
+		ObjData copy = new ObjData();
+		for (int vertex = 0; vertex < mesh.nbVertices; vertex++) {
+			copy.addVertex(mesh.vertices[3*vertex], mesh.vertices[3*vertex + 1], mesh.vertices[3*vertex + 2]);
+		}
+		for (int i = 0; i < 3*mesh.nbTriangles; i += 3) {
+			copy.addTriangle(mesh.triangleVertices[i], mesh.triangleVertices[i + 1], mesh.triangleVertices[i + 2], 0, 0, 0, -1, -1, -1);
+		}
+		NormalEngine.calcTriangleNormals(copy, weighting);
+		NormalEngine.normalizeVertexNormals(copy);
+		for (int i = 0; i < 3*mesh.nbTriangles; i++) {
+			if(Float.floatToRawIntBits(copy.faceNormals[i]) != Float.floatToRawIntBits(mesh.faceNormals[i])) {
+				fail(weighting + ", round " + round + ": face normal " + i + " is " + mesh.faceNormals[i] + " instead of " + copy.faceNormals[i]);
+			}
+		}
+		for (int i = 0; i < 3*mesh.nbVertices; i++) {
+			if(Float.floatToRawIntBits(copy.vertexNormals[i]) != Float.floatToRawIntBits(mesh.vertexNormals[i])) {
+				fail(weighting + ", round " + round + ": vertex normal " + i + " is " + mesh.vertexNormals[i] + " instead of " + copy.vertexNormals[i]);
+			}
+		}
+	}
+
+	private static void testRandomEdits(ObjectParser.WeightingMode weighting) {
+		Random random = new Random(22);
+		ObjData mesh = createGrid(GRID_SIZE, random);
+		DynamicMesh dynamicMesh = new DynamicMesh(mesh, weighting);
+		assertSameAsFullCalculation(mesh, weighting, 0);
+		for (int round = 1; round <= NB_ROUNDS; round++) {
+			for (int i = 0; i < 3; i++) {
+				int vertex = random.nextInt(mesh.nbVertices);
+				dynamicMesh.moveVertex(vertex, mesh.vertices[3*vertex], mesh.vertices[3*vertex + 1], random.nextFloat());
+			}
+			if(random.nextBoolean()) {
+				int vertex = dynamicMesh.addVertex(random.nextFloat()*GRID_SIZE, random.nextFloat()*GRID_SIZE, random.nextFloat());
+				dynamicMesh.addTriangle(vertex, random.nextInt(vertex), random.nextInt(vertex));
+			}
+			if(random.nextBoolean()) {
+				dynamicMesh.addTriangle(random.nextInt(mesh.nbVertices), random.nextInt(mesh.nbVertices), random.nextInt(mesh.nbVertices));
+			}
+			if(random.nextBoolean()) {
+				dynamicMesh.removeTriangle(random.nextInt(mesh.nbTriangles));
+			}
+			//Edits of several rounds are sometimes updated together.
+			if(random.nextInt(3) > 0) {
+				dynamicMesh.update();
+				assertSameAsFullCalculation(mesh, weighting, round);
+			}
+		}
+		dynamicMesh.update();
+		assertSameAsFullCalculation(mesh, weighting, NB_ROUNDS);
+	}
+
+	/** Test of random moves, additions and removals with UNIFORM weighting. */
+	@Test
+	public void test_update_uniform() {
+		testRandomEdits(ObjectParser.WeightingMode.UNIFORM);
+	}
+
+	/** Test of random moves, additions and removals with AREA weighting. */
+	@Test
+	public void test_update_area() {
+		testRandomEdits(ObjectParser.WeightingMode.AREA);
+	}
+
+	/** Test of random moves, additions and removals with ANGLE weighting. */
+	@Test
+	public void test_update_angle() {
+		testRandomEdits(ObjectParser.WeightingMode.ANGLE);
+	}
+
+	/** Test that triangles added without texture coordinates use the first one, like the parser does. */
+	@Test
+	public void test_addTriangle_textureCoordinates() {
+		ObjData mesh = createGrid(2, new Random(22));
+		DynamicMesh dynamicMesh = new DynamicMesh(mesh, ObjectParser.WeightingMode.UNIFORM);
+		int triangle = dynamicMesh.addTriangle(0, 1, 3);
+		for (int i = 3*triangle; i < 3*triangle + 3; i++) {
+			assertEquals(0, mesh.triangleTextureCoordinates[i]);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import abstractModel.Triangle;
+
+/**
+ * jUnit test case to test that faces with more than three vertices are split in a fan around their first vertex,
+ * and that negative indices give the same triangles as the positive ones, also when the file is parsed in chunks.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_FaceTriangulation {
+
+	private static final int GRID_SIZE = 250;
+
+	private File dir;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_FaceTriangulation").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	private File write(String... lines) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		for (String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+		return file;
+	}
+
+	private File parse(File input, ObjectParser.InputMode inputMode) throws IOException {
+		File output = new File(this.dir, "output" + this.nbFiles++ + ".obj");
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setInputMode(inputMode);
+		parser.setParallelism(4);
+		parser.parse(output.getPath());
+		return output;
+	}
+
+	/**
+	 * Returns the faces of the output file, the position and texture coordinate indices of every corner.
+	 */
+	private static int[] readFaces(File output) throws IOException {
+		List<Integer> indices = new ArrayList<Integer>();
+		for (String line : Files.readAllLines(output.toPath())) {
+			if(line.startsWith("f ")) {
+				String[] parts = line.split(" ");
+				assertEquals(line, 4, parts.length);
+				for (int i = 1; i < parts.length; i++) {
+					String[] corner = parts[i].split("/");
+					indices.add(Integer.parseInt(corner[0]));
+					indices.add(Integer.parseInt(corner[1]));
+				}
+			}
+		}
+		int[] result = new int[indices.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = indices.get(i);
+		}
+		return result;
+	}
+
+	/** Test of a quad, a pentagon and a hexagon: they give two, three and four triangles around their first vertex. */
+	@Test
+	public void test_fan() throws IOException {
+		File input = write("v 0 0 0", "v 1 0 0", "v 2 1 0", "v 1 2 0", "v 0 2 0", "v -1 1 0",
+				"vt 0 0", "vt 1 0", "vt 1 1", "vt 0.5 1", "vt 0 1", "vt 0 0.5",
+				"f 1/1 2/2 3/3 4/4", "f 2/2 3/3 4/4 5/5 6/6", "f 1/6 2/5 3/4 4/3 5/2 6/1");
+		int[] expected = {1, 1, 2, 2, 3, 3, 1, 1, 3, 3, 4, 4,
+				2, 2, 3, 3, 4, 4, 2, 2, 4, 4, 5, 5, 2, 2, 5, 5, 6, 6,
+				1, 6, 2, 5, 3, 4, 1, 6, 3, 4, 4, 3, 1, 6, 4, 3, 5, 2, 1, 6, 5, 2, 6, 1};
+		for (ObjectParser.InputMode inputMode : ObjectParser.InputMode.values()) {
+			assertArrayEquals(inputMode.toString(), expected, readFaces(parse(input, inputMode)));
+		}
+	}
+
+	/** Test of parseTriangle: the tokens of every layout, with positive and negative indices, give the zero based indices. */
+	@Test
+	public void test_parseTriangle() {
+		ObjectParser parser = new ObjectParser(new File(this.dir, "unused.obj").getPath());
+		for (String line : new String[] {"v 0 0 0", "v 1 0 0", "v 0 1 0", "v 1 1 0", "vt 0 0", "vt 1 0", "vt 0 1"}) {
+			parser.parseLine(line);
+		}
+		Triangle triangle = parser.parseTriangle(new String[] {"f", "1/3", "-1/-3", "2"});
+		assertArrayEquals(new int[] {0, 3, 1}, triangle.vertex);
+		assertArrayEquals(new int[] {2, 0, 0}, triangle.textVertex);
+		triangle = parser.parseTriangle(new String[] {"f", "4//1", "3/2/1", "-4"});
+		assertArrayEquals(new int[] {3, 2, 0}, triangle.vertex);
+		assertArrayEquals(new int[] {0, 1, 0}, triangle.textVertex);
+	}
+
+	/** Test of parseTriangle with a token that is not a face vertex. */
+	@Test
+	public void test_parseTriangle_invalid() {
+		ObjectParser parser = new ObjectParser(new File(this.dir, "unused.obj").getPath());
+		try {
+			parser.parseTriangle(new String[] {"f", "1", "2/x", "3"});
+			fail("No NumberFormatException for \"2/x\"");
+		} catch (NumberFormatException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Writes a grid row by row, every row followed by the faces between it and the row before,
+	 * with negative indices counted from the last vertex and texture coordinate so far, or with positive ones.
+	 */
+	private File writeGrid(boolean relative) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		Random random = new Random(10);
+		for (int i = 0; i < GRID_SIZE; i++) {
+			for (int j = 0; j < GRID_SIZE; j++) {
+				pw.println("v " + i + " " + j + " " + random.nextFloat());
+				pw.println("vt " + (float) i / GRID_SIZE + " " + (float) j / GRID_SIZE);
+			}
+			//The number of vertices so far, minus one for the indices that start at 1.
+			int offset = relative ? -(i + 1)*GRID_SIZE - 1 : 0;
+			for (int j = 0; i > 0 && j < GRID_SIZE - 1; j++) {
+				int a = (i - 1)*GRID_SIZE + j + 1 + offset;
+				int b = a + 1;
+				int c = a + GRID_SIZE + 1;
+				int d = a + GRID_SIZE;
+				pw.println("f " + a + "/" + a + " " + b + "/" + b + " " + c + "/" + c + " " + d + "/" + d);
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	/** Test of a file of several chunks with negative indices: the output is that of the same file with positive indices. */
+	@Test
+	public void test_relativeIndices_chunks() throws IOException {
+		File absolute = writeGrid(false);
+		File relative = writeGrid(true);
+		assertTrue(relative.length() > 3 << 20);
+		for (ObjectParser.InputMode inputMode : ObjectParser.InputMode.values()) {
+			byte[] expected = Files.readAllBytes(parse(absolute, inputMode).toPath());
+			assertArrayEquals(inputMode.toString(), expected, Files.readAllBytes(parse(relative, inputMode).toPath()));
+		}
+	}
+}
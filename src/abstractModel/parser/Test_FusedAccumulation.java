@@ -0,0 +1,149 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the FUSED accumulation mode, which adds the normals of every block while parsing,
+ * writes bit for bit the output of the SEQUENTIAL mode, also for the blocks it has to catch up after parsing.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_FusedAccumulation {
+
+	//Enough lines for three chunks of the MAPPED input.
+	private static final int GRID_SIZE = 220;
+
+	private File dir;
+	private File grid;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_FusedAccumulation").toFile();
+		this.grid = writeGrid(GRID_SIZE, false);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes a grid of size by size vertices with random heights, two triangles per square, in a smoothing group per row.
+	 * The faces between two rows follow the second row, or come before both rows when they refer forward.
+	 */
+	private File writeGrid(int size, boolean forward) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		Random random = new Random(19);
+		for (int i = 0; i < size; i++) {
+			if(forward && i < size - 1) {
+				writeFaces(pw, size, i);
+			}
+			for (int j = 0; j < size; j++) {
+				pw.println("v " + i + " " + j + " " + random.nextFloat());
+				pw.println("vt " + (float) i / size + " " + (float) j / size);
+			}
+			if(!forward && i > 0) {
+				writeFaces(pw, size, i - 1);
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	/**
+	 * Writes the faces between the given row and the next one.
+	 */
+	private static void writeFaces(PrintWriter pw, int size, int row) {
+		pw.println("s " + (row % 3));
+		for (int j = 0; j < size - 1; j++) {
+			int a = row*size + j + 1;
+			int b = a + 1;
+			int c = a + size + 1;
+			int d = a + size;
+			pw.println("f " + a + "/" + a + " " + b + "/" + b + " " + c + "/" + c);
+			pw.println("f " + a + "/" + a + " " + c + "/" + c + " " + d + "/" + d);
+		}
+	}
+
+	private byte[] parse(File input, ObjectParser.AccumulationMode mode, ObjectParser.InputMode inputMode, int parallelism,
+			ObjectParser.WeightingMode weighting, boolean useSmoothingGroups, float creaseAngle, float weldDistance) throws IOException {
+		File output = new File(this.dir, "output" + this.nbFiles++ + ".obj");
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setAccumulationMode(mode);
+		parser.setInputMode(inputMode);
+		parser.setParallelism(parallelism);
+		parser.setWeightingMode(weighting);
+		parser.setUseSmoothingGroups(useSmoothingGroups);
+		if(!Float.isNaN(creaseAngle)) {
+			parser.setCreaseAngle(creaseAngle);
+		}
+		if(!Float.isNaN(weldDistance)) {
+			parser.setWeldDistance(weldDistance);
+		}
+		parser.parse(output.getPath());
+		return Files.readAllBytes(output.toPath());
+	}
+
+	private void assertFused(String message, File input, ObjectParser.InputMode inputMode, int parallelism,
+			ObjectParser.WeightingMode weighting, boolean useSmoothingGroups, float creaseAngle, float weldDistance) throws IOException {
+		byte[] expected = parse(input, ObjectParser.AccumulationMode.SEQUENTIAL, inputMode, parallelism, weighting, useSmoothingGroups, creaseAngle, weldDistance);
+		byte[] actual = parse(input, ObjectParser.AccumulationMode.FUSED, inputMode, parallelism, weighting, useSmoothingGroups, creaseAngle, weldDistance);
+		assertArrayEquals(message, expected, actual);
+	}
+
+	/** Test of every input mode, with the blocks parsed on one thread and in parallel chunks. */
+	@Test
+	public void test_fused_inputModes() throws IOException {
+		for (ObjectParser.InputMode inputMode : ObjectParser.InputMode.values()) {
+			for (int parallelism : new int[] {1, 4}) {
+				assertFused(inputMode + " on " + parallelism + " threads", this.grid, inputMode, parallelism,
+						ObjectParser.WeightingMode.UNIFORM, false, Float.NaN, Float.NaN);
+			}
+		}
+	}
+
+	/** Test of every weighting, with and without smoothing groups. */
+	@Test
+	public void test_fused_weightingModes() throws IOException {
+		File input = writeGrid(40, false);
+		for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+			for (boolean useSmoothingGroups : new boolean[] {false, true}) {
+				assertFused(weighting + (useSmoothingGroups ? " with groups" : ""), input, ObjectParser.InputMode.READER, 1,
+						weighting, useSmoothingGroups, Float.NaN, Float.NaN);
+			}
+		}
+	}
+
+	/** Test of faces that refer to vertices further in the file, which are caught up after parsing. */
+	@Test
+	public void test_fused_forwardReferences() throws IOException {
+		File input = writeGrid(40, true);
+		for (ObjectParser.InputMode inputMode : ObjectParser.InputMode.values()) {
+			assertFused(inputMode.toString(), input, inputMode, 1, ObjectParser.WeightingMode.AREA, false, Float.NaN, Float.NaN);
+		}
+	}
+
+	/** Test of split and welded vertices, which take the sequential path. */
+	@Test
+	public void test_fused_splitVertices() throws IOException {
+		File input = writeGrid(40, false);
+		assertFused("crease angle", input, ObjectParser.InputMode.READER, 1, ObjectParser.WeightingMode.ANGLE, false, 30, Float.NaN);
+		assertFused("weld", input, ObjectParser.InputMode.READER, 1, ObjectParser.WeightingMode.ANGLE, false, Float.NaN, 0);
+		assertFused("crease angle and groups", input, ObjectParser.InputMode.READER, 4, ObjectParser.WeightingMode.UNIFORM, true, 30, Float.NaN);
+	}
+}
@@ -0,0 +1,331 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test the normal modes for the normals that are already in the input:
+ * REUSE writes complete normals out unchanged and calculates new ones otherwise,
+ * VERIFY only writes the output when the given normals deviate more than the maximum deviation.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_InputNormals {
+
+	private static final int GRID_SIZE = 10;
+	private static final float DELTA = 0.01f;
+
+	private File dir;
+	private int nbFiles;
+	private float[] heights;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_InputNormals").toFile();
+		Random random = new Random(5);
+		this.heights = new float[GRID_SIZE*GRID_SIZE];
+		for (int i = 0; i < this.heights.length; i++) {
+			this.heights[i] = random.nextFloat();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes the grid, two triangles per square, with the given normal of every vertex.
+	 * The given faces are written without normal indices, all faces without normals when normals is null.
+	 */
+	private File writeGrid(float[] normals, int... facesWithoutNormals) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " " + this.heights[i]);
+		}
+		if(normals != null) {
+			for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+				pw.println("vn " + normals[3*i] + " " + normals[3*i + 1] + " " + normals[3*i + 2]);
+			}
+		}
+		int face = 0;
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j + 1;
+				int[][] triangles = {{a, a + 1, a + GRID_SIZE + 1}, {a, a + GRID_SIZE + 1, a + GRID_SIZE}};
+				for (int[] triangle : triangles) {
+					boolean withNormals = normals != null;
+					for (int without : facesWithoutNormals) {
+						withNormals &= without != face;
+					}
+					StringBuilder sb = new StringBuilder("f");
+					for (int vertex : triangle) {
+						sb.append(" ").append(vertex);
+						if(withNormals) {
+							sb.append("//").append(vertex);
+						}
+					}
+					pw.println(sb.toString());
+					face++;
+				}
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	private File newOutput() {
+		return new File(this.dir, "output" + this.nbFiles++ + ".obj");
+	}
+
+	private ObjectParser parse(File input, File output, ObjectParser.NormalMode normalMode, float maxNormalDeviation) throws IOException {
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setNormalMode(normalMode);
+		if(!Float.isNaN(maxNormalDeviation)) {
+			parser.setMaxNormalDeviation(maxNormalDeviation);
+		}
+		parser.setParallelism(4);
+		parser.parse(output.getPath());
+		return parser;
+	}
+
+	/**
+	 * Returns the normals written to the output file, three floats per vn line.
+	 */
+	private static float[] readNormals(File output) throws IOException {
+		List<String> lines = Files.readAllLines(output.toPath());
+		List<String> normals = new ArrayList<String>();
+		for (String line : lines) {
+			if(line.startsWith("vn ")) {
+				normals.add(line);
+			}
+		}
+		float[] result = new float[3*normals.size()];
+		for (int i = 0; i < normals.size(); i++) {
+			String[] parts = normals.get(i).split(" ");
+			for (int k = 0; k < 3; k++) {
+				result[3*i + k] = Float.parseFloat(parts[k + 1]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the normal the output file gives every corner of every face, three floats per corner.
+	 */
+	private static float[] readCornerNormals(File output) throws IOException {
+		float[] normals = readNormals(output);
+		List<Float> corners = new ArrayList<Float>();
+		for (String line : Files.readAllLines(output.toPath())) {
+			if(line.startsWith("f ")) {
+				String[] parts = line.split(" ");
+				for (int i = 1; i < parts.length; i++) {
+					int normal = Integer.parseInt(parts[i].split("/")[2]) - 1;
+					for (int k = 0; k < 3; k++) {
+						corners.add(normals[3*normal + k]);
+					}
+				}
+			}
+		}
+		float[] result = new float[corners.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = corners.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the given normal of every corner of the grid.
+	 */
+	private static float[] getCornerNormals(float[] normals) {
+		float[] result = new float[2*3*3*(GRID_SIZE - 1)*(GRID_SIZE - 1)];
+		int corner = 0;
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j;
+				for (int vertex : new int[] {a, a + 1, a + GRID_SIZE + 1, a, a + GRID_SIZE + 1, a + GRID_SIZE}) {
+					for (int k = 0; k < 3; k++) {
+						result[corner++] = normals[3*vertex + k];
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the normals calculated for the grid.
+	 */
+	private float[] calcNormals() throws IOException {
+		File output = newOutput();
+		parse(writeGrid(null), output, ObjectParser.NormalMode.RECOMPUTE, Float.NaN);
+		return readNormals(output);
+	}
+
+	private static float length(float x, float y, float z) {
+		return (float) Math.sqrt(x*x + y*y + z*z);
+	}
+
+	/**
+	 * Returns the given normal turned by the given angle around an axis perpendicular to it.
+	 */
+	private static float[] turn(float[] normals, int vertex, float degrees) {
+		float[] result = normals.clone();
+		float x = normals[3*vertex];
+		float y = normals[3*vertex + 1];
+		float z = normals[3*vertex + 2];
+		//The cross product with the x axis, which is not parallel to the normals of the grid.
+		float length = length(0, z, -y);
+		float cos = (float) Math.cos(Math.toRadians(degrees));
+		float sin = (float) Math.sin(Math.toRadians(degrees));
+		result[3*vertex] = cos*x;
+		result[3*vertex + 1] = cos*y + sin*z / length;
+		result[3*vertex + 2] = cos*z - sin*y / length;
+		return result;
+	}
+
+	/** Test of REUSE with a unit normal per vertex: every corner gets the normal the input gives it. */
+	@Test
+	public void test_reuse_complete() throws IOException {
+		Random random = new Random(5);
+		float[] normals = new float[3*GRID_SIZE*GRID_SIZE];
+		for (int i = 0; i < normals.length; i += 3) {
+			float x = random.nextFloat() - 0.5f;
+			float y = random.nextFloat() - 0.5f;
+			float z = random.nextFloat() + 0.5f;
+			float length = length(x, y, z);
+			normals[i] = x / length;
+			normals[i + 1] = y / length;
+			normals[i + 2] = z / length;
+		}
+		File output = newOutput();
+		parse(writeGrid(normals), output, ObjectParser.NormalMode.REUSE, Float.NaN);
+		assertArrayEquals(getCornerNormals(normals), readCornerNormals(output), 0);
+	}
+
+	/**
+	 * Test of REUSE with a cube that has one normal per side: the normals and the normal index of every corner
+	 * are written out unchanged, so the edges stay hard.
+	 */
+	@Test
+	public void test_reuse_hardEdges() throws IOException {
+		File input = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(input);
+		for (int i = 0; i < 8; i++) {
+			pw.println("v " + (i & 1) + " " + (i >> 1 & 1) + " " + (i >> 2));
+		}
+		String[] normals = {"vn -1.0 0.0 0.0", "vn 1.0 0.0 0.0", "vn 0.0 -1.0 0.0", "vn 0.0 1.0 0.0", "vn 0.0 0.0 -1.0", "vn 0.0 0.0 1.0"};
+		for (String normal : normals) {
+			pw.println(normal);
+		}
+		//The corners of every side, wound to face outwards, and the normal of the side.
+		int[][] sides = {{1, 5, 7, 3, 1}, {2, 4, 8, 6, 2}, {1, 2, 6, 5, 3}, {3, 7, 8, 4, 4}, {1, 3, 4, 2, 5}, {5, 6, 8, 7, 6}};
+		List<String> faces = new ArrayList<String>();
+		for (int[] side : sides) {
+			for (int[] triangle : new int[][] {{side[0], side[1], side[2]}, {side[0], side[2], side[3]}}) {
+				StringBuilder sb = new StringBuilder("f");
+				for (int vertex : triangle) {
+					sb.append(" ").append(vertex).append("/1/").append(side[4]);
+				}
+				pw.println(sb.toString().replace("/1/", "//"));
+				faces.add(sb.toString());
+			}
+		}
+		pw.close();
+		File output = newOutput();
+		parse(input, output, ObjectParser.NormalMode.REUSE, Float.NaN);
+		List<String> lines = Files.readAllLines(output.toPath());
+		List<String> writtenNormals = new ArrayList<String>();
+		List<String> writtenFaces = new ArrayList<String>();
+		for (String line : lines) {
+			if(line.startsWith("vn ")) {
+				writtenNormals.add(line);
+			} else if(line.startsWith("f ")) {
+				writtenFaces.add(line);
+			}
+		}
+		assertEquals(Arrays.asList(normals), writtenNormals);
+		assertEquals(faces, writtenFaces);
+	}
+
+	/**
+	 * Test of REUSE with a face without normals, and with a normal that is not of unit length:
+	 * the normals are calculated, as RECOMPUTE does.
+	 */
+	@Test
+	public void test_reuse_incomplete() throws IOException {
+		float[] normals = calcNormals();
+		File[] inputs = new File[2];
+		inputs[0] = writeGrid(normals, 7);
+		float[] scaled = normals.clone();
+		for (int k = 0; k < 3; k++) {
+			scaled[3*12 + k] *= 2;
+		}
+		inputs[1] = writeGrid(scaled);
+		for (File input : inputs) {
+			File expected = newOutput();
+			parse(input, expected, ObjectParser.NormalMode.RECOMPUTE, Float.NaN);
+			File output = newOutput();
+			parse(input, output, ObjectParser.NormalMode.REUSE, Float.NaN);
+			assertArrayEquals(input.getName(), Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath()));
+		}
+	}
+
+	/**
+	 * Test of VERIFY around the maximum deviation: the output is deleted when the given normals are within it,
+	 * and written, with the calculated normals, when one of them is turned further.
+	 */
+	@Test
+	public void test_verify_maxDeviation() throws IOException {
+		float[] normals = calcNormals();
+		File output = newOutput();
+		ObjectParser parser = parse(writeGrid(normals), output, ObjectParser.NormalMode.VERIFY, 1);
+		assertEquals(0, parser.getNormalDeviation(), DELTA);
+		assertFalse(parser.isOutputWritten());
+		assertFalse(output.exists());
+
+		File turned = writeGrid(turn(normals, 34, 5));
+		output = newOutput();
+		parser = parse(turned, output, ObjectParser.NormalMode.VERIFY, 10);
+		assertEquals(5, parser.getNormalDeviation(), DELTA);
+		assertFalse(parser.isOutputWritten());
+		assertFalse(output.exists());
+
+		output = newOutput();
+		parser = parse(turned, output, ObjectParser.NormalMode.VERIFY, 1);
+		assertEquals(5, parser.getNormalDeviation(), DELTA);
+		assertTrue(parser.isOutputWritten());
+		File expected = newOutput();
+		parse(turned, expected, ObjectParser.NormalMode.RECOMPUTE, Float.NaN);
+		assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(output.toPath()));
+	}
+
+	/** Test of VERIFY with a face without normals: its corners count as a deviation of 180 degrees. */
+	@Test
+	public void test_verify_missingNormal() throws IOException {
+		File output = newOutput();
+		ObjectParser parser = parse(writeGrid(calcNormals(), 20), output, ObjectParser.NormalMode.VERIFY, 179);
+		assertEquals(180, parser.getNormalDeviation(), 0);
+		assertTrue(parser.isOutputWritten());
+		assertTrue(output.exists());
+	}
+}
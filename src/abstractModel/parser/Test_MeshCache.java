@@ -0,0 +1,172 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that a parse with the mesh cache writes the same output as a parse without it,
+ * loads the sidecar while the source and the settings are unchanged, and parses the source again otherwise.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_MeshCache {
+
+	private static final int GRID_SIZE = 30;
+
+	private File dir;
+	private File input;
+	private int nbOutputs;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_MeshCache").toFile();
+		this.input = new File(this.dir, "grid.obj");
+		writeGrid(this.input, new Random(8));
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes a grid with random heights of one digit, two triangles per square, so that every grid has the same length.
+	 */
+	private static void writeGrid(File file, Random random) throws IOException {
+		PrintWriter pw = new PrintWriter(file);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " 0." + random.nextInt(10));
+			pw.println("vt " + (float) (i / GRID_SIZE) / GRID_SIZE + " " + (float) (i % GRID_SIZE) / GRID_SIZE);
+		}
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j + 1;
+				int b = a + 1;
+				int c = a + GRID_SIZE + 1;
+				int d = a + GRID_SIZE;
+				pw.println("f " + a + "/" + a + " " + b + "/" + b + " " + c + "/" + c);
+				pw.println("f " + a + "/" + a + " " + c + "/" + c + " " + d + "/" + d);
+			}
+		}
+		pw.close();
+	}
+
+	/**
+	 * Writes other heights to the source, keeping its length and its modification time,
+	 * so that only a parse of the text can see the change.
+	 */
+	private void changeHeights(long seed) throws IOException {
+		long lastModified = this.input.lastModified();
+		long length = this.input.length();
+		writeGrid(this.input, new Random(seed));
+		assertEquals(length, this.input.length());
+		assertTrue(this.input.setLastModified(lastModified));
+	}
+
+	private byte[] parse(ObjectParser.NormalMode normalMode, boolean useCache) throws IOException {
+		File output = new File(this.dir, "output" + this.nbOutputs++ + ".obj");
+		ObjectParser parser = new ObjectParser(this.input.getPath());
+		parser.setNormalMode(normalMode);
+		parser.setUseCache(useCache);
+		parser.setParallelism(4);
+		parser.parse(output.getPath());
+		return Files.readAllBytes(output.toPath());
+	}
+
+	/** Test of a round trip: the parse that writes the sidecar and the parse that loads it write the output of a parse without cache. */
+	@Test
+	public void test_cache_roundTrip() throws IOException {
+		byte[] expected = parse(ObjectParser.NormalMode.RECOMPUTE, false);
+		File cacheFile = MeshCache.getCacheFile(this.input);
+		assertFalse(cacheFile.exists());
+		assertArrayEquals(expected, parse(ObjectParser.NormalMode.RECOMPUTE, true));
+		assertTrue(cacheFile.isFile());
+		assertArrayEquals(expected, parse(ObjectParser.NormalMode.RECOMPUTE, true));
+	}
+
+	/** Test that the sidecar is loaded while the size and the modification time of the source are unchanged. */
+	@Test
+	public void test_cache_load() throws IOException {
+		byte[] expected = parse(ObjectParser.NormalMode.RECOMPUTE, true);
+		changeHeights(80);
+		assertArrayEquals(expected, parse(ObjectParser.NormalMode.RECOMPUTE, true));
+		assertFalse(Arrays.equals(expected, parse(ObjectParser.NormalMode.RECOMPUTE, false)));
+	}
+
+	/** Test that the source is parsed again when its modification time or the normal mode changes. */
+	@Test
+	public void test_cache_rebuild() throws IOException {
+		parse(ObjectParser.NormalMode.RECOMPUTE, true);
+		changeHeights(80);
+		byte[] expected = parse(ObjectParser.NormalMode.REUSE, false);
+		assertArrayEquals(expected, parse(ObjectParser.NormalMode.REUSE, true));
+
+		changeHeights(81);
+		assertTrue(this.input.setLastModified(this.input.lastModified() - 10000));
+		expected = parse(ObjectParser.NormalMode.REUSE, false);
+		assertArrayEquals(expected, parse(ObjectParser.NormalMode.REUSE, true));
+	}
+
+	/**
+	 * Writes a square and a triangle without area, after a directive that is ignored or a comment of the same length.
+	 */
+	private static void writeMalformed(File file, String directive) throws IOException {
+		PrintWriter pw = new PrintWriter(file);
+		pw.println("v 0 0 0");
+		pw.println("v 1 0 0");
+		pw.println("v 1 1 0");
+		pw.println("v 0 1 0");
+		pw.println("f 1 2 3");
+		pw.println(directive + " second");
+		pw.println("f 1 3 4");
+		pw.println("f 1 2 2");
+		pw.println("f 1 2 5");
+		pw.close();
+	}
+
+	private ObjectParser parse(File input, boolean useCache) throws IOException {
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setUseCache(useCache);
+		parser.parse(new File(this.dir, "output" + this.nbOutputs++ + ".obj").getPath());
+		return parser;
+	}
+
+	/**
+	 * Test that a parse that loads the sidecar has the diagnostics of the parse that wrote it,
+	 * also when the source changed in a way the sidecar does not see.
+	 */
+	@Test
+	public void test_cache_diagnostics() throws IOException {
+		File input = new File(this.dir, "malformed.obj");
+		writeMalformed(input, "g");
+		MeshDiagnostics expected = parse(input, true).getDiagnostics();
+		assertEquals(1, expected.getCount(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE));
+		assertEquals(1, expected.getCount(MeshDiagnostics.Issue.INVALID_INDEX));
+		assertEquals(1, expected.getCount(MeshDiagnostics.Issue.REPEATED_VERTEX));
+		long lastModified = input.lastModified();
+		writeMalformed(input, "#");
+		assertTrue(input.setLastModified(lastModified));
+		MeshDiagnostics loaded = parse(input, true).getDiagnostics();
+		for (MeshDiagnostics.Issue issue : MeshDiagnostics.Issue.values()) {
+			assertEquals(issue.toString(), expected.getCount(issue), loaded.getCount(issue));
+			assertArrayEquals(issue.toString(), expected.getSamples(issue), loaded.getSamples(issue));
+		}
+		assertEquals(0, parse(input, false).getDiagnostics().getCount(MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE));
+	}
+}
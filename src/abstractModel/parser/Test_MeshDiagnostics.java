@@ -0,0 +1,109 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that MeshDiagnostics counts the problems of a malformed file and keeps the indices of the first ones.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_MeshDiagnostics {
+
+	private File dir;
+	private File input;
+	private int nbOutputs;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_MeshDiagnostics").toFile();
+		this.input = new File(this.dir, "malformed.obj");
+		PrintWriter pw = new PrintWriter(this.input);
+		pw.println("v 0 0 0");
+		pw.println("v 1 0 0");
+		pw.println("v 0 1 0");
+		pw.println("v 2 0 0");
+		pw.println("v 1 1 0");
+		pw.println("g first");
+		pw.println("f 1 2 3");
+		pw.println("usemtl red");
+		//Three vertices on a line.
+		pw.println("f 1 2 4");
+		pw.println("f 2 5 3");
+		pw.println("o second");
+		pw.println("f 1 4 2");
+		for (int i = 0; i < 2*MeshDiagnostics.MAX_SAMPLES; i++) {
+			pw.println("g part" + i);
+		}
+		pw.close();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	private void parse(ObjectParser parser) throws IOException {
+		parser.parse(new File(this.dir, "output" + this.nbOutputs++ + ".obj").getPath());
+	}
+
+	private static void assertIssue(String message, MeshDiagnostics diagnostics, MeshDiagnostics.Issue issue, long count, int... samples) {
+		assertEquals(message + ": " + issue, count, diagnostics.getCount(issue));
+		assertArrayEquals(message + ": " + issue, samples, diagnostics.getSamples(issue));
+	}
+
+	/**
+	 * Test of the counts and samples of the malformed file in every input mode: the ignored directives before the triangles they
+	 * come before, the triangles without area in the normals and in the output, and only the first MAX_SAMPLES indices.
+	 */
+	@Test
+	public void test_diagnostics() throws IOException {
+		int[] directives = new int[MeshDiagnostics.MAX_SAMPLES];
+		directives[1] = 1;
+		directives[2] = 3;
+		for (int i = 3; i < directives.length; i++) {
+			directives[i] = 4;
+		}
+		for (ObjectParser.InputMode inputMode : ObjectParser.InputMode.values()) {
+			ObjectParser parser = new ObjectParser(this.input.getPath());
+			parser.setInputMode(inputMode);
+			parser.setParallelism(4);
+			parse(parser);
+			String message = inputMode.toString();
+			MeshDiagnostics diagnostics = parser.getDiagnostics();
+			assertIssue(message, diagnostics, MeshDiagnostics.Issue.UNSUPPORTED_DIRECTIVE, 3 + 2*MeshDiagnostics.MAX_SAMPLES, directives);
+			assertIssue(message, diagnostics, MeshDiagnostics.Issue.DEGENERATE_TRIANGLE, 2, 1, 3);
+			assertIssue(message, diagnostics, MeshDiagnostics.Issue.NAN_VERTEX_NORMAL, 0);
+			assertIssue(message, diagnostics, MeshDiagnostics.Issue.SKIPPED_TRIANGLE, 2, 1, 3);
+		}
+	}
+
+	/** Test of a file without problems: nothing is counted. */
+	@Test
+	public void test_diagnostics_noProblems() throws IOException {
+		File valid = new File(this.dir, "valid.obj");
+		PrintWriter pw = new PrintWriter(valid);
+		pw.println("v 0 0 0");
+		pw.println("v 1 0 0");
+		pw.println("v 0 1 0");
+		pw.println("f 1 2 3");
+		pw.close();
+		ObjectParser parser = new ObjectParser(valid.getPath());
+		parse(parser);
+		for (MeshDiagnostics.Issue issue : MeshDiagnostics.Issue.values()) {
+			assertIssue("valid", parser.getDiagnostics(), issue, 0);
+		}
+	}
+}
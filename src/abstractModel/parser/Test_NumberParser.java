@@ -0,0 +1,123 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the NumberParser gives bit for bit the same results as
+ * Float.parseFloat and Integer.parseInt.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_NumberParser {
+
+	private static void assertSameFloat(String value) {
+		byte[] bytes = ("  " + value + " ").getBytes(StandardCharsets.ISO_8859_1);
+		float parsed = NumberParser.parseFloat(ByteBuffer.wrap(bytes), 2, bytes.length - 1);
+		assertEquals(value, Float.floatToRawIntBits(Float.parseFloat(value)), Float.floatToRawIntBits(parsed));
+	}
+
+	private static void assertSameInt(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+		assertEquals(value, Integer.parseInt(value), NumberParser.parseInt(ByteBuffer.wrap(bytes), 0, bytes.length));
+	}
+
+	/** Test of parseFloat with the numbers written by the exporters. */
+	@Test
+	public void test_parseFloat_fixedPoint() {
+		String[] values = {"0", "0.0", "-0.0", "-0", "1", "-1", "1.", ".5", "-.5", "+2.5", "0.000000",
+				"0.5", "0.1", "0.3", "-12.345678", "123.456789", "3.14159265358979", "0.000001",
+				"16777216", "16777217", "16777219", "9007199254740993", "0.35355338", "0.70710677",
+				"-0.004791", "1000000.0", "4.2949673E9", "0.99999994", "1.00000006"};
+		for (String value : values) {
+			assertSameFloat(value);
+		}
+	}
+
+	/** Test of parseFloat with exponents and values outside the fast path. */
+	@Test
+	public void test_parseFloat_exponents() {
+		String[] values = {"1e0", "1E5", "1e-5", "-2.5e+3", "1e22", "1e-22", "1e23", "1e-23", "3.4028235e38",
+				"3.4028236e38", "1e39", "-1e39", "1.4e-45", "7e-46", "1e-50", "1.17549435E-38", "0e9999",
+				"1.000000059604644775390625", "1.0000000596046448", "123456789012345678901234567890",
+				"0.1000000000000000000000001", "NaN", "-Infinity", "1.5f", "2d", "0x1p3"};
+		for (String value : values) {
+			assertSameFloat(value);
+		}
+	}
+
+	/** Test of parseFloat with random decimals of different lengths. */
+	@Test
+	public void test_parseFloat_random() {
+		Random random = new Random(42);
+		for (int i = 0; i < 200000; i++) {
+			int digits = 1 + random.nextInt(17);
+			StringBuilder sb = new StringBuilder();
+			if(random.nextBoolean()) {
+				sb.append('-');
+			}
+			int point = random.nextInt(digits + 1);
+			for (int j = 0; j < digits; j++) {
+				if(j == point) {
+					sb.append('.');
+				}
+				sb.append((char) ('0' + random.nextInt(10)));
+			}
+			if(random.nextInt(4) == 0) {
+				sb.append('e').append(random.nextInt(60) - 30);
+			}
+			assertSameFloat(sb.toString());
+		}
+	}
+
+	/** Test of parseFloat with the shortest representation of random floats. */
+	@Test
+	public void test_parseFloat_roundTrip() {
+		Random random = new Random(7);
+		for (int i = 0; i < 200000; i++) {
+			float value = Float.intBitsToFloat(random.nextInt());
+			assertSameFloat(Float.toString(value));
+			assertSameFloat(Double.toString(value));
+		}
+	}
+
+	/** Test of parseFloat with input that is not a number. */
+	@Test
+	public void test_parseFloat_invalid() {
+		String[] values = {"", "-", ".", "1e", "1e+", "e5", "1.2.3", "a", "1/2"};
+		for (String value : values) {
+			byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+			try {
+				NumberParser.parseFloat(ByteBuffer.wrap(bytes), 0, bytes.length);
+				fail("No NumberFormatException for \"" + value + "\"");
+			} catch (NumberFormatException e) {
+				//expected
+			}
+		}
+	}
+
+	/** Test of the parseInt method. */
+	@Test
+	public void test_parseInt() {
+		String[] values = {"0", "1", "-1", "+7", "123456789", "-123456789", "2147483647", "-2147483648", "0001"};
+		for (String value : values) {
+			assertSameInt(value);
+		}
+		String[] invalid = {"", "-", "2147483648", "1a", "1/2"};
+		for (String value : invalid) {
+			byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+			try {
+				NumberParser.parseInt(ByteBuffer.wrap(bytes), 0, bytes.length);
+				fail("No NumberFormatException for \"" + value + "\"");
+			} catch (NumberFormatException e) {
+				//expected
+			}
+		}
+	}
+}
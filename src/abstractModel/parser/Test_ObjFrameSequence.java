@@ -0,0 +1,159 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that ObjFrameSequence writes every frame of an animation exactly as parsing the frame
+ * with the same settings does.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_ObjFrameSequence {
+
+	private static final int GRID_SIZE = 40;
+	private static final int NB_FRAMES = 5;
+
+	private File dir;
+	private String[] frames;
+	private int nbOutputs;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_ObjFrameSequence").toFile();
+		this.frames = new String[NB_FRAMES];
+		for (int frame = 0; frame < NB_FRAMES; frame++) {
+			//The last frame is gzip compressed.
+			File file = new File(this.dir, "frame" + frame + (frame == NB_FRAMES - 1 ? ".obj.gz" : ".obj"));
+			writeFrame(file, new Random(frame));
+			this.frames[frame] = file.getPath();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes a grid with random heights and the same texture coordinates, smoothing groups and faces in every frame.
+	 */
+	private static void writeFrame(File file, Random random) throws IOException {
+		PrintWriter pw = file.getName().endsWith(".gz") ? new PrintWriter(new GZIPOutputStream(new FileOutputStream(file))) : new PrintWriter(file);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " " + random.nextFloat());
+			pw.println("vt " + (float) (i / GRID_SIZE) / GRID_SIZE + " " + (float) (i % GRID_SIZE) / GRID_SIZE);
+		}
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			pw.println("s " + (i % 3));
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j + 1;
+				int b = a + 1;
+				int c = a + GRID_SIZE + 1;
+				int d = a + GRID_SIZE;
+				pw.println("f " + a + "/" + a + " " + b + "/" + b + " " + c + "/" + c);
+				pw.println("f " + a + "/" + a + " " + c + "/" + c + " " + d + "/" + d);
+			}
+		}
+		pw.close();
+	}
+
+	private static ObjectParser createParser(String input, ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting,
+			boolean useSmoothingGroups, boolean calcTangents) {
+		ObjectParser parser = new ObjectParser(input);
+		parser.setAccumulationMode(mode);
+		parser.setWeightingMode(weighting);
+		parser.setUseSmoothingGroups(useSmoothingGroups);
+		parser.setCalcTangents(calcTangents);
+		parser.setParallelism(4);
+		return parser;
+	}
+
+	private String newOutput() {
+		return new File(this.dir, "output" + this.nbOutputs++ + ".obj").getPath();
+	}
+
+	/**
+	 * Processes the frames with a sequence of the first one and checks every output against a parse of the frame.
+	 */
+	private void testSequence(ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting, boolean useSmoothingGroups, boolean calcTangents)
+			throws IOException {
+		String settings = mode + " " + weighting + (useSmoothingGroups ? " with groups" : "") + (calcTangents ? " with tangents" : "");
+		ObjectParser parser = createParser(this.frames[0], mode, weighting, useSmoothingGroups, calcTangents);
+		parser.parse(newOutput());
+		String[] outputs = new String[NB_FRAMES];
+		for (int frame = 0; frame < NB_FRAMES; frame++) {
+			outputs[frame] = newOutput();
+		}
+		parser.getFrameSequence().process(this.frames, outputs);
+		for (int frame = 0; frame < NB_FRAMES; frame++) {
+			String expected = newOutput();
+			createParser(this.frames[frame], mode, weighting, useSmoothingGroups, calcTangents).parse(expected);
+			assertArrayEquals(settings + ": frame " + frame, Files.readAllBytes(new File(expected).toPath()), Files.readAllBytes(new File(outputs[frame]).toPath()));
+		}
+	}
+
+	/** Test of the frames in every accumulation mode. */
+	@Test
+	public void test_process_accumulationModes() throws IOException {
+		for (ObjectParser.AccumulationMode mode : ObjectParser.AccumulationMode.values()) {
+			testSequence(mode, ObjectParser.WeightingMode.UNIFORM, false, false);
+		}
+	}
+
+	/** Test of the frames with every weighting, split per smoothing group and with tangents. */
+	@Test
+	public void test_process_weightingModes() throws IOException {
+		for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+			testSequence(ObjectParser.AccumulationMode.PARALLEL, weighting, true, false);
+			testSequence(ObjectParser.AccumulationMode.SEQUENTIAL, weighting, false, true);
+		}
+	}
+
+	/** Test that a frame with fewer vertices than the parsed file is refused. */
+	@Test
+	public void test_process_missingVertices() throws IOException {
+		File small = new File(this.dir, "small.obj");
+		PrintWriter pw = new PrintWriter(small);
+		pw.println("v 0 0 0");
+		pw.println("v 1 0 0");
+		pw.println("v 0 1 0");
+		pw.println("f 1 2 3");
+		pw.close();
+		ObjectParser parser = createParser(this.frames[0], ObjectParser.AccumulationMode.SEQUENTIAL, ObjectParser.WeightingMode.UNIFORM, false, false);
+		parser.parse(newOutput());
+		try {
+			parser.getFrameSequence().process(new String[] {small.getPath()}, new String[] {newOutput()});
+			fail("A frame with 3 vertices is processed.");
+		} catch (IOException e) {
+		}
+	}
+
+	/** Test that a sequence is refused with auto smoothing, which depends on the positions. */
+	@Test
+	public void test_getFrameSequence_creaseAngle() throws IOException {
+		ObjectParser parser = createParser(this.frames[0], ObjectParser.AccumulationMode.SEQUENTIAL, ObjectParser.WeightingMode.UNIFORM, false, false);
+		parser.setCreaseAngle(30);
+		parser.parse(newOutput());
+		try {
+			parser.getFrameSequence();
+			fail("A sequence with auto smoothing is created.");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
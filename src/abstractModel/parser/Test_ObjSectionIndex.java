@@ -0,0 +1,127 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that loading sections of an .obj file with an ObjSectionIndex gives the same output
+ * as parsing a file with only those sections, when the faces use relative indices.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_ObjSectionIndex {
+
+	private static final int NB_OBJECTS = 5;
+	private static final int GRID_SIZE = 6;
+
+	private File dir;
+	private int nbOutputs;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_ObjSectionIndex").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes an object with a grid of vertices, texture coordinates and normals,
+	 * followed by its faces with relative indices, two triangles per square.
+	 */
+	private static void writeObject(PrintWriter pw, int object) {
+		Random random = new Random(object);
+		pw.println("o object" + object);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			pw.println("v " + (object + i / GRID_SIZE) + " " + i % GRID_SIZE + " " + random.nextFloat());
+			pw.println("vt " + random.nextFloat() + " " + random.nextFloat());
+			pw.println("vn 0.0 0.0 1.0");
+		}
+		pw.println("usemtl material" + object % 2);
+		int nbVertices = GRID_SIZE*GRID_SIZE;
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j - nbVertices;
+				int b = a + 1;
+				int c = a + GRID_SIZE + 1;
+				int d = a + GRID_SIZE;
+				pw.println("f " + a + "/" + a + "/" + a + " " + b + "/" + b + "/" + b + " " + c + "/" + c + "/" + c);
+				pw.println("f " + a + "/" + a + "/" + a + " " + c + "/" + c + "/" + c + " " + d + "/" + d + "/" + d);
+			}
+		}
+	}
+
+	/**
+	 * Writes a file with the given objects.
+	 */
+	private File writeFile(String name, int... objects) throws IOException {
+		File file = new File(this.dir, name);
+		PrintWriter pw = new PrintWriter(file);
+		for (int object : objects) {
+			writeObject(pw, object);
+		}
+		pw.close();
+		return file;
+	}
+
+	private byte[] parse(File input, ObjSectionIndex index, String... names) throws IOException {
+		ObjectParser parser = new ObjectParser(input.getPath());
+		if(index != null) {
+			parser.setSections(index, names);
+		}
+		File output = new File(this.dir, "output" + this.nbOutputs++ + ".obj");
+		parser.parse(output.getPath());
+		return Files.readAllBytes(output.toPath());
+	}
+
+	/** Test of the sections the index finds. */
+	@Test
+	public void test_build() throws IOException {
+		File file = writeFile("all.obj", 0, 1, 2, 3, 4);
+		List<ObjSectionIndex.Section> sections = ObjSectionIndex.build(file).getSections();
+		assertEquals(NB_OBJECTS, sections.size());
+		for (int object = 0; object < NB_OBJECTS; object++) {
+			ObjSectionIndex.Section section = sections.get(object);
+			assertEquals("object" + object, section.getObject());
+			assertEquals("material" + object % 2, section.getMaterial());
+			assertEquals(2*(GRID_SIZE - 1)*(GRID_SIZE - 1), section.getNbFaces());
+			assertEquals(object*GRID_SIZE*GRID_SIZE, section.getFirstVertex());
+			assertEquals((object + 1)*GRID_SIZE*GRID_SIZE - 1, section.getLastVertex());
+		}
+	}
+
+	/** Test of loading one object whose faces use relative indices. */
+	@Test
+	public void test_load_oneSection() throws IOException {
+		File file = writeFile("all.obj", 0, 1, 2, 3, 4);
+		ObjSectionIndex index = ObjSectionIndex.build(file);
+		for (int object = 0; object < NB_OBJECTS; object++) {
+			assertArrayEquals("object" + object, parse(writeFile("object" + object + ".obj", object), null), parse(file, index, "object" + object));
+		}
+	}
+
+	/** Test of loading the sections with the same material, every object that uses it. */
+	@Test
+	public void test_load_severalSections() throws IOException {
+		File file = writeFile("all.obj", 0, 1, 2, 3, 4);
+		ObjSectionIndex index = ObjSectionIndex.build(file);
+		assertArrayEquals(parse(writeFile("material1.obj", 1, 3), null), parse(file, index, "material1"));
+		assertArrayEquals(parse(writeFile("objects.obj", 0, 2, 4), null), parse(file, index, "object4", "object0", "object2"));
+	}
+}
@@ -0,0 +1,180 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that ParallelGzipOutputStream and ParallelGzipInput give back the bytes that were compressed,
+ * also to and from GZIPInputStream and GZIPOutputStream, and that the parser reads the .obj.gz files it writes.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_ParallelGzip {
+
+	private File dir;
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_ParallelGzip").toFile();
+		this.pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Returns bytes that look like the lines of an .obj file, three and a half blocks of ParallelGzipOutputStream.
+	 */
+	private static byte[] createObjBytes() {
+		Random random = new Random(6);
+		StringBuilder sb = new StringBuilder();
+		while(sb.length() < 7*ParallelGzipOutputStream.BLOCK_SIZE/2) {
+			sb.append("v ").append(random.nextFloat()).append(' ').append(random.nextFloat()).append(' ').append(random.nextFloat()).append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+	private static void write(byte[] bytes, OutputStream out) throws IOException {
+		out.write(bytes);
+		out.close();
+	}
+
+	private byte[] inflate(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = ParallelGzipInput.inflate(channel, this.pool);
+			if(buffer == null) {
+				return null;
+			}
+			byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			return bytes;
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static byte[] readGzipStream(File file) throws IOException {
+		InputStream in = new GZIPInputStream(new FileInputStream(file));
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void append(File file, byte[] bytes) throws IOException {
+		Files.write(file.toPath(), bytes, StandardOpenOption.APPEND);
+	}
+
+	/** Test of compressing with ParallelGzipOutputStream and decompressing with ParallelGzipInput and GZIPInputStream. */
+	@Test
+	public void test_roundTrip() throws IOException {
+		byte[] bytes = createObjBytes();
+		File file = new File(this.dir, "parallel.gz");
+		write(bytes, new ParallelGzipOutputStream(new FileOutputStream(file), 4));
+		assertArrayEquals(bytes, inflate(file));
+		assertArrayEquals(bytes, readGzipStream(file));
+	}
+
+	/** Test of a file written by GZIPOutputStream, whose member does not give its size. */
+	@Test
+	public void test_inflate_withoutMemberSizes() throws IOException {
+		File file = new File(this.dir, "stream.gz");
+		write(createObjBytes(), new GZIPOutputStream(new FileOutputStream(file)));
+		assertNull(inflate(file));
+	}
+
+	/** Test that padding and other bytes after the last member are ignored, like GZIPInputStream does. */
+	@Test
+	public void test_inflate_trailingBytes() throws IOException {
+		byte[] bytes = createObjBytes();
+		File padded = new File(this.dir, "padded.gz");
+		write(bytes, new ParallelGzipOutputStream(new FileOutputStream(padded), 4));
+		append(padded, new byte[512]);
+		assertArrayEquals(bytes, readGzipStream(padded));
+		assertArrayEquals(bytes, inflate(padded));
+		File garbage = new File(this.dir, "garbage.gz");
+		write(bytes, new ParallelGzipOutputStream(new FileOutputStream(garbage), 4));
+		append(garbage, "garbage\n".getBytes());
+		assertArrayEquals(bytes, readGzipStream(garbage));
+		assertArrayEquals(bytes, inflate(garbage));
+	}
+
+	/** Test that a file that does not start with a gzip header is refused. */
+	@Test
+	public void test_inflate_notGzip() throws IOException {
+		File file = new File(this.dir, "plain.gz");
+		Files.write(file.toPath(), createObjBytes());
+		try {
+			inflate(file);
+			fail("A file without gzip header is inflated.");
+		} catch (IOException e) {
+		}
+	}
+
+	/** Test that parsing a written .obj.gz file gives the same output as parsing the .obj file written with the same settings. */
+	@Test
+	public void test_parse_gzipOutput() throws IOException {
+		File input = new File(this.dir, "grid.obj");
+		PrintWriter pw = new PrintWriter(input);
+		Random random = new Random(6);
+		int size = 100;
+		for (int i = 0; i < size*size; i++) {
+			pw.println("v " + i / size + " " + i % size + " " + random.nextFloat());
+		}
+		for (int i = 1; i < size*(size - 1); i++) {
+			if(i % size != 0) {
+				pw.println("f " + i + " " + (i + 1) + " " + (i + size + 1) + " " + (i + size));
+			}
+		}
+		pw.close();
+		File plain = new File(this.dir, "plain.obj");
+		File compressed = new File(this.dir, "compressed.obj.gz");
+		new ObjectParser(input.getPath()).parse(plain.getPath());
+		new ObjectParser(input.getPath()).parse(compressed.getPath());
+		assertArrayEquals(Files.readAllBytes(plain.toPath()), readGzipStream(compressed));
+		File fromPlain = new File(this.dir, "fromPlain.obj");
+		File fromCompressed = new File(this.dir, "fromCompressed.obj");
+		new ObjectParser(plain.getPath()).parse(fromPlain.getPath());
+		ObjectParser parser = new ObjectParser(compressed.getPath());
+		parser.setParallelism(4);
+		parser.parse(fromCompressed.getPath());
+		assertArrayEquals(Files.readAllBytes(fromPlain.toPath()), Files.readAllBytes(fromCompressed.toPath()));
+	}
+}
@@ -0,0 +1,114 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the PARALLEL and GATHER accumulation modes give bit for bit the same
+ * vertex normals on any number of threads, also when the mesh is loaded from the sidecar of MeshCache.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_ParallelNormals {
+
+	//Enough triangles for five slices of calcTriangleNormals and for four normal tasks.
+	private static final int GRID_SIZE = 200;
+	private static final int[] PARALLELISMS = {2, 3, 4};
+
+	private File dir;
+	private File input;
+	private int nbOutputs;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_ParallelNormals").toFile();
+		this.input = new File(this.dir, "grid.obj");
+		writeGrid(this.input, GRID_SIZE, new Random(20));
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes a grid of size by size vertices with random heights, two triangles per square.
+	 */
+	private static void writeGrid(File file, int size, Random random) throws IOException {
+		PrintWriter pw = new PrintWriter(file);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				pw.println("v " + i*0.01f + " " + j*0.01f + " " + (random.nextFloat() - 0.5f)*0.1f);
+			}
+		}
+		for (int i = 0; i < size - 1; i++) {
+			for (int j = 0; j < size - 1; j++) {
+				int a = i*size + j + 1;
+				pw.println("f " + a + " " + (a + 1) + " " + (a + size + 1));
+				pw.println("f " + a + " " + (a + size + 1) + " " + (a + size));
+			}
+		}
+		pw.close();
+	}
+
+	private ObjectParser parse(ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting, int parallelism, boolean useCache) throws IOException {
+		ObjectParser parser = new ObjectParser(this.input.getPath());
+		parser.setAccumulationMode(mode);
+		parser.setWeightingMode(weighting);
+		parser.setParallelism(parallelism);
+		parser.setUseCache(useCache);
+		parser.parse(new File(this.dir, "output" + this.nbOutputs++ + ".obj").getPath());
+		return parser;
+	}
+
+	/**
+	 * Returns the bits of the vertex normals of the parser.
+	 */
+	private static int[] getNormalBits(ObjectParser parser) {
+		ObjData mesh = parser.mesh;
+		int[] bits = new int[3*mesh.getNbVertexNormals()];
+		for (int i = 0; i < bits.length; i++) {
+			bits[i] = Float.floatToRawIntBits(mesh.vertexNormals[i]);
+		}
+		return bits;
+	}
+
+	/** Test of the PARALLEL and GATHER modes with every weighting on 1, 2, 3 and 4 threads. */
+	@Test
+	public void test_sameNormals_anyParallelism() throws IOException {
+		for (ObjectParser.AccumulationMode mode : new ObjectParser.AccumulationMode[] {ObjectParser.AccumulationMode.PARALLEL, ObjectParser.AccumulationMode.GATHER}) {
+			for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+				int[] expected = getNormalBits(parse(mode, weighting, 1, false));
+				for (int parallelism : PARALLELISMS) {
+					assertArrayEquals(mode + " " + weighting + " on " + parallelism + " threads", expected, getNormalBits(parse(mode, weighting, parallelism, false)));
+				}
+			}
+		}
+	}
+
+	/** Test of the PARALLEL mode when the normals are saved in the sidecar on one number of threads and loaded on another. */
+	@Test
+	public void test_sameNormals_throughCache() throws IOException {
+		ObjectParser.AccumulationMode mode = ObjectParser.AccumulationMode.PARALLEL;
+		for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+			int[] expected = getNormalBits(parse(mode, weighting, 1, false));
+			assertArrayEquals(weighting + " saved", expected, getNormalBits(parse(mode, weighting, 4, true)));
+			assertTrue(MeshCache.getCacheFile(this.input).exists());
+			assertArrayEquals(weighting + " loaded", expected, getNormalBits(parse(mode, weighting, 3, true)));
+			MeshCache.getCacheFile(this.input).delete();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that welding gives the copies of a vertex on a seam the normal of the vertex
+ * without the seam, while every copy keeps its own index in the output.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_PositionWeld {
+
+	private static final int GRID_SIZE = 20;
+	private static final int SEAM = GRID_SIZE / 2;
+	private static final ObjectParser.AccumulationMode[] MODES = {ObjectParser.AccumulationMode.SEQUENTIAL,
+			ObjectParser.AccumulationMode.PARALLEL, ObjectParser.AccumulationMode.GATHER};
+	private static final float DELTA = 1e-6f;
+
+	private File dir;
+	private int nbFiles;
+	private float[] heights;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_PositionWeld").toFile();
+		Random random = new Random(18);
+		this.heights = new float[GRID_SIZE*GRID_SIZE];
+		for (int i = 0; i < this.heights.length; i++) {
+			this.heights[i] = random.nextFloat();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes the grid, two triangles per square. With a seam the vertices of the middle column are copied,
+	 * moved by the given offset, after the others, and the squares right of the seam use the copies.
+	 */
+	private File writeGrid(boolean seam, float offset) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " " + this.heights[i]);
+		}
+		if(seam) {
+			for (int i = 0; i < GRID_SIZE; i++) {
+				pw.println("v " + (i + offset) + " " + SEAM + " " + this.heights[i*GRID_SIZE + SEAM]);
+			}
+		}
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = getVertex(i, j, seam) + 1;
+				int b = getVertex(i, j + 1, seam) + 1;
+				int c = getVertex(i + 1, j + 1, seam) + 1;
+				int d = getVertex(i + 1, j, seam) + 1;
+				pw.println("f " + a + " " + b + " " + c);
+				pw.println("f " + a + " " + c + " " + d);
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	/**
+	 * Returns the vertex at the given row and column, used by the square right of it.
+	 */
+	private static int getVertex(int i, int j, boolean seam) {
+		return seam && j == SEAM ? GRID_SIZE*GRID_SIZE + i : i*GRID_SIZE + j;
+	}
+
+	private ObjectParser parse(File input, float weldDistance, ObjectParser.AccumulationMode mode) throws IOException {
+		ObjectParser parser = new ObjectParser(input.getPath());
+		if(!Float.isNaN(weldDistance)) {
+			parser.setWeldDistance(weldDistance);
+		}
+		parser.setAccumulationMode(mode);
+		parser.setParallelism(4);
+		parser.parse(new File(this.dir, "output" + this.nbFiles++ + ".obj").getPath());
+		return parser;
+	}
+
+	private static void assertNormal(String message, float[] expected, int expectedVertex, float[] actual, int actualVertex, float delta) {
+		for (int k = 0; k < 3; k++) {
+			assertEquals(message, expected[3*expectedVertex + k], actual[3*actualVertex + k], delta);
+		}
+	}
+
+	/**
+	 * Test of a seam whose copies are at the same positions: with a weld distance of 0 every vertex gets the normal
+	 * it has without the seam, in every accumulation mode, and the output keeps every copy.
+	 */
+	@Test
+	public void test_seam_equalPositions() throws IOException {
+		File seam = writeGrid(true, 0);
+		float[] expected = parse(writeGrid(false, 0), Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL).mesh.vertexNormals;
+		for (ObjectParser.AccumulationMode mode : MODES) {
+			ObjectParser parser = parse(seam, 0, mode);
+			ObjData mesh = parser.mesh;
+			assertEquals(GRID_SIZE*GRID_SIZE + GRID_SIZE, mesh.nbVertices);
+			assertEquals(mesh.nbVertices, mesh.getNbVertexNormals());
+			for (int vertex = 0; vertex < GRID_SIZE*GRID_SIZE; vertex++) {
+				assertNormal(mode + ": vertex " + vertex, expected, vertex, mesh.vertexNormals, vertex, DELTA);
+			}
+			for (int i = 0; i < GRID_SIZE; i++) {
+				int vertex = i*GRID_SIZE + SEAM;
+				assertNormal(mode + ": copy " + i, mesh.vertexNormals, vertex, mesh.vertexNormals, GRID_SIZE*GRID_SIZE + i, 0);
+			}
+			List<String> lines = Files.readAllLines(new File(this.dir, "output" + (this.nbFiles - 1) + ".obj").toPath());
+			int nbPositions = 0;
+			int nbNormals = 0;
+			for (String line : lines) {
+				nbPositions += line.startsWith("v ") ? 1 : 0;
+				nbNormals += line.startsWith("vn ") ? 1 : 0;
+			}
+			assertEquals(mode.toString(), mesh.nbVertices, nbPositions);
+			assertEquals(mode.toString(), mesh.nbVertices, nbNormals);
+		}
+	}
+
+	/** Test of a seam whose copies are moved a bit: they are welded within the weld distance, not without welding. */
+	@Test
+	public void test_seam_withinDistance() throws IOException {
+		File seam = writeGrid(true, 1e-4f);
+		float[] expected = parse(writeGrid(false, 0), Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL).mesh.vertexNormals;
+		float[] welded = parse(seam, 1e-3f, ObjectParser.AccumulationMode.SEQUENTIAL).mesh.vertexNormals;
+		float[] notWelded = parse(seam, Float.NaN, ObjectParser.AccumulationMode.SEQUENTIAL).mesh.vertexNormals;
+		for (int i = 0; i < GRID_SIZE; i++) {
+			int vertex = i*GRID_SIZE + SEAM;
+			assertNormal("copy " + i, welded, vertex, welded, GRID_SIZE*GRID_SIZE + i, 0);
+			assertNormal("vertex " + vertex, expected, vertex, welded, vertex, 1e-3f);
+			float dot = 0;
+			for (int k = 0; k < 3; k++) {
+				dot += notWelded[3*vertex + k]*expected[3*vertex + k];
+			}
+			assertTrue("vertex " + vertex + " is welded", dot < 1 - 1e-4f);
+		}
+	}
+
+	/** Test of the vertex every vertex is welded to: the lowest one within the distance, in the same or a neighbouring cell. */
+	@Test
+	public void test_weld() {
+		ObjData mesh = new ObjData();
+		mesh.addVertex(0, 0, 0);
+		mesh.addVertex(0.05f, 0, 0);
+		mesh.addVertex(1, 1, 1);
+		mesh.addVertex(0, -0.02f, 0.08f);
+		mesh.addVertex(1, 1, 1.2f);
+		mesh.addVertex(-0.0f, 0, 0);
+		assertArrayEquals(new int[] {0, 0, 2, 0, 4, 0}, PositionWeld.weld(mesh, 0.1f, null, 1));
+		assertArrayEquals(new int[] {0, 1, 2, 3, 4, 0}, PositionWeld.weld(mesh, 0, null, 1));
+		assertArrayEquals(new int[] {0, 0, 2, 0, 4, 0}, PositionWeld.weld(mesh, 0.1f, null, 3));
+	}
+}
@@ -0,0 +1,193 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the vertices are split per smoothing group: the corners of the triangles of a group
+ * share one normal per vertex, the sum of the normals of those triangles only.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_SmoothingGroups {
+
+	private static final String[] CUBE_VERTICES = {"v 0 0 0", "v 1 0 0", "v 1 1 0", "v 0 1 0", "v 0 0 1", "v 1 0 1", "v 1 1 1", "v 0 1 1"};
+	private static final String[] CUBE_FACES = {"f 1 4 3 2", "f 5 6 7 8", "f 1 2 6 5", "f 2 3 7 6", "f 3 4 8 7", "f 4 1 5 8"};
+	private static final float DELTA = 1e-6f;
+
+	private File dir;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_SmoothingGroups").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	private ObjData parse(String[] lines, boolean useSmoothingGroups, ObjectParser.AccumulationMode mode) throws IOException {
+		File input = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(input);
+		for (String line : lines) {
+			pw.println(line);
+		}
+		pw.close();
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setUseSmoothingGroups(useSmoothingGroups);
+		parser.setAccumulationMode(mode);
+		parser.setParallelism(4);
+		parser.parse(new File(this.dir, "output" + this.nbFiles++ + ".obj").getPath());
+		return parser.mesh;
+	}
+
+	/**
+	 * Returns the lines of a cube whose faces are in the given smoothing groups.
+	 */
+	private static String[] createCube(String... groups) {
+		String[] lines = new String[CUBE_VERTICES.length + 2*CUBE_FACES.length];
+		System.arraycopy(CUBE_VERTICES, 0, lines, 0, CUBE_VERTICES.length);
+		for (int face = 0; face < CUBE_FACES.length; face++) {
+			lines[CUBE_VERTICES.length + 2*face] = "s " + groups[face % groups.length];
+			lines[CUBE_VERTICES.length + 2*face + 1] = CUBE_FACES[face];
+		}
+		return lines;
+	}
+
+	private static void assertNormal(ObjData mesh, int corner, float x, float y, float z) {
+		int normal = 3*mesh.getNormalIndices()[corner];
+		assertEquals(x, mesh.vertexNormals[normal], DELTA);
+		assertEquals(y, mesh.vertexNormals[normal + 1], DELTA);
+		assertEquals(z, mesh.vertexNormals[normal + 2], DELTA);
+	}
+
+	/** Test of a cube with every face in its own group: every corner gets the normal of its face. */
+	@Test
+	public void test_cube_groupPerFace() throws IOException {
+		ObjData mesh = parse(createCube("1", "2", "3", "4", "5", "6"), true, ObjectParser.AccumulationMode.SEQUENTIAL);
+		assertEquals(24, mesh.getNbVertexNormals());
+		for (int corner = 0; corner < 3*mesh.nbTriangles; corner++) {
+			int i = 3*(corner / 3);
+			assertNormal(mesh, corner, mesh.faceNormals[i], mesh.faceNormals[i + 1], mesh.faceNormals[i + 2]);
+		}
+	}
+
+	/** Test of a cube with all faces in one group: every vertex gets one normal, the one it gets without groups. */
+	@Test
+	public void test_cube_oneGroup() throws IOException {
+		ObjData mesh = parse(createCube("1"), true, ObjectParser.AccumulationMode.SEQUENTIAL);
+		ObjData unsplit = parse(createCube("1"), false, ObjectParser.AccumulationMode.SEQUENTIAL);
+		assertEquals(8, mesh.getNbVertexNormals());
+		for (int corner = 0; corner < 3*mesh.nbTriangles; corner++) {
+			int vertex = 3*mesh.triangleVertices[corner];
+			assertNormal(mesh, corner, unsplit.vertexNormals[vertex], unsplit.vertexNormals[vertex + 1], unsplit.vertexNormals[vertex + 2]);
+		}
+	}
+
+	/**
+	 * Test of a cube with every other face without smoothing group: the corners of each of their triangles 
+	 * get one normal, the face normal, the faces in group 1 share one normal per vertex.
+	 */
+	@Test
+	public void test_cube_off() throws IOException {
+		ObjData mesh = parse(createCube("off", "1", "0"), true, ObjectParser.AccumulationMode.SEQUENTIAL);
+		assertEquals(6 + 8, mesh.getNbVertexNormals());
+		for (int triangle = 0; triangle < mesh.nbTriangles; triangle++) {
+			if(mesh.triangleGroups[triangle] == 0) {
+				int i = 3*triangle;
+				for (int corner = i; corner < i + 3; corner++) {
+					assertEquals(mesh.getNormalIndices()[i], mesh.getNormalIndices()[corner]);
+					assertNormal(mesh, corner, mesh.faceNormals[i], mesh.faceNormals[i + 1], mesh.faceNormals[i + 2]);
+				}
+			}
+		}
+	}
+
+	/** Test that the groups are ignored when they are not used. */
+	@Test
+	public void test_cube_groupsNotUsed() throws IOException {
+		ObjData mesh = parse(createCube("1", "2", "3", "4", "5", "6"), false, ObjectParser.AccumulationMode.SEQUENTIAL);
+		assertNull(mesh.cornerNormals);
+		assertEquals(8, mesh.getNbVertexNormals());
+	}
+
+	/**
+	 * Test of a grid with a random group per square, some without group: the normal of every corner is the normalized sum
+	 * of the face normals of the triangles of its group around its vertex, in every accumulation mode.
+	 */
+	@Test
+	public void test_grid_randomGroups() throws IOException {
+		int size = 40;
+		Random random = new Random(16);
+		String[] lines = new String[size*size + 3*(size - 1)*(size - 1)];
+		int line = 0;
+		for (int i = 0; i < size*size; i++) {
+			lines[line++] = "v " + i / size + " " + i % size + " " + random.nextFloat();
+		}
+		for (int i = 0; i < size - 1; i++) {
+			for (int j = 0; j < size - 1; j++) {
+				int a = i*size + j + 1;
+				lines[line++] = "s " + random.nextInt(4);
+				lines[line++] = "f " + a + " " + (a + 1) + " " + (a + size + 1);
+				lines[line++] = "f " + a + " " + (a + size + 1) + " " + (a + size);
+			}
+		}
+		for (ObjectParser.AccumulationMode mode : new ObjectParser.AccumulationMode[] {ObjectParser.AccumulationMode.SEQUENTIAL,
+				ObjectParser.AccumulationMode.PARALLEL, ObjectParser.AccumulationMode.GATHER}) {
+			ObjData mesh = parse(lines, true, mode);
+			//The sum of the face normals and the normal index of every (vertex, group) pair, every group 0 triangle on its own.
+			Map<Long, float[]> sums = new HashMap<Long, float[]>();
+			Map<Long, Integer> normals = new HashMap<Long, Integer>();
+			for (int corner = 0; corner < 3*mesh.nbTriangles; corner++) {
+				int triangle = corner / 3;
+				int group = mesh.triangleGroups[triangle];
+				long key = group == 0 ? -1 - triangle : ((long) mesh.triangleVertices[corner] << 32) | group;
+				if(!sums.containsKey(key)) {
+					sums.put(key, new float[3]);
+				}
+				float[] sum = sums.get(key);
+				if(group != 0 || corner % 3 == 0) {
+					for (int k = 0; k < 3; k++) {
+						sum[k] += mesh.faceNormals[3*triangle + k];
+					}
+				}
+				Integer normal = normals.get(key);
+				if(normal == null) {
+					normals.put(key, mesh.getNormalIndices()[corner]);
+				} else {
+					assertEquals(mode + ": corner " + corner, normal.intValue(), mesh.getNormalIndices()[corner]);
+				}
+			}
+			assertEquals(normals.size(), mesh.getNbVertexNormals());
+			assertEquals(normals.size(), new HashSet<Integer>(normals.values()).size());
+			for (Map.Entry<Long, float[]> entry : sums.entrySet()) {
+				float[] sum = entry.getValue();
+				float length = NormalEngine.length(sum[0], sum[1], sum[2]);
+				int normal = 3*normals.get(entry.getKey());
+				assertTrue(length > 0);
+				for (int k = 0; k < 3; k++) {
+					assertEquals(mode.toString(), sum[k] / length, mesh.vertexNormals[normal + k], DELTA);
+				}
+			}
+		}
+	}
+}
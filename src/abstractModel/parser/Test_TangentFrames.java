@@ -0,0 +1,158 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that the tangents in the sidecar are unit vectors perpendicular to the written normals,
+ * follow the direction in which the first texture coordinate grows, and carry the handedness of the texture.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_TangentFrames {
+
+	private static final int GRID_SIZE = 30;
+	private static final float DELTA = 1e-5f;
+
+	private File dir;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_TangentFrames").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	/**
+	 * Writes a grid with random heights, two triangles per square that face up, whose first texture coordinate grows along x,
+	 * or shrinks along x when the texture is mirrored. The second one grows along y.
+	 */
+	private File writeGrid(boolean mirrored) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		Random random = new Random(21);
+		for (int i = 0; i < GRID_SIZE*GRID_SIZE; i++) {
+			float u = (float) (i / GRID_SIZE) / GRID_SIZE;
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " " + random.nextFloat()*0.5f);
+			pw.println("vt " + (mirrored ? 1 - u : u) + " " + (float) (i % GRID_SIZE) / GRID_SIZE);
+		}
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j + 1;
+				int b = a + 1;
+				int c = a + GRID_SIZE + 1;
+				int d = a + GRID_SIZE;
+				pw.println("f " + a + "/" + a + " " + c + "/" + c + " " + b + "/" + b);
+				pw.println("f " + a + "/" + a + " " + d + "/" + d + " " + c + "/" + c);
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	/**
+	 * Returns the normals written to the output file, three floats per vn line.
+	 */
+	private static float[] readNormals(File output) throws IOException {
+		List<Float> normals = new ArrayList<Float>();
+		for (String line : Files.readAllLines(output.toPath())) {
+			if(line.startsWith("vn ")) {
+				String[] parts = line.split(" ");
+				for (int k = 1; k < 4; k++) {
+					normals.add(Float.parseFloat(parts[k]));
+				}
+			}
+		}
+		float[] result = new float[normals.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = normals.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the tangents of the sidecar of the output file, four floats per normal.
+	 */
+	private static float[] readTangents(File output) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(TangentFrames.getSidecarFile(output))));
+		try {
+			in.readInt();
+			in.readInt();
+			float[] tangents = new float[4*in.readInt()];
+			for (int i = 0; i < tangents.length; i++) {
+				tangents[i] = in.readFloat();
+			}
+			return tangents;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Parses the grid with tangents and checks every tangent against its normal, the x axis and the expected sign.
+	 */
+	private void testTangents(File input, ObjectParser.AccumulationMode mode, ObjectParser.WeightingMode weighting, float sign) throws IOException {
+		String message = mode + " " + weighting;
+		File output = new File(this.dir, "output" + this.nbFiles++ + ".obj");
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setAccumulationMode(mode);
+		parser.setWeightingMode(weighting);
+		parser.setCalcTangents(true);
+		parser.setParallelism(4);
+		parser.parse(output.getPath());
+		float[] normals = readNormals(output);
+		float[] tangents = readTangents(output);
+		assertEquals(message, normals.length / 3, tangents.length / 4);
+		for (int i = 0; i < normals.length / 3; i++) {
+			float x = tangents[4*i];
+			float y = tangents[4*i + 1];
+			float z = tangents[4*i + 2];
+			assertEquals(message + ": length of tangent " + i, 1, Math.sqrt(x*x + y*y + z*z), DELTA);
+			assertEquals(message + ": tangent " + i + " on its normal", 0, x*normals[3*i] + y*normals[3*i + 1] + z*normals[3*i + 2], DELTA);
+			assertTrue(message + ": tangent " + i + " along the texture", x*sign > 0.5f);
+			assertEquals(message + ": sign of tangent " + i, sign, tangents[4*i + 3], 0);
+		}
+	}
+
+	/** Test of a texture that is not mirrored, in every accumulation and weighting mode: the bitangent is normal x tangent. */
+	@Test
+	public void test_tangents() throws IOException {
+		File input = writeGrid(false);
+		for (ObjectParser.AccumulationMode mode : ObjectParser.AccumulationMode.values()) {
+			for (ObjectParser.WeightingMode weighting : ObjectParser.WeightingMode.values()) {
+				testTangents(input, mode, weighting, 1);
+			}
+		}
+	}
+
+	/** Test of a mirrored texture: the tangent points along -x and the bitangent is -(normal x tangent). */
+	@Test
+	public void test_tangents_mirrored() throws IOException {
+		File input = writeGrid(true);
+		for (ObjectParser.AccumulationMode mode : ObjectParser.AccumulationMode.values()) {
+			testTangents(input, mode, ObjectParser.WeightingMode.ANGLE, -1);
+		}
+	}
+}
@@ -0,0 +1,171 @@
+package abstractModel.parser;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * jUnit test case to test that triangles with a vertex index out of range are removed and reported after parsing,
+ * that triangles with a repeated vertex are left out of the normals and the output, and that the output is that of
+ * the file without them.
+ *
+ * @author Geert Van Campenhout
+ */
+public class Test_ValidTriangles {
+
+	//Enough triangles for several ranges of the index check and of the normal tasks.
+	private static final int GRID_SIZE = 200;
+	//The squares before which a triangle out of range or with a repeated vertex is written.
+	private static final int[] INVALID_SQUARES = {0, 777, 20000, 39600};
+	private static final int[] REPEATED_SQUARES = {5, 30000};
+	private static final float DELTA = 1e-6f;
+
+	private File dir;
+	private int nbFiles;
+
+	@Before
+	public void setUp() throws IOException {
+		this.dir = Files.createTempDirectory("Test_ValidTriangles").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : this.dir.listFiles()) {
+			file.delete();
+		}
+		this.dir.delete();
+	}
+
+	private static boolean contains(int[] squares, int square) {
+		for (int s : squares) {
+			if(s == square) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Writes a grid with random heights, two triangles per square, with or without the extra triangles.
+	 * The triangles out of range refer past the last vertex, or before the first one with a negative index.
+	 */
+	private File writeGrid(boolean withInvalid) throws IOException {
+		File file = new File(this.dir, "input" + this.nbFiles++ + ".obj");
+		PrintWriter pw = new PrintWriter(file);
+		Random random = new Random(25);
+		int nbVertices = GRID_SIZE*GRID_SIZE;
+		for (int i = 0; i < nbVertices; i++) {
+			pw.println("v " + i / GRID_SIZE + " " + i % GRID_SIZE + " " + random.nextFloat());
+		}
+		int square = 0;
+		for (int i = 0; i < GRID_SIZE - 1; i++) {
+			for (int j = 0; j < GRID_SIZE - 1; j++) {
+				int a = i*GRID_SIZE + j + 1;
+				if(withInvalid && contains(INVALID_SQUARES, square)) {
+					pw.println(square % 2 == 0 ? "f " + a + " " + (nbVertices + 1) + " " + (a + 1) : "f " + a + " " + (-nbVertices - 1) + " " + (a + 1));
+				}
+				if(withInvalid && contains(REPEATED_SQUARES, square)) {
+					pw.println("f " + a + " " + (a + 1) + " " + a);
+				}
+				pw.println("f " + a + " " + (a + 1) + " " + (a + GRID_SIZE + 1));
+				pw.println("f " + a + " " + (a + GRID_SIZE + 1) + " " + (a + GRID_SIZE));
+				square++;
+			}
+		}
+		pw.close();
+		return file;
+	}
+
+	private ObjectParser parse(File input, File output, ObjectParser.AccumulationMode mode) throws IOException {
+		ObjectParser parser = new ObjectParser(input.getPath());
+		parser.setAccumulationMode(mode);
+		parser.setParallelism(4);
+		parser.parse(output.getPath());
+		return parser;
+	}
+
+	/**
+	 * Returns the samples of the given problem in increasing order, they are in the order the threads found them.
+	 */
+	private static int[] getSortedSamples(MeshDiagnostics diagnostics, MeshDiagnostics.Issue issue) {
+		int[] samples = diagnostics.getSamples(issue);
+		Arrays.sort(samples);
+		return samples;
+	}
+
+	/**
+	 * Checks that the output has the lines of the expected output. The normals may differ in the last bits,
+	 * as the slices of PARALLEL follow the number of triangles, which includes those with a repeated vertex.
+	 */
+	private static void assertOutput(String message, File expected, File output) throws IOException {
+		List<String> expectedLines = Files.readAllLines(expected.toPath());
+		List<String> lines = Files.readAllLines(output.toPath());
+		assertEquals(message, expectedLines.size(), lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			if(lines.get(i).startsWith("vn ")) {
+				String[] expectedParts = expectedLines.get(i).split(" ");
+				String[] parts = lines.get(i).split(" ");
+				for (int k = 1; k < 4; k++) {
+					assertEquals(message + ": line " + i, Float.parseFloat(expectedParts[k]), Float.parseFloat(parts[k]), DELTA);
+				}
+			} else {
+				assertEquals(message + ": line " + i, expectedLines.get(i), lines.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Test in every accumulation mode: the triangles out of range are reported at their index in the file, the repeated vertices
+	 * at their index without the removed triangles, the list of valid triangles leaves both out and the output is that of the grid.
+	 */
+	@Test
+	public void test_invalidTriangles() throws IOException {
+		File grid = writeGrid(false);
+		File input = writeGrid(true);
+		int[] invalid = new int[INVALID_SQUARES.length];
+		int[] repeated = new int[REPEATED_SQUARES.length];
+		int nbExtra = 0;
+		for (int square = 0; square < (GRID_SIZE - 1)*(GRID_SIZE - 1); square++) {
+			int triangle = 2*square + nbExtra;
+			for (int k = 0; k < INVALID_SQUARES.length; k++) {
+				if(INVALID_SQUARES[k] == square) {
+					invalid[k] = triangle;
+					nbExtra++;
+				}
+			}
+			for (int k = 0; k < REPEATED_SQUARES.length; k++) {
+				if(REPEATED_SQUARES[k] == square) {
+					repeated[k] = 2*square + k;
+					nbExtra++;
+				}
+			}
+		}
+		int nbTriangles = 2*(GRID_SIZE - 1)*(GRID_SIZE - 1);
+		for (ObjectParser.AccumulationMode mode : ObjectParser.AccumulationMode.values()) {
+			File expected = new File(this.dir, "output" + this.nbFiles++ + ".obj");
+			parse(grid, expected, mode);
+			File output = new File(this.dir, "output" + this.nbFiles++ + ".obj");
+			ObjectParser parser = parse(input, output, mode);
+			MeshDiagnostics diagnostics = parser.getDiagnostics();
+			assertEquals(mode.toString(), INVALID_SQUARES.length, diagnostics.getCount(MeshDiagnostics.Issue.INVALID_INDEX));
+			assertArrayEquals(mode.toString(), invalid, getSortedSamples(diagnostics, MeshDiagnostics.Issue.INVALID_INDEX));
+			assertEquals(mode.toString(), REPEATED_SQUARES.length, diagnostics.getCount(MeshDiagnostics.Issue.REPEATED_VERTEX));
+			assertArrayEquals(mode.toString(), repeated, getSortedSamples(diagnostics, MeshDiagnostics.Issue.REPEATED_VERTEX));
+			assertEquals(mode.toString(), 0, diagnostics.getCount(MeshDiagnostics.Issue.DEGENERATE_TRIANGLE));
+			assertEquals(mode.toString(), nbTriangles + REPEATED_SQUARES.length, parser.mesh.nbTriangles);
+			assertEquals(mode.toString(), nbTriangles, parser.mesh.nbValidTriangles);
+			assertOutput(mode.toString(), expected, output);
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package abstractModel.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * VertexAdjacency lists for every vertex of a mesh the triangle corners that use it, in compressed sparse row form:
+ * the corners of vertex v are corners[offsets[v]] up to corners[offsets[v+1]].
+ * A corner is the index of a vertex in the triangleVertices array of the mesh, so corner / 3 is its triangle
+ * and corner % 3 its position in the triangle.
+ *
+ * The adjacency is built with a parallel counting sort. It is stable: the corners of every vertex
+ * are in the order of their triangles, whatever the number of tasks.
+ *
+ * @author Geert Van Campenhout
+ */
+class VertexAdjacency {
+
+	final int[] offsets;
+	final int[] corners;
+
+	private VertexAdjacency(int[] offsets, int[] corners) {
+		this.offsets = offsets;
+		this.corners = corners;
+	}
+
+	/**
+	 * Returns the number of triangle corners that use the given vertex.
+	 */
+	int getNbCorners(int vertex) {
+		return this.offsets[vertex + 1] - this.offsets[vertex];
+	}
+
+	/**
+	 * Builds the adjacency of the vertices of the given mesh.
+	 *
+	 * @param mesh	The mesh.
+	 * @param pool	The pool to run on, or null to build it on the current thread.
+	 * @param nbTasks	The number of ranges to divide the triangles and the vertices in.
+	 * @return	VertexAdjacency
+	 * 		The adjacency of the mesh.
+	 */
+	static VertexAdjacency build(ObjData mesh, ForkJoinPool pool, int nbTasks) {
+		return build(mesh.triangleVertices, mesh.nbVertices, 3*mesh.nbTriangles, pool, nbTasks);
+	}
+
+	/**
+	 * Builds the adjacency of the given corner indices, the vertices or the split normals of a mesh.
+	 * It works for any array of indices: the corners are then the positions in the array that hold every index.
+	 * The indices are divided in as many ranges as there are tasks. Every task counts how many corners of its range
+	 * of the array fall in every range of indices, and copies them grouped per range of indices, in their order,
+	 * so the corners of every range of indices end up together and still in order. Every task then sorts 
+	 * the corners of one range of indices by index with counts of that range only, so the memory it takes 
+	 * does not depend on the number of tasks.
+	 *
+	 * @param triangleVertices	The index of every triangle corner.
+	 * @param nbVertices	The number of indices.
+	 * @param nbCorners	The number of corners, three per triangle.
+	 * @param pool	The pool to run on, or null to build it on the current thread.
+	 * @param nbTasks	The number of ranges to divide the corners and the indices in.
+	 * @return	VertexAdjacency
+	 * 		The adjacency of the indices.
+	 */
+	static VertexAdjacency build(final int[] triangleVertices, final int nbVertices, final int nbCorners, ForkJoinPool pool, final int nbTasks) {
+		//Number of corners per task and range of vertices, later the position where the task copies the next corner of the range.
+		final int[][] positions = new int[nbTasks][nbTasks];
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int i = 0; i < nbTasks; i++) {
+			final int task = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int[] counts = positions[task];
+					int end = NormalEngine.getStart(nbCorners, task + 1, nbTasks);
+					for (int corner = NormalEngine.getStart(nbCorners, task, nbTasks); corner < end; corner++) {
+						int vertex = triangleVertices[corner];
+						if(vertex < 0 || vertex >= nbVertices) {
+							throw new IndexOutOfBoundsException("Index " + vertex + " out of bounds for length " + nbVertices);
+						}
+						counts[getRange(nbVertices, vertex, nbTasks)]++;
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+
+		//Where the corners of every range of vertices start, in the order of the ranges and within a range of the tasks.
+		final int[] rangeOffsets = new int[nbTasks + 1];
+		int position = 0;
+		for (int range = 0; range < nbTasks; range++) {
+			rangeOffsets[range] = position;
+			for (int task = 0; task < nbTasks; task++) {
+				int count = positions[task][range];
+				positions[task][range] = position;
+				position += count;
+			}
+		}
+		rangeOffsets[nbTasks] = position;
+		//With one range the corners are in their range already.
+		final int[] grouped = nbTasks == 1 ? null : new int[nbCorners];
+		if(grouped != null) {
+			tasks.clear();
+			for (int i = 0; i < nbTasks; i++) {
+				final int task = i;
+				tasks.add(new Callable<Void>() {
+					public Void call() {
+						int[] next = positions[task];
+						int end = NormalEngine.getStart(nbCorners, task + 1, nbTasks);
+						for (int corner = NormalEngine.getStart(nbCorners, task, nbTasks); corner < end; corner++) {
+							grouped[next[getRange(nbVertices, triangleVertices[corner], nbTasks)]++] = corner;
+						}
+						return null;
+					}
+				});
+			}
+			ObjectParser.invokeAll(pool, tasks);
+		}
+
+		final int[] offsets = new int[nbVertices + 1];
+		final int[] corners = new int[nbCorners];
+		offsets[nbVertices] = nbCorners;
+		tasks.clear();
+		for (int i = 0; i < nbTasks; i++) {
+			final int range = i;
+			tasks.add(new Callable<Void>() {
+				public Void call() {
+					int first = NormalEngine.getStart(nbVertices, range, nbTasks);
+					int[] next = new int[NormalEngine.getStart(nbVertices, range + 1, nbTasks) - first];
+					for (int k = rangeOffsets[range]; k < rangeOffsets[range + 1]; k++) {
+						next[triangleVertices[grouped == null ? k : grouped[k]] - first]++;
+					}
+					int position = rangeOffsets[range];
+					for (int vertex = 0; vertex < next.length; vertex++) {
+						offsets[first + vertex] = position;
+						int count = next[vertex];
+						next[vertex] = position;
+						position += count;
+					}
+					for (int k = rangeOffsets[range]; k < rangeOffsets[range + 1]; k++) {
+						int corner = grouped == null ? k : grouped[k];
+						corners[next[triangleVertices[corner] - first]++] = corner;
+					}
+					return null;
+				}
+			});
+		}
+		ObjectParser.invokeAll(pool, tasks);
+		return new VertexAdjacency(offsets, corners);
+	}
+
+	/**
+	 * Returns the range that holds the given element when count elements are divided in nbRanges ranges,
+	 * the last range whose start, as NormalEngine.getStart gives it, is not after the element.
+	 */
+	private static int getRange(int count, int element, int nbRanges) {
+		return (int) ((((long) element + 1) * nbRanges - 1) / count);
+	}
+}